@@ -0,0 +1,119 @@
+package com.app.facerecognizer.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Debug;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 特征提取在设备上的完整热路径（YUV 转换或 Bitmap 绘制、像素转换、推理）预热后每帧不分配对象。
+ * 纯 Java 部分在 core 的 PreprocessAllocationTest 中于 JVM 上测试
+ */
+@RunWith(AndroidJUnit4.class)
+@SuppressWarnings("deprecation")
+public class ExtractorAllocationTest {
+
+    private static final int WARMUP_FRAMES = 50;
+    private static final int MEASURED_FRAMES = 100;
+
+    private FaceEmbeddingExtractor extractor;
+    private Bitmap frame;
+    private YuvPlanes planes;
+    private final int[] crop = new int[4];
+    private final float[] embedding = new float[192];
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        extractor = new FaceEmbeddingExtractor(FaceEmbeddingExtractor.loadModelFile(context), 1);
+        frame = Bitmap.createBitmap(640, 480, Bitmap.Config.ARGB_8888);
+        frame.eraseColor(Color.rgb(180, 140, 120));
+        planes = nv21Planes(640, 480);
+        assertTrue(FaceCrop.headRegion(150, 100, 330, 320, 480, 640, crop));
+    }
+
+    @After
+    public void tearDown() {
+        extractor.close();
+        frame.recycle();
+    }
+
+    @Test
+    public void croppedFrameEmbeddingDoesNotAllocate() {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            extractor.getFaceEmbedding(frame, 90, crop, embedding);
+        }
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            extractor.getFaceEmbedding(frame, 90, crop, embedding);
+        }
+        int allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * 相机识别实际使用的入口：YUV 平面拷贝直接裁剪、旋转、镜像后推理
+     */
+    @Test
+    public void croppedYuvEmbeddingDoesNotAllocate() {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            extractor.getFaceEmbedding(planes, 90, true, crop, embedding);
+        }
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            extractor.getFaceEmbedding(planes, 90, true, crop, embedding);
+        }
+        int allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        assertEquals(0, allocated);
+    }
+
+    @Test
+    public void bitmapEmbeddingDoesNotAllocate() {
+        Bitmap face = Bitmap.createBitmap(frame, crop[0], crop[1], 160, 200);
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            extractor.getFaceEmbedding(face, embedding);
+        }
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            extractor.getFaceEmbedding(face, embedding);
+        }
+        int allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        face.recycle();
+        assertEquals(0, allocated);
+    }
+
+    /**
+     * NV21 布局的合成帧：V/U 交错，两个平面视图相差一个字节
+     */
+    private static YuvPlanes nv21Planes(int width, int height) {
+        ByteBuffer y = ByteBuffer.allocateDirect(width * height);
+        ByteBuffer vu = ByteBuffer.allocateDirect(width * height / 2);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) (i * 7));
+        }
+        for (int i = 0; i < vu.capacity(); i++) {
+            vu.put(i, (byte) (128 + (i % 32) - 16));
+        }
+        ByteBuffer u = ((ByteBuffer) vu.duplicate().position(1)).slice();
+        return YuvPlanes.copyOf(y, width, u, vu.duplicate(), width, 2, width, height);
+    }
+}
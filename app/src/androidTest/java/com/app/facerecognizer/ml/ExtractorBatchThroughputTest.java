@@ -0,0 +1,99 @@
+package com.app.facerecognizer.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * 批量提取的吞吐量：同样 16 张人脸分别按最大批次 1/4/8/16 提取，输出每张耗时和每秒张数。
+ * 同时检查逐张回退路径（批次为 1 或模型不支持改变批次）每个输入都有一个特征，且与批量结果一致
+ */
+@RunWith(AndroidJUnit4.class)
+public class ExtractorBatchThroughputTest {
+
+    private static final String TAG = "ExtractorBatchThroughput";
+    private static final int[] BATCH_SIZES = {1, 4, 8, 16};
+    private static final int FACES = 16;
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final float TOLERANCE = 1e-3f;
+
+    private FaceEmbeddingExtractor extractor;
+    private final List<Bitmap> faces = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        extractor = new FaceEmbeddingExtractor(FaceEmbeddingExtractor.loadModelFile(context), 1);
+        for (int i = 0; i < FACES; i++) {
+            Bitmap face = Bitmap.createBitmap(160, 200, Bitmap.Config.ARGB_8888);
+            face.eraseColor(Color.rgb(120 + i * 7, 100 + i * 5, 90 + i * 3));
+            faces.add(face);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        extractor.close();
+        for (Bitmap face : faces) {
+            face.recycle();
+        }
+    }
+
+    @Test
+    public void batchSizeThroughput() {
+        for (int batchSize : BATCH_SIZES) {
+            extractor.setMaxBatchSize(batchSize);
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                extractor.getFaceEmbeddings(faces);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                assertEquals(FACES, extractor.getFaceEmbeddings(faces).size());
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            int embedded = FACES * MEASURED_ROUNDS;
+            String line = String.format(Locale.US, "batch %2d: %.2f ms/face, %.1f faces/s (batch supported: %b)",
+                    batchSize, seconds * 1000 / embedded, embedded / seconds, extractor.isBatchSupported());
+            Log.i(TAG, line);
+            System.out.println(TAG + ": " + line);
+        }
+    }
+
+    @Test
+    public void fallbackReturnsOneEmbeddingPerInput() {
+        extractor.setMaxBatchSize(1);
+        List<float[]> single = extractor.getFaceEmbeddings(faces);
+        assertEquals(FACES, single.size());
+        List<Bitmap> subset = faces.subList(0, 7);
+        assertEquals(7, extractor.getFaceEmbeddings(subset).size());
+
+        // 7 张按批次 4 分为一批 4 张加一批 3 张
+        extractor.setMaxBatchSize(4);
+        List<float[]> batched = extractor.getFaceEmbeddings(subset);
+        assertEquals(7, batched.size());
+        for (int i = 0; i < batched.size(); i++) {
+            assertNotNull(batched.get(i));
+            assertEquals(FaceEmbeddingExtractor.EMBEDDING_SIZE, batched.get(i).length);
+            for (int j = 0; j < FaceEmbeddingExtractor.EMBEDDING_SIZE; j++) {
+                assertEquals("face " + i + " dim " + j, single.get(i)[j], batched.get(i)[j], TOLERANCE);
+            }
+        }
+    }
+}
@@ -2,17 +2,18 @@ package com.app.facerecognizer;
 
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.media.Image;
 import android.os.Bundle;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.OptIn;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ExperimentalGetImage;
 import androidx.camera.core.ImageAnalysis;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
@@ -20,16 +21,32 @@ import androidx.core.content.ContextCompat;
 import com.app.facerecognizer.databinding.ActivityFaceRecognizerBinding;
 import com.app.facerecognizer.db.AppDatabase;
 import com.app.facerecognizer.db.entities.FaceImageInfo;
-import com.app.facerecognizer.ml.FaceEmbeddingExtractor;
+import com.app.facerecognizer.metrics.PipelineMetrics;
+import com.app.facerecognizer.ml.EmbeddingExtractorPool;
+import com.app.facerecognizer.ml.FaceFrame;
+import com.app.facerecognizer.ml.FaceIndexManager;
+import com.app.facerecognizer.ml.FaceMatch;
+import com.app.facerecognizer.ml.FaceTracker;
 import com.app.facerecognizer.ml.FaceVerifier;
+import com.app.facerecognizer.ml.GalleryRepository;
+import com.app.facerecognizer.ml.MultiFaceRecognizer;
+import com.app.facerecognizer.ml.ScannableGallery;
 import com.app.facerecognizer.ml.SimilarInfoBean;
+import com.app.facerecognizer.ml.YuvPlanes;
+import com.app.facerecognizer.ml.YuvPlanesPool;
+import com.app.facerecognizer.utils.LatestFrameProcessor;
+import com.app.facerecognizer.utils.SystemTraceSink;
+import com.app.facerecognizer.utils.ThumbnailLoader;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.common.InputImage;
+import com.google.mlkit.vision.face.Face;
 import com.google.mlkit.vision.face.FaceDetection;
 import com.google.mlkit.vision.face.FaceDetector;
 import com.google.mlkit.vision.face.FaceDetectorOptions;
 
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -40,8 +57,13 @@ import java.util.concurrent.TimeUnit;
 
 public class FaceRecognizerActivity extends AppCompatActivity {
 
+    // 为 true 时识别画面中的所有人脸并持续运行，不在首个通过的人脸处停止
+    public static final String EXTRA_MULTI_FACE = "multi_face";
+
     private ActivityFaceRecognizerBinding binding;
     private static final int REQUEST_CODE_PERMISSIONS = 100;
+    // 开启追踪时逐帧检索结果的日志最多每秒一条
+    private static final long MATCH_LOG_INTERVAL_NANOS = 1_000_000_000L;
     private static final String[] REQUIRED_PERMISSIONS = {android.Manifest.permission.READ_EXTERNAL_STORAGE, android.Manifest.permission.CAMERA};
     public static String CACHE_SEARCH_FACE_DIR;
 
@@ -51,20 +73,34 @@ public class FaceRecognizerActivity extends AppCompatActivity {
     private ImageAnalysis imageAnalysis;
     private FaceDetectorOptions faceDetectorOptions;
     private FaceDetector detector;
-    private boolean isCheckFace = false;
 
     private ExecutorService cameraExecutor;
-    private FaceEmbeddingExtractor embeddingExtractor;
+    private EmbeddingExtractorPool extractorPool;
     private FaceVerifier faceVerifier;
     AppDatabase database;
 
     private float similarityNumber = 0.70f;
 
-    private List<FaceImageInfo> faceImageList = new ArrayList();
-    // 缓存嵌入向量
-    private Map<String, float[]> embeddingCache = new HashMap<>();
-    private boolean isVerifyPass = false;
-    private Bitmap compareBitmap = null;
+    private volatile boolean isVerifyPass = false;
+    private boolean multiFace;
+    private MultiFaceRecognizer multiFaceRecognizer;
+    // 识别线程复用的裁剪区域
+    private final int[] cropRegion = new int[4];
+    // 同一条人脸轨迹只在必要时重新提取特征，并融合多次检索的得分
+    private final FaceTracker faceTracker = new FaceTracker();
+    // 共享底库更新时替换检索目标
+    private final GalleryRepository.Listener galleryListener = this::onGalleryChanged;
+    private GalleryRepository galleryRepository;
+    // 底库加载完成后恢复的提示文字
+    private CharSequence defaultTips;
+    // 各阶段耗时与帧计数，可通过 dumpsys 查看
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+    private long lastMatchLogNanos;
+    // YUV 帧拷贝的复用池：识别线程处理中、槽位中等待、分析线程正在拷贝的各一帧
+    private final YuvPlanesPool planesPool = new YuvPlanesPool(3);
+    // 检测到人脸的最新一帧交给识别线程，处理不过来的旧帧直接丢弃，处理完或丢弃的帧拷贝归还复用池
+    private final LatestFrameProcessor<FaceFrame> frameProcessor = new LatestFrameProcessor<>("face-recognition",
+            this::processImage, frame -> planesPool.release(frame.getYuvPlanes()));
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -72,12 +108,15 @@ public class FaceRecognizerActivity extends AppCompatActivity {
         binding = ActivityFaceRecognizerBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
         CACHE_SEARCH_FACE_DIR = getCacheDir().getPath() + "/faceSearch";
-        cameraExecutor = Executors.newFixedThreadPool(3);
+        multiFace = getIntent().getBooleanExtra(EXTRA_MULTI_FACE, false);
+        cameraExecutor = Executors.newFixedThreadPool(2);
         database = AppDatabase.getDatabase(this);
         try {
             // 初始化特征提取器
-            embeddingExtractor = new FaceEmbeddingExtractor(this);
-            faceVerifier = new FaceVerifier(embeddingExtractor, embeddingCache);
+            extractorPool = EmbeddingExtractorPool.getInstance(this);
+            faceVerifier = new FaceVerifier(extractorPool);
+            faceVerifier.setFeatureStore(this::loadFeatures);
+            multiFaceRecognizer = new MultiFaceRecognizer(extractorPool, faceVerifier, faceTracker);
         } catch (IOException e) {
             Log.e("FaceEmbeddingExtractor", "Error initializing model", e);
         }
@@ -94,31 +133,58 @@ public class FaceRecognizerActivity extends AppCompatActivity {
 
     private void initView() {
         binding.btnBack.setOnClickListener(v -> finish());
+        defaultTips = binding.tipsView.getText();
     }
 
     private void initData() {
         loadFaceImages();
-
-        // 初始化存储的人脸嵌入向量
-        cameraExecutor.execute(() -> {
-            while (!isVerifyPass) {
-                if (faceImageList != null && isCheckFace) {
-                    processImage();
-                }
-            }
-        });
+        frameProcessor.start();
     }
 
     /**
-     * 加载人脸文件夹CACHE_SEARCH_FACE_DIR 里面的人脸照片
+     * 订阅进程内共享的底库，人脸增删后仓库只叠加变化的部分并重新发布
      */
     private void loadFaceImages() {
-        faceImageList.clear();
-        cameraExecutor.execute(() -> {
-            faceImageList = database.faceImageDao().getAll();
+        faceVerifier.setGallery(null);
+        faceVerifier.setAnnIndex(null);
+        galleryRepository = GalleryRepository.getInstance(this);
+        faceVerifier.setGalleryRepository(galleryRepository);
+        galleryRepository.addListener(galleryListener);
+    }
+
+    /**
+     * 底库流式加载期间会多次回调，已加载的部分即可参与识别，同时显示加载进度
+     */
+    private void onGalleryChanged(ScannableGallery gallery, float coverage) {
+        FaceVerifier verifier = faceVerifier;
+        if (verifier == null) return;
+        verifier.setGallery(gallery);
+        verifier.setCentroidIndex(galleryRepository.getCentroidIndex());
+        // 大规模底库使用 HNSW 近似检索，索引由 FaceIndexManager 随增删同步维护，加载完成前先扫描已加载的部分
+        verifier.setAnnIndex(coverage >= 1f && gallery.size() >= FaceVerifier.ANN_MIN_GALLERY_SIZE
+                ? FaceIndexManager.getInstance(this).getIndex() : null);
+        runOnUiThread(() -> {
+            if (isVerifyPass) return;
+            binding.tipsView.setText(coverage < 1f
+                    ? "正在加载人脸库 " + (int) (coverage * 100) + "%" : defaultTips);
         });
     }
 
+    /**
+     * 量化底库重排时按 id 读取全精度特征
+     */
+    private float[][] loadFeatures(int[] faceIds) {
+        Map<Integer, float[]> featureById = new HashMap<>();
+        for (FaceImageInfo info : database.faceImageDao().getByIds(faceIds)) {
+            featureById.put(info.getId(), info.getFeature());
+        }
+        float[][] features = new float[faceIds.length][];
+        for (int i = 0; i < faceIds.length; i++) {
+            features[i] = featureById.get(faceIds[i]);
+        }
+        return features;
+    }
+
     private void initCamera() {
 
         // 获取相机提供器
@@ -132,6 +198,7 @@ public class FaceRecognizerActivity extends AppCompatActivity {
                 .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
                 .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
                 .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
+                .enableTracking()
                 .build();
         detector = FaceDetection.getClient(faceDetectorOptions);
 
@@ -141,23 +208,32 @@ public class FaceRecognizerActivity extends AppCompatActivity {
             @OptIn(markerClass = ExperimentalGetImage.class)
             Image mediaImage = imageProxy.getImage();
             if (mediaImage != null) {
-                InputImage image = InputImage.fromMediaImage(mediaImage, imageProxy.getImageInfo().getRotationDegrees());
-                // 检测人脸
+                int rotationDegrees = imageProxy.getImageInfo().getRotationDegrees();
+                InputImage image = InputImage.fromMediaImage(mediaImage, rotationDegrees);
+                // 检测人脸，回调在主线程执行，检测耗时按起止时间直接记录
+                long detectStart = System.nanoTime();
                 detector.process(image)
-                        .addOnSuccessListener(faces -> {
-                            if (!faces.isEmpty()) {
-                                isCheckFace = true;
-                            } else {
-                                isCheckFace = false;
-                            }
-                        })
                         .addOnCompleteListener(task -> {
-                            runOnUiThread(() -> {
-                                compareBitmap = imageProxy.toBitmap();
-                                binding.faceAvatar.setImageBitmap(imageProxy.toBitmap());
-                            });
+                            metrics.record(PipelineMetrics.Stage.DETECT, System.nanoTime() - detectStart);
+                            // 在关闭 imageProxy 之前完成拷贝和转换
+                            long convertStart = metrics.start(PipelineMetrics.Stage.CONVERT);
+                            boolean hasFace = task.isSuccessful() && !task.getResult().isEmpty();
+                            if (hasFace && !isVerifyPass && faceVerifier.isReady()) {
+                                // 识别直接使用 YUV 数据，检测框随帧一起交给识别线程，只对人脸区域提取特征
+                                YuvPlanes planes = copyPlanes(imageProxy);
+                                metrics.increment(PipelineMetrics.Counter.FRAMES_SUBMITTED);
+                                if (frameProcessor.submit(new FaceFrame(planes, rotationDegrees, task.getResult()))) {
+                                    metrics.increment(PipelineMetrics.Counter.FRAMES_DROPPED);
+                                }
+                            }
+                            Bitmap frame = imageProxy.toBitmap();
+                            metrics.countAllocation(frame.getByteCount());
+                            metrics.end(PipelineMetrics.Stage.CONVERT, convertStart);
                             imageProxy.close(); // 关闭 imageProxy 以释放资源
+                            runOnUiThread(() -> binding.faceAvatar.setImageBitmap(frame));
                         });
+            } else {
+                imageProxy.close();
             }
         });
 
@@ -173,30 +249,98 @@ public class FaceRecognizerActivity extends AppCompatActivity {
         }, ContextCompat.getMainExecutor(this));
     }
 
-    @OptIn(markerClass = ExperimentalGetImage.class)
-    private void processImage() {
-        if (compareBitmap == null) return;
-        String imagePath = compareBitmap.toString();
-        float[] currentEmbedding = embeddingCache.get(imagePath);
-        if (currentEmbedding == null) {
-            currentEmbedding = embeddingExtractor.getFaceEmbedding(compareBitmap);
-            // 将计算得到的嵌入向量缓存
-            embeddingCache.put(imagePath, currentEmbedding);
+    /**
+     * 拷贝到复用池中的实例，只有池中数组不够大时才分配
+     */
+    private YuvPlanes copyPlanes(ImageProxy imageProxy) {
+        ImageProxy.PlaneProxy[] planes = imageProxy.getPlanes();
+        YuvPlanes copy = planesPool.acquire();
+        long allocated = copy.copyFrom(planes[0].getBuffer(), planes[0].getRowStride(), planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[1].getRowStride(), planes[1].getPixelStride(), imageProxy.getWidth(), imageProxy.getHeight());
+        if (allocated > 0) {
+            metrics.countAllocation(allocated);
         }
+        return copy;
+    }
 
+    private void processImage(FaceFrame frame) {
+        if (isVerifyPass) return;
+        metrics.increment(PipelineMetrics.Counter.FRAMES_PROCESSED);
+        if (multiFace) {
+            processFaces(frame);
+            return;
+        }
+        Face face = frame.getLargestFace();
+        if (face == null || !frame.headRegion(face, cropRegion)) return;
+        Integer trackingId = face.getTrackingId();
+        if (trackingId != null) {
+            float area = (float) (cropRegion[2] - cropRegion[0]) * (cropRegion[3] - cropRegion[1]);
+            float sharpness = frame.getYuvPlanes() != null
+                    ? frame.getYuvPlanes().lumaSharpness(cropRegion, frame.getRotationDegrees()) : 0f;
+            if (!faceTracker.shouldEmbed(trackingId, area, sharpness, System.nanoTime())) {
+                metrics.increment(PipelineMetrics.Counter.EMBEDDINGS_SKIPPED);
+                return;
+            }
+        }
+        float[] embedding = frame.getYuvPlanes() != null
+                ? extractorPool.getFaceEmbedding(frame.getYuvPlanes(), frame.getRotationDegrees(), false, cropRegion)
+                : extractorPool.getFaceEmbedding(frame.getBitmap(), frame.getRotationDegrees(), cropRegion);
         // 找到最相似的人脸
-        SimilarInfoBean similarInfoBean = faceVerifier.verifyFace(compareBitmap, faceImageList);
-        Log.e("===========", "Most similar image: " + similarInfoBean.getName() + ", Similarity: " + similarInfoBean.getSimilarity());
+        List<SimilarInfoBean> result = faceVerifier.search(embedding, 1);
+        SimilarInfoBean top = result.isEmpty() ? null : result.get(0);
+        // 有跟踪 id 时按轨迹上融合后的得分判定
+        SimilarInfoBean similarInfoBean = trackingId != null ? faceTracker.addResult(trackingId, top) : top;
+        if (similarInfoBean == null) return;
+        if (shouldLogMatch()) {
+            Log.d("FaceRecognizer", "Most similar image: " + similarInfoBean.getName() + ", Similarity: " + similarInfoBean.getSimilarity());
+        }
         if (similarInfoBean.getSimilarity() > similarityNumber) {
             isVerifyPass = true;
+            frameProcessor.stop();
+            Log.i("FaceRecognizer", frameProcessor + ", " + faceTracker);
             runOnUiThread(() -> {
-                binding.avatar.setImageBitmap(BitmapFactory.decodeFile(similarInfoBean.getPath()));
+                ThumbnailLoader.getInstance(this).load(similarInfoBean.getPath(), binding.avatar);
                 binding.userName.setText(similarInfoBean.getName().split("\\.")[0]);
                 binding.tipsView.setText("人证核验通过!");
             });
         }
     }
 
+    /**
+     * 逐帧的检索结果只在开启追踪时输出，并限制频率，避免识别线程每帧拼接字符串、写日志。
+     * 只在识别线程调用
+     */
+    private boolean shouldLogMatch() {
+        if (!metrics.isTracing()) return false;
+        long now = System.nanoTime();
+        if (now - lastMatchLogNanos < MATCH_LOG_INTERVAL_NANOS) return false;
+        lastMatchLogNanos = now;
+        return true;
+    }
+
+    /**
+     * 多人脸模式：同一帧的人脸批量提取和检索，显示所有超过阈值的身份
+     */
+    private void processFaces(FaceFrame frame) {
+        List<FaceMatch> matches = multiFaceRecognizer.recognize(frame);
+        List<String> names = new ArrayList<>();
+        for (FaceMatch match : matches) {
+            String name = match.matchedName(similarityNumber);
+            if (name == null) continue;
+            name = name.split("\\.")[0];
+            if (!names.contains(name)) {
+                names.add(name);
+            }
+        }
+        if (shouldLogMatch()) {
+            Log.d("FaceRecognizer", matches.toString());
+        }
+        runOnUiThread(() -> {
+            binding.userName.setText(String.join("、", names));
+            binding.tipsView.setText("识别到 " + matches.size() + " 张人脸，已通过 " + names.size() + " 人");
+        });
+    }
+
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
         super.onRequestPermissionsResult(requestCode, permissions, grantResults);
@@ -218,11 +362,48 @@ public class FaceRecognizerActivity extends AppCompatActivity {
         return true;
     }
 
+    /**
+     * adb shell dumpsys activity com.app.facerecognizer/.FaceRecognizerActivity [--reset] [--trace | --no-trace]
+     * <p>
+     * 输出各阶段耗时分布和计数；--reset 在输出后清零，--trace 开始输出 Trace 区段供 Perfetto 抓取
+     */
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        boolean reset = false;
+        if (args != null) {
+            for (String arg : args) {
+                if ("--reset".equals(arg)) {
+                    reset = true;
+                } else if ("--trace".equals(arg)) {
+                    metrics.setTraceSink(new SystemTraceSink());
+                } else if ("--no-trace".equals(arg)) {
+                    metrics.setTraceSink(null);
+                }
+            }
+        }
+        StringBuilder out = new StringBuilder();
+        metrics.snapshot().dump(out, prefix);
+        writer.print(out);
+        writer.println(prefix + "  tracing=" + metrics.isTracing());
+        writer.println(prefix + "  " + frameProcessor);
+        writer.println(prefix + "  " + faceTracker);
+        if (galleryRepository != null) {
+            writer.println(prefix + "  " + galleryRepository);
+        }
+        if (reset) {
+            metrics.reset();
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
         // 停止人脸检测和比对
-        isVerifyPass = true; // 停止 while 循环
+        isVerifyPass = true;
+        frameProcessor.stop();
+        Log.i("FaceRecognizer", frameProcessor.toString());
+        Log.i("FaceRecognizer", metrics.snapshot().toString());
 
         if (cameraExecutor != null && !cameraExecutor.isShutdown()) {
             try {
@@ -235,11 +416,10 @@ public class FaceRecognizerActivity extends AppCompatActivity {
             }
         }
 
-        // 释放资源，确保不会再使用已关闭的 Interpreter
-        if (embeddingExtractor != null) {
-            embeddingExtractor.close(); // 释放资源
-            embeddingExtractor = null;
+        if (galleryRepository != null) {
+            galleryRepository.removeListener(galleryListener);
         }
+        // 特征提取器池由进程统一管理，这里不关闭
         if (faceVerifier != null) {
             faceVerifier.close(); // 释放资源
             faceVerifier = null;
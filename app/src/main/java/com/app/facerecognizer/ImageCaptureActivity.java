@@ -23,7 +23,9 @@ import androidx.core.content.ContextCompat;
 import com.app.facerecognizer.databinding.ActivityImageCaptureBinding;
 import com.app.facerecognizer.db.AppDatabase;
 import com.app.facerecognizer.db.entities.FaceImageInfo;
-import com.app.facerecognizer.ml.FaceEmbeddingExtractor;
+import com.app.facerecognizer.ml.EmbeddingExtractorPool;
+import com.app.facerecognizer.ml.FaceCrop;
+import com.app.facerecognizer.ml.FaceIndexManager;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.face.Face;
@@ -43,7 +45,7 @@ public class ImageCaptureActivity extends AppCompatActivity {
 
     private ImageCapture imageCapture;
     private ExecutorService cameraExecutor;
-    private FaceEmbeddingExtractor embeddingExtractor;
+    private EmbeddingExtractorPool extractorPool;
     AppDatabase database;
 
     public static String CACHE_SEARCH_FACE_DIR;
@@ -56,7 +58,7 @@ public class ImageCaptureActivity extends AppCompatActivity {
         CACHE_SEARCH_FACE_DIR = getCacheDir().getPath() + "/faceSearch";
         try {
             // 初始化特征提取器
-            embeddingExtractor = new FaceEmbeddingExtractor(this);
+            extractorPool = EmbeddingExtractorPool.getInstance(this);
         } catch (IOException e) {
             Log.e("FaceEmbeddingExtractor", "Error initializing model", e);
         }
@@ -158,7 +160,7 @@ public class ImageCaptureActivity extends AppCompatActivity {
             info.setName(file.getName());
             info.setPath(file.getPath());
             info.setFeature(getFaceEmbedding(bitmap));
-            Executors.newSingleThreadExecutor().execute(() -> database.faceImageDao().insert(info));
+            Executors.newSingleThreadExecutor().execute(() -> FaceIndexManager.getInstance(this).insert(info));
             Log.i("CameraActivity", "Image saved to " + file.getPath());
             Toast.makeText(this, "录入人脸信息成功", Toast.LENGTH_SHORT).show();
             finish();
@@ -194,27 +196,20 @@ public class ImageCaptureActivity extends AppCompatActivity {
     }
 
     private Bitmap cropHeadRegion(Bitmap originalBitmap, Face face) {
-        // 获取人脸框架信息
-        float left = face.getBoundingBox().left - 50;
-        float top = face.getBoundingBox().top;
-        float right = face.getBoundingBox().right + 50;
-        float bottom = face.getBoundingBox().bottom;
-
-        // 计算裁剪区域：这里假设裁剪区域为人脸框的上半部分（头部）
-        int width = originalBitmap.getWidth();
-        int height = originalBitmap.getHeight();
-
-        // 添加一些上下偏移，使裁剪区域包含更多的头部
-        int cropTop = Math.max(0, (int) (top - (bottom - top) * 0.2));  // 增加顶部裁剪区域
-        int cropBottom = Math.min(height, (int) (bottom + (bottom - top) * 0.2));  // 增加底部裁剪区域
+        // 计算裁剪区域，与识别时的裁剪规则一致
+        int[] region = new int[4];
+        if (!FaceCrop.headRegion(face.getBoundingBox().left, face.getBoundingBox().top, face.getBoundingBox().right,
+                face.getBoundingBox().bottom, originalBitmap.getWidth(), originalBitmap.getHeight(), region)) {
+            return originalBitmap;
+        }
         Matrix matrix = new Matrix();
         matrix.preScale(-1.0f, 1.0f);  // 水平镜像翻转
         // 进行裁剪
-        return Bitmap.createBitmap(originalBitmap, (int) left, cropTop, (int) (right - left), cropBottom - cropTop, matrix, true);
+        return Bitmap.createBitmap(originalBitmap, region[0], region[1], region[2] - region[0], region[3] - region[1], matrix, true);
     }
 
     private float[] getFaceEmbedding(Bitmap bitmap) {
-        return embeddingExtractor.getFaceEmbedding(bitmap);
+        return extractorPool.getFaceEmbedding(bitmap);
     }
 
     @Override
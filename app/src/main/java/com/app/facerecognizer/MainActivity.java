@@ -5,8 +5,6 @@ import static com.app.facerecognizer.utils.AssetImageCopier.copyImagesFromAssets
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
@@ -22,7 +20,10 @@ import com.app.facerecognizer.adapter.FaceImageListAdapter;
 import com.app.facerecognizer.databinding.ActivityMainBinding;
 import com.app.facerecognizer.db.AppDatabase;
 import com.app.facerecognizer.db.entities.FaceImageInfo;
-import com.app.facerecognizer.ml.FaceEmbeddingExtractor;
+import com.app.facerecognizer.ml.EmbeddingExtractorPool;
+import com.app.facerecognizer.ml.EnrollmentPipeline;
+import com.app.facerecognizer.ml.FaceIndexManager;
+import com.app.facerecognizer.utils.ThumbnailLoader;
 
 import java.io.File;
 import java.io.IOException;
@@ -30,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
@@ -44,7 +46,9 @@ public class MainActivity extends AppCompatActivity {
     public static String CACHE_SEARCH_FACE_DIR;
     private FaceImageListAdapter faceImageListAdapter;
 
-    private FaceEmbeddingExtractor embeddingExtractor;
+    private EmbeddingExtractorPool extractorPool;
+    private volatile EnrollmentPipeline enrollmentPipeline;
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
     AppDatabase database;
 
     @Override
@@ -57,7 +61,7 @@ public class MainActivity extends AppCompatActivity {
         database = AppDatabase.getDatabase(this);
         try {
             // 初始化特征提取器
-            embeddingExtractor = new FaceEmbeddingExtractor(this);
+            extractorPool = EmbeddingExtractorPool.getInstance(this);
         } catch (IOException e) {
             Log.e("FaceEmbeddingExtractor", "Error initializing model", e);
         }
@@ -91,12 +95,13 @@ public class MainActivity extends AppCompatActivity {
             new AlertDialog.Builder(this)
                     .setTitle("是否删除这张图片？")
                     .setPositiveButton("删除", (dialog, which) -> {
-                        Executors.newSingleThreadExecutor().execute(() -> {
+                        backgroundExecutor.execute(() -> {
                             File file = new File(faceImageInfo.getPath());
                             if (file.exists()) {
                                 file.delete();
                             }
-                            database.faceImageDao().deleteOne(faceImageInfo.getId() + 1);
+                            ThumbnailLoader.getInstance(this).evict(faceImageInfo.getPath());
+                            FaceIndexManager.getInstance(this).deleteOne(faceImageInfo.getId() + 1);
                         });
                         loadImageList();
                     })
@@ -108,8 +113,8 @@ public class MainActivity extends AppCompatActivity {
             binding.progressBar.setVisibility(View.VISIBLE);
             copyImagesFromAssets(this, CACHE_SEARCH_FACE_DIR);
             // 先清空数据库，然后生成特征值，保存到数据库
-            Executors.newSingleThreadExecutor().execute(() -> {
-                database.faceImageDao().deleteAll();
+            backgroundExecutor.execute(() -> {
+                FaceIndexManager.getInstance(this).deleteAll();
                 generateEmbeddingsForImages();
             });
         });
@@ -119,39 +124,44 @@ public class MainActivity extends AppCompatActivity {
         binding.faceVerify.setOnClickListener(v -> {
             startActivity(new Intent(this, FaceRecognizerActivity.class));
         });
+        binding.faceVerifyMulti.setOnClickListener(v -> {
+            startActivity(new Intent(this, FaceRecognizerActivity.class)
+                    .putExtra(FaceRecognizerActivity.EXTRA_MULTI_FACE, true));
+        });
     }
 
     private void generateEmbeddingsForImages() {
-        faceImageList.clear();
+        List<File> files = new ArrayList<>();
         File folder = new File(CACHE_SEARCH_FACE_DIR);
         File[] subFaceFiles = folder.listFiles();
         if (subFaceFiles != null) {
             Arrays.stream(subFaceFiles)
                     .filter(file -> !file.isDirectory() && file.getName().matches("(?i).*\\.(jpg|jpeg|png)$"))
                     .sorted(Comparator.comparingLong(File::lastModified).reversed())
-                    .forEach(file -> {
-                        FaceImageInfo faceImageInfo = new FaceImageInfo(file.getName(), file.getPath(), null);
-                        faceImageList.add(faceImageInfo);
-                    });
+                    .forEach(files::add);
         }
 
+        // 解码、特征提取、写库流水线并行执行
+        enrollmentPipeline = new EnrollmentPipeline(extractorPool, FaceIndexManager.getInstance(this));
+        enrollmentPipeline.start(files, new EnrollmentPipeline.Listener() {
+            @Override
+            public void onProgress(int processed, int total) {
+                Log.d("EnrollmentPipeline", "Progress " + processed + "/" + total);
+            }
 
-        for (int i = 0; i < faceImageList.size(); i++) {
-            Bitmap bitmap = BitmapFactory.decodeFile(faceImageList.get(i).getPath());
-            float[] embedding = getFaceEmbedding(bitmap);
-            faceImageList.get(i).setFeature(embedding);
-            database.faceImageDao().insert(faceImageList.get(i));
-        }
-        runOnUiThread(() -> {
-            binding.progressBar.setVisibility(View.GONE);
-            faceImageListAdapter.notifyDataSetChanged();
+            @Override
+            public void onFinished(EnrollmentPipeline.Stats stats, boolean cancelled) {
+                runOnUiThread(() -> {
+                    if (isDestroyed()) return;
+                    binding.progressBar.setVisibility(View.GONE);
+                    // 导入时同名图片会被覆盖，丢弃内存中的旧缩略图
+                    ThumbnailLoader.getInstance(MainActivity.this).clearMemory();
+                    loadImageList();
+                });
+            }
         });
     }
 
-    private float[] getFaceEmbedding(Bitmap bitmap) {
-        return embeddingExtractor.getFaceEmbedding(bitmap);
-    }
-
 
     /**
      * 加载人脸文件夹CACHE_SEARCH_FACE_DIR 里面的人脸照片
@@ -197,8 +207,9 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (embeddingExtractor != null) {
-            embeddingExtractor.close();  // 释放资源
+        if (enrollmentPipeline != null) {
+            enrollmentPipeline.cancel();
         }
+        backgroundExecutor.shutdown();
     }
 }
\ No newline at end of file
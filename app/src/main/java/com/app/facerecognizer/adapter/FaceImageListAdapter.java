@@ -1,24 +1,26 @@
 package com.app.facerecognizer.adapter;
 
 import android.annotation.SuppressLint;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.app.facerecognizer.R;
 import com.app.facerecognizer.db.entities.FaceImageInfo;
+import com.app.facerecognizer.utils.ThumbnailLoader;
 
 import java.util.List;
 
 public class FaceImageListAdapter extends RecyclerView.Adapter<FaceImageListAdapter.ViewHolder> {
 
     private List<FaceImageInfo> list;
+    // 网格单元的宽度，首次创建条目时按 RecyclerView 的宽度和列数计算
+    private int thumbnailSize;
 
     public FaceImageListAdapter(List<FaceImageInfo> mList) {
         list = mList;
@@ -30,13 +32,23 @@ public class FaceImageListAdapter extends RecyclerView.Adapter<FaceImageListAdap
     @Override
     public FaceImageListAdapter.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.adapter_face_image_list_item, parent, false);
+        if (thumbnailSize == 0 && parent instanceof RecyclerView && parent.getWidth() > 0) {
+            RecyclerView.LayoutManager layoutManager = ((RecyclerView) parent).getLayoutManager();
+            int spanCount = layoutManager instanceof GridLayoutManager ? ((GridLayoutManager) layoutManager).getSpanCount() : 1;
+            thumbnailSize = parent.getWidth() / spanCount;
+        }
         return new ViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull FaceImageListAdapter.ViewHolder holder, @SuppressLint("RecyclerView") int position) {
-        Bitmap bitmap = BitmapFactory.decodeFile(list.get(position).getPath());
-        holder.faceView.setImageBitmap(bitmap);
+        // 缩略图在后台解码，条目复用时旧的请求自动作废
+        ThumbnailLoader loader = ThumbnailLoader.getInstance(holder.itemView.getContext());
+        if (thumbnailSize > 0) {
+            loader.load(list.get(position).getPath(), holder.faceView, thumbnailSize);
+        } else {
+            loader.load(list.get(position).getPath(), holder.faceView);
+        }
 
         holder.itemView.setOnLongClickListener(v -> {
             // 通过回调传递点击的条目
@@ -47,6 +59,12 @@ public class FaceImageListAdapter extends RecyclerView.Adapter<FaceImageListAdap
         });
     }
 
+    @Override
+    public void onViewRecycled(@NonNull FaceImageListAdapter.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        ThumbnailLoader.getInstance(holder.itemView.getContext()).cancel(holder.faceView);
+    }
+
     @Override
     public int getItemCount() {
         return list.size();
@@ -2,27 +2,41 @@ package com.app.facerecognizer.db;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
+import com.app.facerecognizer.db.dao.FaceChangeDao;
 import com.app.facerecognizer.db.dao.FaceImageDao;
+import com.app.facerecognizer.db.entities.FaceChange;
 import com.app.facerecognizer.db.entities.FaceImageInfo;
 
-@Database(entities = {FaceImageInfo.class}, version = 1)
+@Database(entities = {FaceImageInfo.class, FaceChange.class}, version = 3)
 @TypeConverters({FloatConvert.class})
 public abstract class AppDatabase extends RoomDatabase {
 
     public abstract FaceImageDao faceImageDao();
 
+    public abstract FaceChangeDao faceChangeDao();
+
     private static volatile AppDatabase INSTANCE = null;
 
     public static AppDatabase getDatabase(Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
-                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, "face_recognizer.db").build();
+                    INSTANCE = Room.databaseBuilder(context.getApplicationContext(), AppDatabase.class, "face_recognizer.db")
+                            .addMigrations(Migrations.MIGRATION_1_2, Migrations.MIGRATION_2_3)
+                            .addCallback(new Callback() {
+                                @Override
+                                public void onCreate(@NonNull SupportSQLiteDatabase db) {
+                                    Migrations.createChangeLogTriggers(db);
+                                }
+                            })
+                            .build();
                 }
             }
         }
@@ -0,0 +1,45 @@
+package com.app.facerecognizer.db;
+
+import com.app.facerecognizer.db.dao.FaceImageDao;
+import com.app.facerecognizer.db.entities.FaceImageInfo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 按主键顺序分页读取 face_images，内存中同时只保留一页记录。
+ * 读取过程中新插入的记录 id 更大，会出现在之后的页中；已读过的页不会重复返回
+ */
+public class FaceImagePager {
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+
+    private final FaceImageDao dao;
+    private final int pageSize;
+    private int lastId = Integer.MIN_VALUE;
+    private boolean finished;
+
+    public FaceImagePager(FaceImageDao dao) {
+        this(dao, DEFAULT_PAGE_SIZE);
+    }
+
+    public FaceImagePager(FaceImageDao dao, int pageSize) {
+        this.dao = dao;
+        this.pageSize = Math.max(1, pageSize);
+    }
+
+    /**
+     * 下一页记录，全部读完后返回空列表
+     */
+    public List<FaceImageInfo> next() {
+        if (finished) return Collections.emptyList();
+        List<FaceImageInfo> page = dao.getPage(lastId, pageSize);
+        if (page.size() < pageSize) {
+            finished = true;
+        }
+        if (!page.isEmpty()) {
+            lastId = page.get(page.size() - 1).getId();
+        }
+        return page;
+    }
+}
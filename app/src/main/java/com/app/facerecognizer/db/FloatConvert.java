@@ -2,32 +2,28 @@ package com.app.facerecognizer.db;
 
 import androidx.room.TypeConverter;
 
+/**
+ * 特征向量以小端序 float 的二进制 BLOB 存储，编码见 {@link FeatureCodec}
+ */
 public class FloatConvert {
     @TypeConverter
-    public String fromFloatArray(float[] value) {
-        if (value == null) {
-            return null;
-        }
-        StringBuilder sb = new StringBuilder();
-        for (int i = 0; i < value.length; i++) {
-            sb.append(value[i]);
-            if (i < value.length - 1) {
-                sb.append(",");
-            }
-        }
-        return sb.toString();
+    public byte[] fromFloatArray(float[] value) {
+        return FeatureCodec.toBytes(value);
     }
 
     @TypeConverter
-    public float[] toFloatArray(String value) {
-        if (value == null || value.isEmpty()) {
-            return null;
-        }
-        String[] parts = value.split(",");
-        float[] floatArray = new float[parts.length];
-        for (int i = 0; i < parts.length; i++) {
-            floatArray[i] = Float.parseFloat(parts[i]);
-        }
-        return floatArray;
+    public float[] toFloatArray(byte[] value) {
+        return FeatureCodec.fromBytes(value);
+    }
+
+    /**
+     * 数据库版本 1 使用的逗号分隔字符串格式，仅用于迁移旧数据
+     */
+    public static String toLegacyString(float[] value) {
+        return FeatureCodec.toLegacyString(value);
+    }
+
+    public static float[] fromLegacyString(String value) {
+        return FeatureCodec.fromLegacyString(value);
     }
 }
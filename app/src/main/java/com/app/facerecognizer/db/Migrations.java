@@ -0,0 +1,77 @@
+package com.app.facerecognizer.db;
+
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.SupportSQLiteStatement;
+
+import com.app.facerecognizer.db.entities.FaceChange;
+
+public class Migrations {
+
+    /**
+     * 版本 1 -> 2：feature 列由逗号分隔的字符串改为小端序 float BLOB。
+     * SQLite 无法直接修改列类型，这里建新表逐行转换后替换旧表，id 保持不变。
+     */
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `face_images_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `name` TEXT, `path` TEXT, `feature` BLOB)");
+            FloatConvert convert = new FloatConvert();
+            try (Cursor cursor = db.query("SELECT `id`, `name`, `path`, `feature` FROM `face_images`");
+                 SupportSQLiteStatement insert = db.compileStatement("INSERT INTO `face_images_new` (`id`, `name`, `path`, `feature`) VALUES (?, ?, ?, ?)")) {
+                while (cursor.moveToNext()) {
+                    insert.bindLong(1, cursor.getLong(0));
+                    bindNullableString(insert, 2, cursor.isNull(1) ? null : cursor.getString(1));
+                    bindNullableString(insert, 3, cursor.isNull(2) ? null : cursor.getString(2));
+                    byte[] feature = convert.fromFloatArray(FloatConvert.fromLegacyString(cursor.isNull(3) ? null : cursor.getString(3)));
+                    if (feature == null) {
+                        insert.bindNull(4);
+                    } else {
+                        insert.bindBlob(4, feature);
+                    }
+                    insert.executeInsert();
+                    insert.clearBindings();
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to migrate face_images to version 2", e);
+            }
+            db.execSQL("DROP TABLE `face_images`");
+            db.execSQL("ALTER TABLE `face_images_new` RENAME TO `face_images`");
+        }
+    };
+
+    /**
+     * 版本 2 -> 3：新增 face_changes 变更日志表，由触发器记录 face_images 的增删改
+     */
+    public static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `face_changes` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, `faceId` INTEGER NOT NULL, `op` INTEGER NOT NULL)");
+            createChangeLogTriggers(db);
+        }
+    };
+
+    /**
+     * 新建数据库和升级时都需要创建，Room 不管理触发器。更新按先删后增处理，记为 upsert
+     */
+    public static void createChangeLogTriggers(SupportSQLiteDatabase db) {
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `face_images_log_insert` AFTER INSERT ON `face_images` BEGIN "
+                + "INSERT INTO `face_changes` (`faceId`, `op`) VALUES (NEW.`id`, " + FaceChange.OP_UPSERT + "); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `face_images_log_update` AFTER UPDATE ON `face_images` BEGIN "
+                + "INSERT INTO `face_changes` (`faceId`, `op`) VALUES (OLD.`id`, " + FaceChange.OP_DELETE + "); "
+                + "INSERT INTO `face_changes` (`faceId`, `op`) VALUES (NEW.`id`, " + FaceChange.OP_UPSERT + "); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS `face_images_log_delete` AFTER DELETE ON `face_images` BEGIN "
+                + "INSERT INTO `face_changes` (`faceId`, `op`) VALUES (OLD.`id`, " + FaceChange.OP_DELETE + "); END");
+    }
+
+    private static void bindNullableString(SupportSQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
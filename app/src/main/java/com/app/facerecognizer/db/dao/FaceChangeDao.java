@@ -0,0 +1,21 @@
+package com.app.facerecognizer.db.dao;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+
+import com.app.facerecognizer.db.entities.FaceChange;
+
+import java.util.List;
+
+@Dao
+public interface FaceChangeDao {
+    @Query("SELECT * FROM face_changes WHERE seq > :afterSeq ORDER BY seq LIMIT :limit")
+    List<FaceChange> getAfter(long afterSeq, int limit);
+
+    @Query("SELECT IFNULL(MAX(seq), 0) FROM face_changes")
+    long maxSeq();
+
+    // 保留 seq 最大的一条，MAX(seq) 才能保持单调
+    @Query("DELETE FROM face_changes WHERE seq < :seq")
+    void deleteBefore(long seq);
+}
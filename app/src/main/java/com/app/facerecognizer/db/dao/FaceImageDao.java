@@ -11,11 +11,33 @@ import java.util.List;
 @Dao
 public interface FaceImageDao {
     @Insert
-    void insert(FaceImageInfo faceImageInfo);
+    long insert(FaceImageInfo faceImageInfo);
+
+    // 列表插入在同一个事务中完成
+    @Insert
+    long[] insertAll(List<FaceImageInfo> faceImageInfos);
 
     @Query("SELECT * FROM face_images")
     List<FaceImageInfo> getAll();
 
+    // 按主键分页，每页从上一页最后一个 id 之后开始，不受偏移量增长的影响
+    @Query("SELECT * FROM face_images WHERE id > :afterId ORDER BY id LIMIT :limit")
+    List<FaceImageInfo> getPage(int afterId, int limit);
+
+    @Query("SELECT * FROM face_images WHERE id IN (:ids)")
+    List<FaceImageInfo> getByIds(int[] ids);
+
+    @Query("SELECT * FROM face_images WHERE name = :name ORDER BY id LIMIT 1")
+    FaceImageInfo getFirstByName(String name);
+
+    @Query("SELECT COUNT(*) FROM face_images")
+    int count();
+
+    // 特征为 192 维 float（768 字节）的记录数，即能进入索引和快照的记录数。
+    // 版本 1 迁移来的记录可能没有特征
+    @Query("SELECT COUNT(*) FROM face_images WHERE length(feature) = 768")
+    int countWithFeature();
+
     @Query("DELETE FROM face_images WHERE id = :id")
     void deleteOne(int id);
 
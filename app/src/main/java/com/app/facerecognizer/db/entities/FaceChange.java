@@ -0,0 +1,42 @@
+package com.app.facerecognizer.db.entities;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * face_images 的变更日志，由数据库触发器写入。seq 使用 AUTOINCREMENT，删除旧记录后也不会复用
+ */
+@Entity(tableName = "face_changes")
+public class FaceChange {
+    public static final int OP_UPSERT = 1;
+    public static final int OP_DELETE = 2;
+
+    @PrimaryKey(autoGenerate = true)
+    private long seq;
+    private int faceId;
+    private int op;
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public int getFaceId() {
+        return faceId;
+    }
+
+    public void setFaceId(int faceId) {
+        this.faceId = faceId;
+    }
+
+    public int getOp() {
+        return op;
+    }
+
+    public void setOp(int op) {
+        this.op = op;
+    }
+}
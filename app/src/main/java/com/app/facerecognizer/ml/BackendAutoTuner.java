@@ -0,0 +1,135 @@
+package com.app.facerecognizer.ml;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import org.tensorflow.lite.Delegate;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.gpu.CompatibilityList;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 为当前设备和模型挑选最快的推理后端。结果按 "设备指纹/模型校验和" 保存在 filesDir 下，
+ * 系统升级或更换模型后会重新测量
+ */
+public final class BackendAutoTuner {
+
+    private static final String TAG = "BackendAutoTuner";
+    private static final String STORE_FILE = "inference_tuning.properties";
+
+    private static final AtomicBoolean backgroundTuning = new AtomicBoolean();
+
+    private BackendAutoTuner() {
+    }
+
+    /**
+     * 已保存的配置，尚未调优时返回 null
+     */
+    public static InferenceConfig getTunedConfig(Context context, ByteBuffer model) {
+        return store(context).get(storeKey(model));
+    }
+
+    /**
+     * 在低优先级后台线程中调优并保存结果，供之后创建的提取器使用。进程内只会启动一次
+     */
+    public static void tuneInBackground(Context context, MappedByteBuffer model, int maxThreads) {
+        if (!backgroundTuning.compareAndSet(false, true)) return;
+        Context appContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                tune(appContext, model, maxThreads);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to save tuning result", e);
+            }
+        }, TAG);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 测量全部候选配置并保存最快的一个，返回按延迟排列的测量结果
+     *
+     * @param maxThreads CPU 配置尝试的最大线程数
+     */
+    public static List<BackendTuner.Result> tune(Context context, MappedByteBuffer model, int maxThreads) throws IOException {
+        List<InferenceConfig> candidates = BackendTuner.candidates(maxThreads,
+                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1, isGpuSupported());
+        List<BackendTuner.Result> results = new BackendTuner().measure(candidates, config -> new InterpreterSession(model, config));
+        for (BackendTuner.Result result : results) {
+            Log.i(TAG, result.toString());
+        }
+        if (!results.isEmpty() && !results.get(0).isFailed()) {
+            store(context).put(storeKey(model), results.get(0).getConfig());
+        }
+        return results;
+    }
+
+    private static boolean isGpuSupported() {
+        try {
+            CompatibilityList compatibilityList = new CompatibilityList();
+            try {
+                return compatibilityList.isDelegateSupportedOnThisDevice();
+            } finally {
+                compatibilityList.close();
+            }
+        } catch (RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static TuningStore store(Context context) {
+        return new TuningStore(new File(context.getApplicationContext().getFilesDir(), STORE_FILE));
+    }
+
+    private static String storeKey(ByteBuffer model) {
+        return Build.FINGERPRINT + "/" + BackendTuner.checksum(model);
+    }
+
+    /**
+     * 以全零输入反复推理的解释器，只用于测量
+     */
+    private static final class InterpreterSession implements BackendTuner.Session {
+        private final Interpreter interpreter;
+        private final Delegate delegate;
+        private final ByteBuffer input = ByteBuffer
+                .allocateDirect(4 * FaceEmbeddingExtractor.INPUT_SIZE * FaceEmbeddingExtractor.INPUT_SIZE * 3)
+                .order(ByteOrder.nativeOrder());
+        private final ByteBuffer output = ByteBuffer
+                .allocateDirect(4 * FaceEmbeddingExtractor.EMBEDDING_SIZE)
+                .order(ByteOrder.nativeOrder());
+
+        InterpreterSession(MappedByteBuffer model, InferenceConfig config) {
+            Interpreter.Options options = new Interpreter.Options();
+            delegate = FaceEmbeddingExtractor.applyConfig(options, config);
+            try {
+                interpreter = new Interpreter(model, options);
+            } catch (RuntimeException e) {
+                FaceEmbeddingExtractor.closeDelegate(delegate);
+                throw e;
+            }
+        }
+
+        @Override
+        public void run() {
+            input.rewind();
+            output.rewind();
+            interpreter.run(input, output);
+        }
+
+        @Override
+        public void close() {
+            interpreter.close();
+            FaceEmbeddingExtractor.closeDelegate(delegate);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.app.facerecognizer.ml;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程内共享的特征提取器池。Interpreter 不是线程安全的，池中每个提取器同一时间只借给一个线程，
+ * 所有提取器共享同一个映射的模型缓冲区。
+ * <p>
+ * 借出的提取器必须通过 {@link #release} 归还，简单场景可直接用 {@link #getFaceEmbedding(Bitmap)}
+ */
+public class EmbeddingExtractorPool {
+
+    private static final String TAG = "EmbeddingExtractorPool";
+    // 阻塞借出时检查池是否已关闭的间隔，关闭后等待中的线程最迟在这个时间后抛出异常
+    private static final long CLOSED_CHECK_MS = 100;
+
+    private static volatile EmbeddingExtractorPool INSTANCE = null;
+    private static int configuredPoolSize = 0;
+    private static int configuredNumThreads = 0;
+
+    private final List<FaceEmbeddingExtractor> extractors;
+    private final Set<FaceEmbeddingExtractor> members;
+    private final BlockingQueue<FaceEmbeddingExtractor> idle;
+    private final InferenceConfig inferenceConfig;
+    private volatile boolean closed;
+
+    private EmbeddingExtractorPool(MappedByteBuffer model, int poolSize, InferenceConfig inferenceConfig) {
+        this.inferenceConfig = inferenceConfig;
+        this.extractors = new ArrayList<>(poolSize);
+        this.members = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            FaceEmbeddingExtractor extractor = new FaceEmbeddingExtractor(model, inferenceConfig);
+            extractors.add(extractor);
+            members.add(extractor);
+            idle.add(extractor);
+        }
+    }
+
+    /**
+     * 设置池大小和每个解释器的线程数，只对之后创建的池生效，不大于 0 时使用默认值。
+     * 指定线程数时固定使用 CPU 推理，不再采用自动调优的结果
+     */
+    public static synchronized void configure(int poolSize, int numThreads) {
+        configuredPoolSize = poolSize;
+        configuredNumThreads = numThreads;
+        if (INSTANCE != null) {
+            Log.w(TAG, "Pool already created, configuration applies after shutdown()");
+        }
+    }
+
+    public static EmbeddingExtractorPool getInstance(Context context) throws IOException {
+        EmbeddingExtractorPool pool = INSTANCE;
+        if (pool == null) {
+            synchronized (EmbeddingExtractorPool.class) {
+                pool = INSTANCE;
+                if (pool == null) {
+                    int processors = Runtime.getRuntime().availableProcessors();
+                    int poolSize = configuredPoolSize > 0 ? configuredPoolSize : Math.max(1, Math.min(3, processors / 2));
+                    int numThreads = configuredNumThreads > 0 ? configuredNumThreads : Math.max(1, processors / poolSize);
+                    MappedByteBuffer model = FaceEmbeddingExtractor.loadModelFile(context.getApplicationContext());
+                    InferenceConfig config = configuredNumThreads > 0 ? InferenceConfig.cpu(numThreads, true)
+                            : BackendAutoTuner.getTunedConfig(context, model);
+                    if (config == null) {
+                        // 首次运行先用 CPU，调优在后台完成后下次创建池时生效
+                        config = InferenceConfig.cpu(numThreads, true);
+                        BackendAutoTuner.tuneInBackground(context, model, numThreads);
+                    }
+                    Log.i(TAG, "Creating " + poolSize + " extractors with " + config);
+                    pool = new EmbeddingExtractorPool(model, poolSize, config);
+                    INSTANCE = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * 关闭进程内的池。已借出的提取器在归还时关闭，正在等待借出的线程会抛出 IllegalStateException，
+     * 之后再调用 getInstance 会创建新的池
+     */
+    public static void shutdown() {
+        EmbeddingExtractorPool pool;
+        synchronized (EmbeddingExtractorPool.class) {
+            pool = INSTANCE;
+            INSTANCE = null;
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    public int size() {
+        return extractors.size();
+    }
+
+    public InferenceConfig getInferenceConfig() {
+        return inferenceConfig;
+    }
+
+    /**
+     * 借出一个提取器，没有空闲时阻塞等待
+     *
+     * @throws IllegalStateException 池已关闭，包括等待期间被关闭
+     */
+    public FaceEmbeddingExtractor acquire() throws InterruptedException {
+        while (true) {
+            FaceEmbeddingExtractor extractor = tryAcquire(CLOSED_CHECK_MS, TimeUnit.MILLISECONDS);
+            if (extractor != null) return extractor;
+        }
+    }
+
+    /**
+     * 借出一个提取器，没有空闲时立即返回 null
+     */
+    public FaceEmbeddingExtractor tryAcquire() {
+        ensureOpen();
+        return checkOpen(idle.poll());
+    }
+
+    /**
+     * 借出一个提取器，超时仍没有空闲时返回 null。池在等待期间关闭时抛出 IllegalStateException
+     */
+    public FaceEmbeddingExtractor tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            ensureOpen();
+            long remaining = deadline - System.nanoTime();
+            // 关闭时 idle 被清空，不会再有提取器放回，分段等待以便及时发现关闭
+            FaceEmbeddingExtractor extractor = idle.poll(
+                    Math.min(Math.max(0, remaining), TimeUnit.MILLISECONDS.toNanos(CLOSED_CHECK_MS)), TimeUnit.NANOSECONDS);
+            if (extractor != null) return checkOpen(extractor);
+            if (remaining <= 0) return null;
+        }
+    }
+
+    public void release(FaceEmbeddingExtractor extractor) {
+        if (extractor == null) return;
+        if (!members.contains(extractor)) {
+            throw new IllegalArgumentException("Extractor does not belong to this pool");
+        }
+        synchronized (this) {
+            if (closed) {
+                extractor.close();
+                return;
+            }
+            // 在锁内放回，避免与 close 交错后提取器留在已关闭的池中
+            idle.offer(extractor);
+        }
+    }
+
+    public float[] getFaceEmbedding(Bitmap bitmap) {
+        FaceEmbeddingExtractor extractor = acquireUninterruptibly();
+        try {
+            return extractor.getFaceEmbedding(bitmap);
+        } finally {
+            release(extractor);
+        }
+    }
+
+    /**
+     * 只对画面中的人脸区域提取特征，参数含义见 {@link FaceEmbeddingExtractor#getFaceEmbedding(Bitmap, int, int[], float[])}
+     */
+    public float[] getFaceEmbedding(Bitmap frame, int rotationDegrees, int[] crop) {
+        float[] embedding = new float[FaceEmbeddingExtractor.EMBEDDING_SIZE];
+        FaceEmbeddingExtractor extractor = acquireUninterruptibly();
+        try {
+            extractor.getFaceEmbedding(frame, rotationDegrees, crop, embedding);
+        } finally {
+            release(extractor);
+        }
+        return embedding;
+    }
+
+    public float[] getFaceEmbedding(YuvPlanes planes, int rotationDegrees, boolean mirror, int[] crop) {
+        float[] embedding = new float[FaceEmbeddingExtractor.EMBEDDING_SIZE];
+        FaceEmbeddingExtractor extractor = acquireUninterruptibly();
+        try {
+            extractor.getFaceEmbedding(planes, rotationDegrees, mirror, crop, embedding);
+        } finally {
+            release(extractor);
+        }
+        return embedding;
+    }
+
+    /**
+     * 同一帧中的多个人脸区域用一个提取器批量推理，参数含义见
+     * {@link FaceEmbeddingExtractor#getFaceEmbeddings(YuvPlanes, int, boolean, int[][], int, float[][])}
+     */
+    public float[][] getFaceEmbeddings(YuvPlanes planes, int rotationDegrees, boolean mirror, int[][] crops, int count) {
+        float[][] embeddings = new float[count][FaceEmbeddingExtractor.EMBEDDING_SIZE];
+        FaceEmbeddingExtractor extractor = acquireUninterruptibly();
+        try {
+            extractor.getFaceEmbeddings(planes, rotationDegrees, mirror, crops, count, embeddings);
+        } finally {
+            release(extractor);
+        }
+        return embeddings;
+    }
+
+    public float[][] getFaceEmbeddings(Bitmap frame, int rotationDegrees, int[][] crops, int count) {
+        float[][] embeddings = new float[count][FaceEmbeddingExtractor.EMBEDDING_SIZE];
+        FaceEmbeddingExtractor extractor = acquireUninterruptibly();
+        try {
+            extractor.getFaceEmbeddings(frame, rotationDegrees, crops, count, embeddings);
+        } finally {
+            release(extractor);
+        }
+        return embeddings;
+    }
+
+    public List<float[]> getFaceEmbeddings(List<Bitmap> bitmaps) {
+        FaceEmbeddingExtractor extractor = acquireUninterruptibly();
+        try {
+            return extractor.getFaceEmbeddings(bitmaps);
+        } finally {
+            release(extractor);
+        }
+    }
+
+    private FaceEmbeddingExtractor acquireUninterruptibly() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return acquire();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool has been shut down");
+        }
+    }
+
+    private FaceEmbeddingExtractor checkOpen(FaceEmbeddingExtractor extractor) {
+        if (extractor == null) return null;
+        synchronized (this) {
+            if (closed) {
+                extractor.close();
+                throw new IllegalStateException("Pool has been shut down");
+            }
+        }
+        return extractor;
+    }
+
+    private void close() {
+        List<FaceEmbeddingExtractor> drained = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            idle.drainTo(drained);
+        }
+        for (FaceEmbeddingExtractor extractor : drained) {
+            extractor.close();
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.app.facerecognizer.ml;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.app.facerecognizer.db.entities.FaceImageInfo;
+import com.app.facerecognizer.utils.BitmapUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 批量录入流水线：解码 → 提取特征 → 写库三个阶段，阶段之间用有界队列连接。
+ * 解码和特征提取各有多个线程，写库单线程按批次提交事务。
+ * <p>
+ * 每次 {@link #start} 使用独立的线程池，结束或取消后线程池会被关闭
+ */
+public class EnrollmentPipeline {
+
+    private static final String TAG = "EnrollmentPipeline";
+    // 解码时保留的最短边，模型输入是 112，留出余量给缩放滤波
+    private static final int DECODE_MIN_SIDE = FaceEmbeddingExtractor.INPUT_SIZE * 2;
+
+    public interface Listener {
+        /**
+         * 每提交一批后回调，在写库线程上执行
+         */
+        void onProgress(int processed, int total);
+
+        /**
+         * 全部完成或被取消后回调，在写库线程上执行
+         */
+        void onFinished(Stats stats, boolean cancelled);
+    }
+
+    /**
+     * 各阶段处理条数与耗时，耗时为该阶段所有线程的累计工作时间
+     */
+    public static class Stats {
+        public final AtomicInteger decoded = new AtomicInteger();
+        public final AtomicInteger decodeFailed = new AtomicInteger();
+        public final AtomicLong decodeNanos = new AtomicLong();
+        public final AtomicInteger embedded = new AtomicInteger();
+        public final AtomicLong embedNanos = new AtomicLong();
+        public final AtomicInteger persisted = new AtomicInteger();
+        public final AtomicLong persistNanos = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+
+        public long elapsedMillis() {
+            long end = endNanos != 0 ? endNanos : System.nanoTime();
+            return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+        }
+
+        private static String rate(int count, long nanos) {
+            return nanos == 0 ? "-" : String.format("%.1f/s", count * 1e9 / nanos);
+        }
+
+        @Override
+        public String toString() {
+            return "decode " + decoded.get() + " (" + decodeFailed.get() + " failed, " + rate(decoded.get(), decodeNanos.get()) + " per thread)"
+                    + ", embed " + embedded.get() + " (" + rate(embedded.get(), embedNanos.get()) + " per thread)"
+                    + ", persist " + persisted.get() + " (" + rate(persisted.get(), persistNanos.get()) + ")"
+                    + ", total " + elapsedMillis() + "ms";
+        }
+    }
+
+    private static final class Item {
+        final File file;
+        final Bitmap bitmap;
+
+        Item(File file, Bitmap bitmap) {
+            this.file = file;
+            this.bitmap = bitmap;
+        }
+    }
+
+    // 队列结束标记
+    private static final Item END = new Item(null, null);
+    private static final FaceImageInfo END_INFO = new FaceImageInfo(null, null, null);
+
+    private final EmbeddingExtractorPool extractorPool;
+    private final FaceIndexManager indexManager;
+    private int decodeThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    private int queueCapacity = 16;
+    private int embedBatchSize = 8;
+    private int persistBatchSize = 64;
+
+    private volatile boolean cancelled;
+    private ExecutorService executor;
+
+    public EnrollmentPipeline(EmbeddingExtractorPool extractorPool, FaceIndexManager indexManager) {
+        this.extractorPool = extractorPool;
+        this.indexManager = indexManager;
+    }
+
+    public EnrollmentPipeline setDecodeThreads(int decodeThreads) {
+        this.decodeThreads = Math.max(1, decodeThreads);
+        return this;
+    }
+
+    public EnrollmentPipeline setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        return this;
+    }
+
+    public EnrollmentPipeline setEmbedBatchSize(int embedBatchSize) {
+        this.embedBatchSize = Math.max(1, embedBatchSize);
+        return this;
+    }
+
+    public EnrollmentPipeline setPersistBatchSize(int persistBatchSize) {
+        this.persistBatchSize = Math.max(1, persistBatchSize);
+        return this;
+    }
+
+    /**
+     * 开始录入，立即返回。同一实例同一时间只能运行一次
+     */
+    public synchronized Stats start(List<File> files, Listener listener) {
+        if (executor != null && !executor.isTerminated()) {
+            throw new IllegalStateException("Enrollment already running");
+        }
+        cancelled = false;
+        int embedThreads = extractorPool.size();
+        Stats stats = new Stats();
+        BlockingQueue<Item> decodedQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<FaceImageInfo> embeddedQueue = new ArrayBlockingQueue<>(queueCapacity * embedBatchSize);
+        AtomicInteger nextFile = new AtomicInteger();
+        AtomicInteger decodersLeft = new AtomicInteger(decodeThreads);
+        AtomicInteger embeddersLeft = new AtomicInteger(embedThreads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(decodeThreads + embedThreads + 1);
+        this.executor = executor;
+        for (int i = 0; i < decodeThreads; i++) {
+            executor.execute(() -> {
+                try {
+                    decode(files, nextFile, decodedQueue, stats);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    abort(executor, e);
+                } finally {
+                    // 最后一个解码线程通知所有特征提取线程结束
+                    if (decodersLeft.decrementAndGet() == 0) {
+                        for (int j = 0; j < embedThreads; j++) {
+                            putQuietly(decodedQueue, END);
+                        }
+                    }
+                }
+            });
+        }
+        for (int i = 0; i < embedThreads; i++) {
+            executor.execute(() -> {
+                try {
+                    embed(decodedQueue, embeddedQueue, stats);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (RuntimeException e) {
+                    abort(executor, e);
+                } finally {
+                    if (embeddersLeft.decrementAndGet() == 0) {
+                        putQuietly(embeddedQueue, END_INFO);
+                    }
+                }
+            });
+        }
+        executor.execute(() -> {
+            try {
+                persist(embeddedQueue, files.size(), stats, listener);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RuntimeException e) {
+                abort(executor, e);
+            } finally {
+                stats.endNanos = System.nanoTime();
+                Log.i(TAG, "Enrollment " + (cancelled ? "cancelled: " : "finished: ") + stats);
+                if (listener != null) {
+                    listener.onFinished(stats, cancelled);
+                }
+                executor.shutdown();
+            }
+        });
+        return stats;
+    }
+
+    /**
+     * 取消录入，已提交的批次保留在数据库中
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // 任一阶段出错时终止整个流水线，避免上游线程阻塞在已满的队列上
+    private void abort(ExecutorService executor, RuntimeException e) {
+        Log.e(TAG, "Enrollment failed", e);
+        cancelled = true;
+        executor.shutdownNow();
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    private void decode(List<File> files, AtomicInteger nextFile, BlockingQueue<Item> out, Stats stats) throws InterruptedException {
+        int index;
+        while (!cancelled && (index = nextFile.getAndIncrement()) < files.size()) {
+            File file = files.get(index);
+            long start = System.nanoTime();
+            Bitmap bitmap = BitmapUtil.decodeSampledFile(file.getPath(), DECODE_MIN_SIDE);
+            stats.decodeNanos.addAndGet(System.nanoTime() - start);
+            if (bitmap == null) {
+                Log.w(TAG, "Failed to decode " + file);
+                stats.decodeFailed.incrementAndGet();
+                continue;
+            }
+            stats.decoded.incrementAndGet();
+            out.put(new Item(file, bitmap));
+        }
+    }
+
+    private void embed(BlockingQueue<Item> in, BlockingQueue<FaceImageInfo> out, Stats stats) throws InterruptedException {
+        List<Item> batch = new ArrayList<>(embedBatchSize);
+        List<Bitmap> bitmaps = new ArrayList<>(embedBatchSize);
+        boolean done = false;
+        while (!done && !cancelled) {
+            batch.clear();
+            batch.add(in.take());
+            in.drainTo(batch, embedBatchSize - 1);
+            // 结束标记之后不会再有数据，标记之前的照常处理
+            int endIndex = batch.indexOf(END);
+            if (endIndex >= 0) {
+                done = true;
+                for (int i = batch.size() - 1; i > endIndex; i--) {
+                    // 同一批里多取的结束标记放回去给其他线程
+                    if (batch.get(i) == END) in.put(END);
+                }
+                batch.subList(endIndex, batch.size()).clear();
+            }
+            if (batch.isEmpty()) continue;
+
+            bitmaps.clear();
+            for (Item item : batch) {
+                bitmaps.add(item.bitmap);
+            }
+            long start = System.nanoTime();
+            List<float[]> embeddings = extractorPool.getFaceEmbeddings(bitmaps);
+            stats.embedNanos.addAndGet(System.nanoTime() - start);
+            for (int i = 0; i < batch.size(); i++) {
+                Item item = batch.get(i);
+                item.bitmap.recycle();
+                out.put(new FaceImageInfo(item.file.getName(), item.file.getPath(), embeddings.get(i)));
+            }
+            stats.embedded.addAndGet(batch.size());
+        }
+    }
+
+    private void persist(BlockingQueue<FaceImageInfo> in, int total, Stats stats, Listener listener) throws InterruptedException {
+        List<FaceImageInfo> batch = new ArrayList<>(persistBatchSize);
+        boolean done = false;
+        while (!done && !cancelled) {
+            batch.clear();
+            batch.add(in.take());
+            in.drainTo(batch, persistBatchSize - 1);
+            int endIndex = batch.indexOf(END_INFO);
+            if (endIndex >= 0) {
+                done = true;
+                batch.subList(endIndex, batch.size()).clear();
+            }
+            if (batch.isEmpty()) continue;
+
+            long start = System.nanoTime();
+            indexManager.insertAll(new ArrayList<>(batch));
+            stats.persistNanos.addAndGet(System.nanoTime() - start);
+            stats.persisted.addAndGet(batch.size());
+            if (listener != null) {
+                listener.onProgress(stats.persisted.get() + stats.decodeFailed.get(), total);
+            }
+        }
+    }
+
+    private static <T> void putQuietly(BlockingQueue<T> queue, T item) {
+        // 线程池被关闭时不再等待队列空间，其他线程也已被中断
+        if (!queue.offer(item)) {
+            try {
+                while (!Thread.currentThread().isInterrupted() && !queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                    // 等待下游消费
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
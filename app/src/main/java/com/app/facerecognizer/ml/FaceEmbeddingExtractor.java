@@ -1,73 +1,456 @@
 package com.app.facerecognizer.ml;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
 import android.util.Log;
 
+import com.app.facerecognizer.metrics.PipelineMetrics;
+
+import org.tensorflow.lite.Delegate;
 import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.gpu.GpuDelegate;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+/**
+ * MobileFaceNet 特征提取。输入输出缓冲区、缩放目标和像素数组都在构造时分配，
+ * 稳定运行时每帧不再产生新的对象（{@link #getFaceEmbedding(Bitmap)} 返回的结果数组除外）。
+ * 多张图片或同一帧中的多个人脸区域可通过 {@link #getFaceEmbeddings} 合并成一个批次推理，模型不支持动态批大小时退回逐张推理。
+ * 同一实例的调用会串行执行。预处理和推理的耗时记入 {@link PipelineMetrics#global()}
+ */
 public class FaceEmbeddingExtractor {
 
-    private Context mContext;
+    public static final int INPUT_SIZE = 112; // MobileFaceNet 输入尺寸
+    public static final int EMBEDDING_SIZE = 192; // MobileFaceNet 输出的嵌入向量长度是 192
+    private static final int PIXEL_COUNT = INPUT_SIZE * INPUT_SIZE;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 8;
+
+    private static final String MODEL_FILE = "mobile_face_net.tflite";
+
     private Interpreter interpreter;
+    private final Delegate delegate;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    // 预分配的推理缓冲区
+    private final ByteBuffer inputBuffer;
+    private final FloatBuffer inputFloats;
+    private final ByteBuffer outputBuffer;
+    private final FloatBuffer outputFloats;
+    private final int[] pixels = new int[PIXEL_COUNT];
+    private final float[] pixelFloats = new float[PIXEL_COUNT * 3];
+
+    // 复用的缩放目标
+    private final Bitmap scaledBitmap = Bitmap.createBitmap(INPUT_SIZE, INPUT_SIZE, Bitmap.Config.ARGB_8888);
+    private final Canvas scaledCanvas = new Canvas(scaledBitmap);
+    private final Paint scalePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Matrix scaleMatrix = new Matrix();
+    private final RectF srcRect = new RectF();
+    private final RectF dstRect = new RectF(0, 0, INPUT_SIZE, INPUT_SIZE);
+    private final YuvConverter yuvConverter = new YuvConverter(INPUT_SIZE);
+    // Interpreter.run 每次都会新建输入数组和输出 Map，这里复用
+    private final Object[] invokeInputs = new Object[1];
+    private final Map<Integer, Object> invokeOutputs = new HashMap<>();
+
+    // 批量推理
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private boolean batchSupported = true;
+    private int currentBatchSize = 1;
+    // 按批大小缓存的缓冲区，解释器要求缓冲区容量与张量大小完全一致
+    private ByteBuffer[] batchInputBuffers = new ByteBuffer[0];
+    private FloatBuffer[] batchInputFloats = new FloatBuffer[0];
+    private ByteBuffer[] batchOutputBuffers = new ByteBuffer[0];
+    private FloatBuffer[] batchOutputFloats = new FloatBuffer[0];
 
     public FaceEmbeddingExtractor(Context context) throws IOException {
-        mContext = context;
+        this(loadModelFile(context), 0);
+    }
+
+    /**
+     * 使用已映射的模型创建，多个实例可共享同一个模型缓冲区
+     *
+     * @param numThreads 解释器的 CPU 线程数，不大于 0 时使用默认值
+     */
+    public FaceEmbeddingExtractor(MappedByteBuffer model, int numThreads) {
+        this(model, InferenceConfig.cpu(numThreads, true));
+    }
+
+    /**
+     * 按指定的推理后端创建，配置通常来自 {@link BackendAutoTuner}
+     */
+    public FaceEmbeddingExtractor(MappedByteBuffer model, InferenceConfig config) {
         Interpreter.Options options = new Interpreter.Options();
-        options.setUseNNAPI(true);  // 启用NNAPI硬件加速
+        this.delegate = applyConfig(options, config);
         // 初始化 TensorFlow Lite 解释器
-        this.interpreter = new Interpreter(loadModelFile(),options);
+        try {
+            this.interpreter = new Interpreter(model, options);
+        } catch (RuntimeException e) {
+            closeDelegate(delegate);
+            throw e;
+        }
+
+        inputBuffer = ByteBuffer.allocateDirect(4 * PIXEL_COUNT * 3).order(ByteOrder.nativeOrder());
+        inputFloats = inputBuffer.asFloatBuffer();
+        outputBuffer = ByteBuffer.allocateDirect(4 * EMBEDDING_SIZE).order(ByteOrder.nativeOrder());
+        outputFloats = outputBuffer.asFloatBuffer();
+    }
+
+    /**
+     * 把推理配置写入解释器选项
+     *
+     * @return 需要在解释器关闭后一并关闭的委托，没有时为 null
+     */
+    static Delegate applyConfig(Interpreter.Options options, InferenceConfig config) {
+        switch (config.getBackend()) {
+            case NNAPI:
+                options.setUseNNAPI(true);
+                return null;
+            case GPU:
+                Delegate gpuDelegate = new GpuDelegate();
+                options.addDelegate(gpuDelegate);
+                return gpuDelegate;
+            default:
+                if (config.getNumThreads() > 0) {
+                    options.setNumThreads(config.getNumThreads());
+                }
+                options.setUseXNNPACK(config.isUseXnnpack());
+                return null;
+        }
     }
 
-    private MappedByteBuffer loadModelFile() throws IOException {
-        FileInputStream fileInputStream = new FileInputStream(mContext.getAssets().openFd("mobile_face_net.tflite").getFileDescriptor());
-        FileChannel fileChannel = fileInputStream.getChannel();
-        long startOffset = mContext.getAssets().openFd("mobile_face_net.tflite").getStartOffset();
-        long declaredLength = mContext.getAssets().openFd("mobile_face_net.tflite").getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    static void closeDelegate(Delegate delegate) {
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    public static MappedByteBuffer loadModelFile(Context context) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = context.getAssets().openFd(MODEL_FILE);
+             FileInputStream fileInputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = fileInputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        }
     }
 
     public float[] getFaceEmbedding(Bitmap bitmap) {
+        float[] embedding = new float[EMBEDDING_SIZE];
+        getFaceEmbedding(bitmap, embedding);
+        return embedding;
+    }
+
+    /**
+     * 提取特征写入调用方提供的数组，不产生任何分配
+     *
+     * @return 是否成功，bitmap 为空时 out 被清零
+     */
+    public synchronized boolean getFaceEmbedding(Bitmap bitmap, float[] out) {
         if (bitmap == null) {
             Log.e("FaceEmbeddingExtractor", "Bitmap is null");
-            return new float[192]; // 返回默认值或抛出异常
+            Arrays.fill(out, 0, EMBEDDING_SIZE, 0f);
+            return false;
+        }
+        if (currentBatchSize != 1) {
+            resizeBatch(1);
+        }
+        long start = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+        inputFloats.rewind();
+        preprocessBitmap(bitmap, inputFloats);
+        metrics.end(PipelineMetrics.Stage.PREPROCESS, start);
+        invoke(inputBuffer, outputBuffer);
+        outputFloats.rewind();
+        outputFloats.get(out, 0, EMBEDDING_SIZE);
+        return true;
+    }
+
+    /**
+     * 只对画面中的人脸区域提取特征，旋转、裁剪和缩放在一次绘制中完成
+     *
+     * @param frame           传感器方向的相机画面
+     * @param rotationDegrees 画面转为正向需要顺时针旋转的角度
+     * @param crop            正向坐标下的裁剪区域 left, top, right, bottom
+     */
+    public synchronized boolean getFaceEmbedding(Bitmap frame, int rotationDegrees, int[] crop, float[] out) {
+        if (frame == null) {
+            Arrays.fill(out, 0, EMBEDDING_SIZE, 0f);
+            return false;
+        }
+        if (currentBatchSize != 1) {
+            resizeBatch(1);
+        }
+        long start = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+        inputFloats.rewind();
+        setCropMatrix(frame, rotationDegrees, crop);
+        drawAndConvert(frame, inputFloats);
+        metrics.end(PipelineMetrics.Stage.PREPROCESS, start);
+        invoke(inputBuffer, outputBuffer);
+        outputFloats.rewind();
+        outputFloats.get(out, 0, EMBEDDING_SIZE);
+        return true;
+    }
+
+    /**
+     * 直接由相机的 YUV 数据提取特征，不经过 Bitmap。参数含义见 {@link YuvConverter#convert}
+     */
+    public synchronized boolean getFaceEmbedding(YuvPlanes planes, int rotationDegrees, boolean mirror, int[] crop, float[] out) {
+        if (planes == null) {
+            Arrays.fill(out, 0, EMBEDDING_SIZE, 0f);
+            return false;
+        }
+        if (currentBatchSize != 1) {
+            resizeBatch(1);
         }
-        ByteBuffer input = preprocessBitmap(bitmap);
-        float[][] output = new float[1][192]; // MobileFaceNet 输出的嵌入向量长度是 192
-        interpreter.run(input, output);
-        return output[0];
+        long start = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+        yuvConverter.convert(planes, rotationDegrees, mirror, crop, pixelFloats);
+        inputFloats.rewind();
+        inputFloats.put(pixelFloats);
+        metrics.end(PipelineMetrics.Stage.PREPROCESS, start);
+        invoke(inputBuffer, outputBuffer);
+        outputFloats.rewind();
+        outputFloats.get(out, 0, EMBEDDING_SIZE);
+        return true;
     }
 
-    private ByteBuffer preprocessBitmap(Bitmap bitmap) {
-        Bitmap resizedBitmap = Bitmap.createScaledBitmap(bitmap, 112, 112, true); // MobileFaceNet 输入尺寸
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(4 * 112 * 112 * 3);
-        byteBuffer.order(ByteOrder.nativeOrder());
+    /**
+     * 设置批量推理时单个批次的最大图片数
+     */
+    public synchronized void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    public synchronized boolean isBatchSupported() {
+        return batchSupported;
+    }
+
+    /**
+     * 批量提取特征，按 maxBatchSize 分批，每批只调用一次解释器。
+     * 为空的图片对应全零特征
+     */
+    public synchronized List<float[]> getFaceEmbeddings(List<Bitmap> bitmaps) {
+        List<float[]> embeddings = new ArrayList<>(bitmaps.size());
+        int start = 0;
+        while (start < bitmaps.size()) {
+            int batch = Math.min(maxBatchSize, bitmaps.size() - start);
+            if (batch > 1 && batchSupported && resizeBatch(batch)) {
+                runBatch(bitmaps, start, batch, embeddings);
+            } else {
+                batch = 1;
+                float[] embedding = new float[EMBEDDING_SIZE];
+                getFaceEmbedding(bitmaps.get(start), embedding);
+                embeddings.add(embedding);
+            }
+            start += batch;
+        }
+        return embeddings;
+    }
+
+    /**
+     * 同一帧中的多个人脸区域合并成批次推理，参数含义见 {@link #getFaceEmbedding(YuvPlanes, int, boolean, int[], float[])}
+     *
+     * @param crops 前 count 个为各人脸的裁剪区域
+     * @param out   第 i 个区域的特征写入 out[i]
+     */
+    public synchronized void getFaceEmbeddings(YuvPlanes planes, int rotationDegrees, boolean mirror, int[][] crops, int count,
+                                               float[][] out) {
+        embedCrops(count, out, (index, target) -> {
+            yuvConverter.convert(planes, rotationDegrees, mirror, crops[index], pixelFloats);
+            target.put(pixelFloats);
+        });
+    }
+
+    /**
+     * Bitmap 画面的多人脸批量提取，参数含义见 {@link #getFaceEmbedding(Bitmap, int, int[], float[])}
+     */
+    public synchronized void getFaceEmbeddings(Bitmap frame, int rotationDegrees, int[][] crops, int count, float[][] out) {
+        embedCrops(count, out, (index, target) -> {
+            setCropMatrix(frame, rotationDegrees, crops[index]);
+            drawAndConvert(frame, target);
+        });
+    }
+
+    // 把第 index 个输入预处理后写入 target 的当前位置
+    private interface InputWriter {
+        void write(int index, FloatBuffer target);
+    }
+
+    /**
+     * 按 maxBatchSize 分批推理 count 个输入，结果写入 out[i]
+     */
+    private void embedCrops(int count, float[][] out, InputWriter writer) {
+        int start = 0;
+        while (start < count) {
+            int batch = Math.min(maxBatchSize, count - start);
+            if (batch > 1 && batchSupported && resizeBatch(batch)) {
+                FloatBuffer batchIn = batchInputFloats[batch];
+                FloatBuffer batchOut = batchOutputFloats[batch];
+                long preprocessStart = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+                batchIn.rewind();
+                for (int i = 0; i < batch; i++) {
+                    writer.write(start + i, batchIn);
+                }
+                metrics.end(PipelineMetrics.Stage.PREPROCESS, preprocessStart);
+                invoke(batchInputBuffers[batch], batchOutputBuffers[batch]);
+                batchOut.rewind();
+                for (int i = 0; i < batch; i++) {
+                    batchOut.get(out[start + i], 0, EMBEDDING_SIZE);
+                }
+            } else {
+                batch = 1;
+                if (currentBatchSize != 1) {
+                    resizeBatch(1);
+                }
+                long preprocessStart = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+                inputFloats.rewind();
+                writer.write(start, inputFloats);
+                metrics.end(PipelineMetrics.Stage.PREPROCESS, preprocessStart);
+                invoke(inputBuffer, outputBuffer);
+                outputFloats.rewind();
+                outputFloats.get(out[start], 0, EMBEDDING_SIZE);
+            }
+            start += batch;
+        }
+    }
 
-        int[] intValues = new int[112 * 112];
-        resizedBitmap.getPixels(intValues, 0, 112, 0, 0, 112, 112);
+    private void runBatch(List<Bitmap> bitmaps, int start, int batch, List<float[]> embeddings) {
+        FloatBuffer batchIn = batchInputFloats[batch];
+        FloatBuffer batchOut = batchOutputFloats[batch];
+        long preprocessStart = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+        batchIn.rewind();
+        for (int i = 0; i < batch; i++) {
+            Bitmap bitmap = bitmaps.get(start + i);
+            if (bitmap == null) {
+                Arrays.fill(pixelFloats, 0f);
+                batchIn.put(pixelFloats);
+            } else {
+                preprocessBitmap(bitmap, batchIn);
+            }
+        }
+        metrics.end(PipelineMetrics.Stage.PREPROCESS, preprocessStart);
+        invoke(batchInputBuffers[batch], batchOutputBuffers[batch]);
+        batchOut.rewind();
+        for (int i = 0; i < batch; i++) {
+            float[] embedding = new float[EMBEDDING_SIZE];
+            if (bitmaps.get(start + i) == null) {
+                batchOut.position(batchOut.position() + EMBEDDING_SIZE);
+            } else {
+                batchOut.get(embedding);
+            }
+            embeddings.add(embedding);
+        }
+    }
+
+    private void invoke(ByteBuffer input, ByteBuffer output) {
+        long start = metrics.start(PipelineMetrics.Stage.INVOKE);
+        input.rewind();
+        output.rewind();
+        invokeInputs[0] = input;
+        invokeOutputs.put(0, output);
+        interpreter.runForMultipleInputsOutputs(invokeInputs, invokeOutputs);
+        metrics.end(PipelineMetrics.Stage.INVOKE, start);
+    }
 
-        for (int pixelValue : intValues) {
-            float r = ((pixelValue >> 16) & 0xFF) / 255.0f;
-            float g = ((pixelValue >> 8) & 0xFF) / 255.0f;
-            float b = (pixelValue & 0xFF) / 255.0f;
+    /**
+     * 调整输入张量的批大小，模型不支持时记录下来并恢复为 1
+     */
+    private boolean resizeBatch(int batch) {
+        if (currentBatchSize == batch) return true;
+        try {
+            interpreter.resizeInput(0, new int[]{batch, INPUT_SIZE, INPUT_SIZE, 3});
+            interpreter.allocateTensors();
+            int[] outputShape = interpreter.getOutputTensor(0).shape();
+            if (outputShape.length != 2 || outputShape[0] != batch || outputShape[1] != EMBEDDING_SIZE) {
+                throw new IllegalArgumentException("Unexpected output shape " + Arrays.toString(outputShape));
+            }
+            currentBatchSize = batch;
+            ensureBatchBuffers(batch);
+            return true;
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            if (batch == 1) throw e;
+            Log.w("FaceEmbeddingExtractor", "Dynamic batch size not supported, falling back to batch 1", e);
+            batchSupported = false;
+            resizeBatch(1);
+            return false;
+        }
+    }
 
-            byteBuffer.putFloat(r);
-            byteBuffer.putFloat(g);
-            byteBuffer.putFloat(b);
+    private void ensureBatchBuffers(int batch) {
+        if (batch == 1) return;
+        if (batch >= batchInputBuffers.length) {
+            int length = batch + 1;
+            batchInputBuffers = Arrays.copyOf(batchInputBuffers, length);
+            batchInputFloats = Arrays.copyOf(batchInputFloats, length);
+            batchOutputBuffers = Arrays.copyOf(batchOutputBuffers, length);
+            batchOutputFloats = Arrays.copyOf(batchOutputFloats, length);
         }
-        return byteBuffer;
+        if (batchInputBuffers[batch] != null) return;
+        batchInputBuffers[batch] = ByteBuffer.allocateDirect(4 * PIXEL_COUNT * 3 * batch).order(ByteOrder.nativeOrder());
+        batchInputFloats[batch] = batchInputBuffers[batch].asFloatBuffer();
+        batchOutputBuffers[batch] = ByteBuffer.allocateDirect(4 * EMBEDDING_SIZE * batch).order(ByteOrder.nativeOrder());
+        batchOutputFloats[batch] = batchOutputBuffers[batch].asFloatBuffer();
+    }
+
+    /**
+     * 缩放并归一化一张图片，写入 target 的当前位置
+     */
+    private void preprocessBitmap(Bitmap bitmap, FloatBuffer target) {
+        // 缩放到复用的 112x112 目标上
+        srcRect.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        scaleMatrix.setRectToRect(srcRect, dstRect, Matrix.ScaleToFit.FILL);
+        drawAndConvert(bitmap, target);
+    }
+
+    /**
+     * 先把画面旋转到正向，再把裁剪区域映射到 112x112
+     */
+    private void setCropMatrix(Bitmap frame, int rotationDegrees, int[] crop) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        scaleMatrix.setRotate(rotationDegrees);
+        switch (rotationDegrees) {
+            case 90:
+                scaleMatrix.postTranslate(height, 0);
+                break;
+            case 180:
+                scaleMatrix.postTranslate(width, height);
+                break;
+            case 270:
+                scaleMatrix.postTranslate(0, width);
+                break;
+            default:
+                break;
+        }
+        scaleMatrix.postTranslate(-crop[0], -crop[1]);
+        scaleMatrix.postScale((float) INPUT_SIZE / (crop[2] - crop[0]), (float) INPUT_SIZE / (crop[3] - crop[1]));
+    }
+
+    private void drawAndConvert(Bitmap bitmap, FloatBuffer target) {
+        scaledBitmap.eraseColor(Color.TRANSPARENT);
+        scaledCanvas.drawBitmap(bitmap, scaleMatrix, scalePaint);
+        scaledBitmap.getPixels(pixels, 0, INPUT_SIZE, 0, 0, INPUT_SIZE, INPUT_SIZE);
+
+        ImagePreprocessor.argbToRgbFloats(pixels, PIXEL_COUNT, pixelFloats);
+        target.put(pixelFloats);
     }
 
     public void close() {
         if (interpreter != null) {
             interpreter.close(); // 释放 TensorFlow Lite 资源
         }
+        closeDelegate(delegate);
     }
 }
@@ -0,0 +1,90 @@
+package com.app.facerecognizer.ml;
+
+import android.graphics.Bitmap;
+
+import com.google.mlkit.vision.face.Face;
+
+import java.util.List;
+
+/**
+ * 一帧相机画面及其检测结果。画面可以是 Bitmap 或 YUV 平面拷贝，二者都保持传感器方向，
+ * 检测框是按 rotationDegrees 旋转后的正向坐标
+ */
+public class FaceFrame {
+
+    private final Bitmap bitmap;
+    private final YuvPlanes yuvPlanes;
+    private final int width;
+    private final int height;
+    private final int rotationDegrees;
+    private final List<Face> faces;
+
+    public FaceFrame(Bitmap bitmap, int rotationDegrees, List<Face> faces) {
+        this.bitmap = bitmap;
+        this.yuvPlanes = null;
+        this.width = bitmap.getWidth();
+        this.height = bitmap.getHeight();
+        this.rotationDegrees = rotationDegrees;
+        this.faces = faces;
+    }
+
+    public FaceFrame(YuvPlanes yuvPlanes, int rotationDegrees, List<Face> faces) {
+        this.bitmap = null;
+        this.yuvPlanes = yuvPlanes;
+        this.width = yuvPlanes.getWidth();
+        this.height = yuvPlanes.getHeight();
+        this.rotationDegrees = rotationDegrees;
+        this.faces = faces;
+    }
+
+    public Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    public YuvPlanes getYuvPlanes() {
+        return yuvPlanes;
+    }
+
+    public int getRotationDegrees() {
+        return rotationDegrees;
+    }
+
+    public List<Face> getFaces() {
+        return faces;
+    }
+
+    /**
+     * 旋转到正向后的宽度
+     */
+    public int getUprightWidth() {
+        return rotationDegrees % 180 == 0 ? width : height;
+    }
+
+    public int getUprightHeight() {
+        return rotationDegrees % 180 == 0 ? height : width;
+    }
+
+    /**
+     * 面积最大的人脸，没有时返回 null
+     */
+    public Face getLargestFace() {
+        Face largest = null;
+        long largestArea = -1;
+        for (Face face : faces) {
+            long area = (long) face.getBoundingBox().width() * face.getBoundingBox().height();
+            if (area > largestArea) {
+                largest = face;
+                largestArea = area;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * 计算人脸的头部裁剪区域（正向坐标）
+     */
+    public boolean headRegion(Face face, int[] out) {
+        return FaceCrop.headRegion(face.getBoundingBox().left, face.getBoundingBox().top,
+                face.getBoundingBox().right, face.getBoundingBox().bottom, getUprightWidth(), getUprightHeight(), out);
+    }
+}
@@ -0,0 +1,284 @@
+package com.app.facerecognizer.ml;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.app.facerecognizer.db.AppDatabase;
+import com.app.facerecognizer.db.FaceImagePager;
+import com.app.facerecognizer.db.dao.FaceImageDao;
+import com.app.facerecognizer.db.entities.FaceImageInfo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 维护与 face_images 表同步的 HNSW 索引和底库快照，两个文件都与数据库文件放在同一目录。
+ * 人脸数据的增删都应通过这里进行，以保证索引、快照与数据库一致。所有方法都需在后台线程调用
+ */
+public class FaceIndexManager {
+
+    private static final String TAG = "FaceIndexManager";
+    private static final String INDEX_FILE_NAME = "face_index.hnsw";
+    private static final String SNAPSHOT_FILE_NAME = "face_gallery.snap";
+
+    private static volatile FaceIndexManager INSTANCE = null;
+
+    private final FaceImageDao faceImageDao;
+    private final File indexFile;
+    private final File snapshotFile;
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean savePending = new AtomicBoolean();
+    private HnswIndex index;
+    private GallerySnapshot snapshot;
+    // 等待追加到快照的新记录，删除时整体重建
+    private final List<FaceImageInfo> pendingSnapshotAppends = new ArrayList<>();
+    private boolean snapshotRebuildPending;
+
+    private FaceIndexManager(Context context) {
+        faceImageDao = AppDatabase.getDatabase(context).faceImageDao();
+        File databaseDir = context.getDatabasePath("face_recognizer.db").getParentFile();
+        indexFile = new File(databaseDir, INDEX_FILE_NAME);
+        snapshotFile = new File(databaseDir, SNAPSHOT_FILE_NAME);
+    }
+
+    public static FaceIndexManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (FaceIndexManager.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new FaceIndexManager(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 获取索引，首次调用时从文件加载，文件不存在或与数据库中有特征的条数不一致时重建
+     */
+    public synchronized HnswIndex getIndex() {
+        if (index == null) {
+            index = loadOrRebuild();
+        }
+        return index;
+    }
+
+    public long insert(FaceImageInfo faceImageInfo) {
+        long id = faceImageDao.insert(faceImageInfo);
+        faceImageInfo.setId((int) id);
+        getIndex().insert(faceImageInfo.getId(), faceImageInfo.getName(), faceImageInfo.getPath(), faceImageInfo.getFeature());
+        synchronized (pendingSnapshotAppends) {
+            pendingSnapshotAppends.add(faceImageInfo);
+        }
+        scheduleSave();
+        return id;
+    }
+
+    /**
+     * 批量插入，数据库写入在一个事务中完成，索引文件只保存一次
+     */
+    public long[] insertAll(List<FaceImageInfo> faceImageInfos) {
+        long[] ids = faceImageDao.insertAll(faceImageInfos);
+        HnswIndex index = getIndex();
+        for (int i = 0; i < ids.length; i++) {
+            FaceImageInfo faceImageInfo = faceImageInfos.get(i);
+            faceImageInfo.setId((int) ids[i]);
+            index.insert(faceImageInfo.getId(), faceImageInfo.getName(), faceImageInfo.getPath(), faceImageInfo.getFeature());
+        }
+        synchronized (pendingSnapshotAppends) {
+            pendingSnapshotAppends.addAll(faceImageInfos);
+        }
+        scheduleSave();
+        return ids;
+    }
+
+    public void deleteOne(int id) {
+        faceImageDao.deleteOne(id);
+        if (getIndex().delete(id)) {
+            markSnapshotRebuild();
+            scheduleSave();
+        }
+    }
+
+    public void deleteAll() {
+        faceImageDao.deleteAll();
+        getIndex().clear();
+        markSnapshotRebuild();
+        scheduleSave();
+    }
+
+    private HnswIndex loadOrRebuild() {
+        if (indexFile.exists()) {
+            try {
+                HnswIndex loaded = HnswIndex.load(indexFile);
+                if (loaded.dimension() == FaceGallery.DIM && loaded.liveCount() == faceImageDao.countWithFeature()) {
+                    return loaded;
+                }
+                Log.w(TAG, "Index out of date, rebuilding");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to load index, rebuilding", e);
+            }
+        }
+        HnswIndex rebuilt = new HnswIndex(FaceGallery.DIM);
+        FaceImagePager pager = new FaceImagePager(faceImageDao);
+        for (List<FaceImageInfo> page = pager.next(); !page.isEmpty(); page = pager.next()) {
+            for (FaceImageInfo info : page) {
+                rebuilt.insert(info.getId(), info.getName(), info.getPath(), info.getFeature());
+            }
+        }
+        saveQuietly(rebuilt);
+        return rebuilt;
+    }
+
+    // 连续的增删只触发一次写文件，通常只追加索引日志，日志过长时才整体重写
+    private void scheduleSave() {
+        if (savePending.compareAndSet(false, true)) {
+            saveExecutor.execute(() -> {
+                savePending.set(false);
+                persistQuietly(getIndex());
+                updateSnapshot();
+            });
+        }
+    }
+
+    /**
+     * 获取底库快照，文件不存在、损坏或与数据库中有特征的条数不一致时由数据库重建。
+     * 尚未写入快照的增删会先同步写入，返回的快照包含此前所有已提交的变更
+     */
+    public synchronized GallerySnapshot getSnapshot() {
+        if (snapshot != null) {
+            updateSnapshot();
+        } else {
+            snapshot = openSnapshot();
+            if (snapshot == null) {
+                snapshot = rebuildSnapshot();
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * 与 {@link #getSnapshot} 相同，但快照文件不可用时不等待重建：立即返回 null，
+     * 并在后台重建快照，调用方可以先按页从数据库加载
+     */
+    public synchronized GallerySnapshot peekSnapshot() {
+        if (snapshot == null) {
+            snapshot = openSnapshot();
+            if (snapshot == null) {
+                saveExecutor.execute(this::getSnapshot);
+                return null;
+            }
+        }
+        return getSnapshot();
+    }
+
+    private GallerySnapshot openSnapshot() {
+        try {
+            GallerySnapshot opened = GallerySnapshot.open(snapshotFile);
+            if (opened.size() == faceImageDao.countWithFeature()) {
+                return opened;
+            }
+            Log.w(TAG, "Snapshot out of date, rebuilding");
+            opened.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Snapshot unavailable, rebuilding: " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * 校验快照正文，失败时重建，返回可用的快照
+     */
+    public synchronized GallerySnapshot verifySnapshot() {
+        GallerySnapshot current = getSnapshot();
+        if (current != null && !current.verify()) {
+            Log.e(TAG, "Snapshot checksum mismatch, rebuilding");
+            snapshot = rebuildSnapshot();
+        }
+        return snapshot;
+    }
+
+    private void markSnapshotRebuild() {
+        synchronized (pendingSnapshotAppends) {
+            pendingSnapshotAppends.clear();
+            snapshotRebuildPending = true;
+        }
+    }
+
+    private synchronized void updateSnapshot() {
+        List<FaceImageInfo> appends;
+        boolean rebuild;
+        synchronized (pendingSnapshotAppends) {
+            appends = new ArrayList<>(pendingSnapshotAppends);
+            rebuild = snapshotRebuildPending;
+            pendingSnapshotAppends.clear();
+            snapshotRebuildPending = false;
+        }
+        if (snapshot == null) return;
+        if (rebuild || snapshot.size() + validCount(appends) != faceImageDao.countWithFeature()) {
+            snapshot = rebuildSnapshot();
+        } else if (!appends.isEmpty()) {
+            // 追加时按字节拷贝已有特征，只编码新增记录
+            try (GallerySnapshot.Writer writer = new GallerySnapshot.Writer(snapshotFile)) {
+                writer.addAll(snapshot);
+                for (FaceImageInfo info : appends) {
+                    writer.add(info.getId(), info.getName(), info.getPath(), info.getFeature());
+                }
+                writer.commit();
+                snapshot = GallerySnapshot.open(snapshotFile);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to append snapshot", e);
+                snapshot = rebuildSnapshot();
+            }
+        }
+    }
+
+    /**
+     * 特征有效、会被写入快照的记录数，没有特征的记录在 {@link GallerySnapshot.Writer#add} 中被跳过
+     */
+    private static int validCount(List<FaceImageInfo> infos) {
+        int count = 0;
+        for (FaceImageInfo info : infos) {
+            float[] feature = info.getFeature();
+            if (feature != null && feature.length == FaceGallery.DIM) count++;
+        }
+        return count;
+    }
+
+    private GallerySnapshot rebuildSnapshot() {
+        // 特征逐页写入文件，内存中只保留一页记录
+        try (GallerySnapshot.Writer writer = new GallerySnapshot.Writer(snapshotFile)) {
+            FaceImagePager pager = new FaceImagePager(faceImageDao);
+            for (List<FaceImageInfo> page = pager.next(); !page.isEmpty(); page = pager.next()) {
+                for (FaceImageInfo info : page) {
+                    writer.add(info.getId(), info.getName(), info.getPath(), info.getFeature());
+                }
+            }
+            writer.commit();
+            return GallerySnapshot.open(snapshotFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to rebuild snapshot", e);
+            return null;
+        }
+    }
+
+    private void saveQuietly(HnswIndex target) {
+        try {
+            target.save(indexFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save index", e);
+        }
+    }
+
+    private void persistQuietly(HnswIndex target) {
+        try {
+            target.persist(indexFile);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save index", e);
+        }
+    }
+}
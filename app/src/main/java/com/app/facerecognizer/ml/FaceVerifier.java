@@ -4,141 +4,133 @@ import android.graphics.Bitmap;
 
 import com.app.facerecognizer.db.entities.FaceImageInfo;
 
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
+/**
+ * 特征提取与底库检索的组合，检索本身由 core 模块的 {@link GallerySearcher} 完成
+ */
 public class FaceVerifier {
 
-    private FaceEmbeddingExtractor embeddingExtractor;
-    private Map<String, float[]> embeddingCache;
-    private ExecutorService executorService;
+    // 底库达到该规模时改用 HNSW 近似检索
+    public static final int ANN_MIN_GALLERY_SIZE = GallerySearcher.ANN_MIN_GALLERY_SIZE;
 
-    public FaceVerifier(FaceEmbeddingExtractor embeddingExtractor, Map<String, float[]> embeddingCache) {
-        this.embeddingExtractor = embeddingExtractor;
-        this.embeddingCache = embeddingCache;
-        int numThreads = Runtime.getRuntime().availableProcessors();
-        this.executorService = Executors.newFixedThreadPool(numThreads);
+    private EmbeddingExtractorPool extractorPool;
+    private final GallerySearcher searcher = new GallerySearcher();
+    private volatile FaceGallery.Precision galleryPrecision = FaceGallery.Precision.FLOAT32;
+    // 底库由仓库加载和发布，精度设置转交给它
+    private volatile GalleryRepository galleryRepository;
+
+    public FaceVerifier(EmbeddingExtractorPool extractorPool) {
+        this.extractorPool = extractorPool;
     }
 
-    public SimilarInfoBean verifyFace(Bitmap compareBitmap, List<FaceImageInfo> faceImageList) {
-        if (compareBitmap == null) return new SimilarInfoBean(0, "", "", 0f);
+    public void setGallery(ScannableGallery gallery) {
+        searcher.setGallery(gallery);
+    }
 
-        String imagePath = compareBitmap.toString();
-        float[] currentEmbedding = embeddingCache.get(imagePath);
+    public ScannableGallery getGallery() {
+        return searcher.getGallery();
+    }
 
-        if (currentEmbedding == null) {
-            currentEmbedding = embeddingExtractor.getFaceEmbedding(compareBitmap);
-            embeddingCache.put(imagePath, currentEmbedding);
+    /**
+     * 底库的存储精度，转交给 {@link #setGalleryRepository} 设置的仓库，与当前精度不同时仓库重新加载
+     */
+    public void setGalleryPrecision(FaceGallery.Precision precision) {
+        this.galleryPrecision = precision;
+        GalleryRepository repository = galleryRepository;
+        if (repository != null) {
+            repository.setPrecision(precision);
         }
-
-        // 聚类比对
-        Map<String, List<Float>> scoreMap = new HashMap<>();
-        batchCompareFaces(currentEmbedding, faceImageList, scoreMap);
-
-        SimilarInfoBean mostSimilar = calculateBestMatch(scoreMap, faceImageList);
-        return mostSimilar;
     }
 
-    private void batchCompareFaces(float[] currentEmbedding, List<FaceImageInfo> list, Map<String, List<Float>> scoreMap) {
-        CompletableFuture[] futures = new CompletableFuture[list.size()];
+    public FaceGallery.Precision getGalleryPrecision() {
+        return galleryPrecision;
+    }
 
-        for (int i = 0; i < list.size(); i++) {
-            final int index = i;
-            futures[i] = CompletableFuture.runAsync(() -> {
-                FaceImageInfo storedEmbedding = list.get(index);
-                float[] storedFeature = normalize(storedEmbedding.getFeature());
-                // 标准化存储的面部特征向量
-                storedFeature = normalize(storedFeature);
+    /**
+     * 量化底库检索时，得分最高的若干模板会通过 featureStore 读取全精度特征重新打分
+     */
+    public void setFeatureStore(FeatureStore featureStore) {
+        searcher.setFeatureStore(featureStore);
+    }
 
-                // 计算余弦相似度
-                float cosineSim = cosineSimilarity(currentEmbedding, storedFeature);
+    /**
+     * 关联提供底库的仓库，并把当前精度设置给它
+     */
+    public void setGalleryRepository(GalleryRepository galleryRepository) {
+        this.galleryRepository = galleryRepository;
+        if (galleryRepository != null) {
+            galleryRepository.setPrecision(galleryPrecision);
+        }
+    }
 
-                // 计算L2 norm
-                float l2Norm = L2Norm(currentEmbedding, storedFeature);
+    /**
+     * 设置 HNSW 索引后 {@link #search} 走近似检索，不再扫描底库
+     */
+    public void setAnnIndex(HnswIndex annIndex) {
+        searcher.setAnnIndex(annIndex);
+    }
 
-                // 这里我们选择使用加权方式结合 L2 norm 和 Cosine 相似度
-                // 权重可以根据需求调整，这里假设为 0.5
-                float combinedSimilarity = 0.6f * cosineSim + 0.4f * (1 - l2Norm); // L2 norm 越小，越相似，因此需要转化成 1 - l2Norm
+    /**
+     * 设置与当前底库对应的质心索引后，扫描检索先按身份质心粗排，只对候选身份的模板精确打分
+     */
+    public void setCentroidIndex(CentroidIndex centroidIndex) {
+        searcher.setCentroidIndex(centroidIndex);
+    }
 
-                synchronized (scoreMap) {
-                    scoreMap.computeIfAbsent(storedEmbedding.getName(), k -> new ArrayList<>()).add(combinedSimilarity);
-                }
-            }, executorService);
-        }
+    public void configureResultCache(int capacity, long ttlMillis, float cosineEpsilon) {
+        searcher.configureResultCache(capacity, ttlMillis, cosineEpsilon);
+    }
 
-        CompletableFuture.allOf(futures).join();
-    }
-
-    private SimilarInfoBean calculateBestMatch(Map<String, List<Float>> scoreMap, List<FaceImageInfo> faceImageList) {
-        float maxAverageScore = -1f;
-        String bestMatchName = "";
-//        String bestMatchPath = "";
-        SimilarInfoBean bestMatch = new SimilarInfoBean(0, "", "", 0);
-
-        for (Map.Entry<String, List<Float>> entry : scoreMap.entrySet()) {
-            float averageScore = (float) entry.getValue().stream().mapToDouble(Float::doubleValue).average().orElse(0);
-            if (averageScore > maxAverageScore) {
-                maxAverageScore = averageScore;
-                bestMatchName = entry.getKey();
-                bestMatch = faceImageList.stream()
-                        .filter(info -> info.getName().equals(entry.getKey()))
-                        .findFirst()
-                        .map(info -> new SimilarInfoBean(info.getId(), info.getName(), info.getPath(), averageScore))
-                        .orElse(new SimilarInfoBean(0, "", "", 0));
-            }
-        }
+    public RecentResultCache getResultCache() {
+        return searcher.getResultCache();
+    }
 
-        return bestMatch;
+    public GallerySearcher getSearcher() {
+        return searcher;
     }
 
-    private float cosineSimilarity(float[] vec1, float[] vec2) {
-        float dotProduct = 0f;
-        float normA = 0f;
-        float normB = 0f;
-        for (int i = 0; i < vec1.length; i++) {
-            dotProduct += vec1[i] * vec2[i];
-            normA += vec1[i] * vec1[i];
-            normB += vec2[i] * vec2[i];
-        }
-        return dotProduct / (float) (Math.sqrt(normA) * Math.sqrt(normB));
+    public boolean isReady() {
+        return searcher.isReady();
     }
 
-    // 计算 L2 norm (欧几里得距离)
-    private float L2Norm(float[] vec1, float[] vec2) {
-        float sum = 0f;
-        for (int i = 0; i < vec1.length; i++) {
-            sum += Math.pow(vec1[i] - vec2[i], 2);
-        }
-        return (float) Math.sqrt(sum);
+    public SimilarInfoBean verifyFace(Bitmap compareBitmap) {
+        if (compareBitmap == null) return new SimilarInfoBean(0, "", "", 0f);
+
+        float[] currentEmbedding = extractorPool.getFaceEmbedding(compareBitmap);
+        List<SimilarInfoBean> result = search(currentEmbedding, 1);
+        return result.isEmpty() ? new SimilarInfoBean(0, "", "", 0f) : result.get(0);
     }
 
-    // 向量标准化
-    private float[] normalize(float[] vec) {
-        float norm = 0f;
-        for (float v : vec) {
-            norm += v * v;
-        }
-        norm = (float) Math.sqrt(norm);
+    /**
+     * 1:N 检索，见 {@link GallerySearcher#search}
+     */
+    public List<SimilarInfoBean> search(float[] query, int k) {
+        return searcher.search(query, k);
+    }
 
-        if (norm == 0) return vec;
+    /**
+     * 多张人脸的批量检索，见 {@link GallerySearcher#searchAll}
+     */
+    public List<List<SimilarInfoBean>> searchAll(float[][] queries, int count, int k) {
+        return searcher.searchAll(queries, count, k);
+    }
 
-        for (int i = 0; i < vec.length; i++) {
-            vec[i] /= norm;
+    /**
+     * 由数据库记录构建底库，特征为空的记录会被跳过
+     */
+    public static FaceGallery buildGallery(List<FaceImageInfo> faceImageList, FaceGallery.Precision precision) {
+        FaceGallery.Builder builder = new FaceGallery.Builder(faceImageList.size());
+        for (FaceImageInfo info : faceImageList) {
+            builder.add(info.getId(), info.getName(), info.getPath(), info.getFeature());
         }
-        return vec;
+        return builder.build(precision);
     }
 
+    /**
+     * 只关闭检索线程池，特征提取器池由进程统一管理
+     */
     public void close() {
-        if (embeddingExtractor != null) {
-            embeddingExtractor.close();
-        }
-        if (executorService != null) {
-            executorService.shutdown();
-        }
+        searcher.close();
     }
 }
@@ -0,0 +1,370 @@
+package com.app.facerecognizer.ml;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.room.InvalidationTracker;
+
+import com.app.facerecognizer.db.AppDatabase;
+import com.app.facerecognizer.db.FaceImagePager;
+import com.app.facerecognizer.db.dao.FaceChangeDao;
+import com.app.facerecognizer.db.dao.FaceImageDao;
+import com.app.facerecognizer.db.entities.FaceChange;
+import com.app.facerecognizer.db.entities.FaceImageInfo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 进程内共享的检索底库。首次加载后订阅 Room 的表失效通知，按 face_changes 变更日志只读取新增的记录，
+ * 在不可变的基础底库上叠加增删（{@link DeltaGallery}），不再整表重读。
+ * <p>
+ * 每次变更都发布一个新的不可变底库，检索线程读到的永远是完整的某个版本，不会因同步而阻塞。
+ * 叠加的增删超过基础底库的一定比例时在后台重建基础底库。所有加载和同步都在内部的单线程中执行。
+ * <p>
+ * 没有可用的快照时按页从数据库流式加载，每加载一段就发布一次（{@link SegmentedGallery}），
+ * 识别不必等待整表读完；加载期间只多占用一段尚未编码的特征，峰值内存与表的大小无关。
+ * <p>
+ * 每个发布的版本都带有对应的 {@link CentroidIndex}，同样随增删和分段增量更新
+ */
+public class GalleryRepository {
+
+    private static final String TAG = "GalleryRepository";
+    // 每次读取的变更日志条数
+    private static final int CHANGE_PAGE_SIZE = 512;
+    // 叠加的增删超过 max(该值, 基础底库的 1/8) 时重建基础底库
+    private static final int MIN_COMPACT_ROWS = 1024;
+    // 流式加载时每个分段的行数，也是加载期间未编码特征的上限
+    private static final int SEGMENT_ROWS = 8192;
+
+    public interface Listener {
+        /**
+         * 在仓库的后台线程中回调
+         *
+         * @param coverage 已加载的记录占全表的比例，流式加载期间小于 1，加载完成后为 1
+         */
+        void onGalleryChanged(ScannableGallery gallery, float coverage);
+    }
+
+    private static volatile GalleryRepository INSTANCE = null;
+
+    private final FaceImageDao faceImageDao;
+    private final FaceChangeDao faceChangeDao;
+    private final FaceIndexManager indexManager;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean syncPending = new AtomicBoolean();
+    private volatile ScannableGallery published;
+    private volatile CentroidIndex centroids;
+    private volatile float coverage;
+    private volatile FaceGallery.Precision precision = FaceGallery.Precision.FLOAT32;
+
+    // 以下状态只在 executor 线程中访问
+    private DeltaGallery.Base base;
+    private CentroidIndex baseCentroids;
+    private final BitSet removedRows = new BitSet();
+    private final Map<Integer, FaceImageInfo> added = new LinkedHashMap<>();
+    private final Map<String, SimilarInfoBean> representatives = new HashMap<>();
+    private final Set<String> staleRepresentatives = new HashSet<>();
+    private long appliedSeq;
+    private boolean loaded;
+    private long fullLoads;
+    private long deltaSyncs;
+
+    private GalleryRepository(Context context) {
+        AppDatabase database = AppDatabase.getDatabase(context);
+        faceImageDao = database.faceImageDao();
+        faceChangeDao = database.faceChangeDao();
+        indexManager = FaceIndexManager.getInstance(context);
+        database.getInvalidationTracker().addObserver(new InvalidationTracker.Observer("face_changes") {
+            @Override
+            public void onInvalidated(Set<String> tables) {
+                requestSync();
+            }
+        });
+    }
+
+    public static GalleryRepository getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (GalleryRepository.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new GalleryRepository(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 当前发布的底库，尚未加载完成时为 null
+     */
+    public ScannableGallery getGallery() {
+        return published;
+    }
+
+    /**
+     * 当前发布的底库对应的质心索引，在 {@link Listener#onGalleryChanged} 回调之前已更新
+     */
+    public CentroidIndex getCentroidIndex() {
+        return centroids;
+    }
+
+    /**
+     * 当前发布的底库覆盖的记录比例，加载完成后为 1
+     */
+    public float getCoverage() {
+        return coverage;
+    }
+
+    public FaceGallery.Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * 切换存储精度，与当前精度不同时重新加载。FLOAT32 直接使用映射的快照文件作为基础底库
+     */
+    public void setPrecision(FaceGallery.Precision precision) {
+        if (this.precision == precision) return;
+        this.precision = precision;
+        executor.execute(() -> {
+            if (loaded) fullLoad();
+        });
+    }
+
+    /**
+     * 注册监听并在首次注册时触发加载。已有发布的底库时立即回调一次
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        executor.execute(() -> {
+            if (!loaded) {
+                fullLoad();
+            } else if (published != null && listeners.contains(listener)) {
+                listener.onGalleryChanged(published, coverage);
+            }
+        });
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // 连续的失效通知只触发一次同步
+    private void requestSync() {
+        if (syncPending.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                syncPending.set(false);
+                if (loaded) sync();
+            });
+        }
+    }
+
+    private void fullLoad() {
+        long start = System.nanoTime();
+        // 先记下日志位置再读取，之后的变更按幂等方式叠加，重复应用不会出错
+        long seq = faceChangeDao.maxSeq();
+        GallerySnapshot snapshot = null;
+        ScannableGallery gallery;
+        if (precision == FaceGallery.Precision.FLOAT32) {
+            // 快照不可用时不等待重建，先从数据库流式加载，快照在后台重建后供下次加载使用
+            snapshot = indexManager.peekSnapshot();
+        }
+        if (snapshot != null) {
+            gallery = snapshot;
+            baseCentroids = CentroidIndex.build(snapshot);
+        } else {
+            gallery = streamLoad();
+        }
+        base = new DeltaGallery.Base(gallery);
+        removedRows.clear();
+        added.clear();
+        representatives.clear();
+        staleRepresentatives.clear();
+        appliedSeq = seq;
+        loaded = true;
+        fullLoads++;
+        Log.i(TAG, "Loaded " + gallery.size() + " templates in " + (System.nanoTime() - start) / 1000000 + "ms");
+        applyChanges();
+        refreshRepresentatives();
+        publish();
+        // 快照正文校验放到检索可用之后进行，校验失败时快照已被重建
+        if (snapshot != null && indexManager.verifySnapshot() != snapshot) {
+            fullLoad();
+        }
+    }
+
+    /**
+     * 按页读取全表，每满 SEGMENT_ROWS 行编码为一个分段并发布，返回完整的底库，其质心索引存入 baseCentroids
+     */
+    private ScannableGallery streamLoad() {
+        int total = faceImageDao.count();
+        SegmentedGallery gallery = SegmentedGallery.empty(precision);
+        // 每追加一段只累加新分段的行
+        CentroidIndex index = CentroidIndex.build(gallery);
+        FaceGallery.Builder builder = new FaceGallery.Builder(Math.min(total, SEGMENT_ROWS));
+        int pending = 0;
+        FaceImagePager pager = new FaceImagePager(faceImageDao);
+        for (List<FaceImageInfo> page = pager.next(); !page.isEmpty(); page = pager.next()) {
+            for (FaceImageInfo info : page) {
+                if (builder.add(info.getId(), info.getName(), info.getPath(), info.getFeature())) {
+                    pending++;
+                }
+            }
+            if (pending >= SEGMENT_ROWS) {
+                gallery = gallery.append(builder.build(precision));
+                index = CentroidIndex.derive(index, gallery, null);
+                builder = new FaceGallery.Builder(SEGMENT_ROWS);
+                pending = 0;
+                // 加载期间表可能仍在增长，未加载完之前覆盖率不报 1
+                publish(gallery, index, Math.min(0.99f, gallery.size() / (float) Math.max(1, total)));
+            }
+        }
+        if (pending > 0) {
+            gallery = gallery.append(builder.build(precision));
+            index = CentroidIndex.derive(index, gallery, null);
+        }
+        baseCentroids = index;
+        return gallery;
+    }
+
+    private void sync() {
+        if (!applyChanges()) return;
+        deltaSyncs++;
+        int deltaRows = removedRows.cardinality() + added.size();
+        if (deltaRows > Math.max(MIN_COMPACT_ROWS, base.getGallery().size() / 8)) {
+            Log.i(TAG, "Compacting " + deltaRows + " delta rows");
+            fullLoad();
+            return;
+        }
+        refreshRepresentatives();
+        publish();
+    }
+
+    /**
+     * 读取 appliedSeq 之后的变更并叠加到当前底库
+     *
+     * @return 是否有新的变更
+     */
+    private boolean applyChanges() {
+        boolean changed = false;
+        while (true) {
+            List<FaceChange> changes = faceChangeDao.getAfter(appliedSeq, CHANGE_PAGE_SIZE);
+            if (changes.isEmpty()) break;
+            // 同一条记录在这一页中只看最后一次操作
+            Map<Integer, Integer> lastOps = new LinkedHashMap<>();
+            for (FaceChange change : changes) {
+                lastOps.remove(change.getFaceId());
+                lastOps.put(change.getFaceId(), change.getOp());
+            }
+            List<Integer> upserts = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> entry : lastOps.entrySet()) {
+                remove(entry.getKey());
+                if (entry.getValue() == FaceChange.OP_UPSERT) {
+                    upserts.add(entry.getKey());
+                }
+            }
+            if (!upserts.isEmpty()) {
+                int[] ids = new int[upserts.size()];
+                for (int i = 0; i < ids.length; i++) {
+                    ids[i] = upserts.get(i);
+                }
+                // 只读取新增的记录，已在变更后被删除的不会返回
+                for (FaceImageInfo info : faceImageDao.getByIds(ids)) {
+                    if (info.getFeature() != null && info.getFeature().length == FaceGallery.DIM) {
+                        added.put(info.getId(), info);
+                    }
+                }
+            }
+            appliedSeq = changes.get(changes.size() - 1).getSeq();
+            changed = true;
+        }
+        if (changed) {
+            faceChangeDao.deleteBefore(appliedSeq);
+        }
+        return changed;
+    }
+
+    private void remove(int faceId) {
+        FaceImageInfo removed = added.remove(faceId);
+        String name;
+        if (removed != null) {
+            name = removed.getName();
+        } else {
+            int row = base.rowOf(faceId);
+            if (row < 0 || removedRows.get(row)) return;
+            removedRows.set(row);
+            name = base.getGallery().getIdentityName(base.getGallery().getRowIdentity(row));
+        }
+        if (faceId == representativeOf(name)) {
+            staleRepresentatives.add(name);
+        }
+    }
+
+    private int representativeOf(String name) {
+        SimilarInfoBean representative = representatives.get(name);
+        if (representative != null) return representative.getId();
+        int identity = base.identityOf(name);
+        return identity >= 0 ? base.getGallery().getIdentityFaceId(identity) : -1;
+    }
+
+    /**
+     * 代表图片被删除的身份，从数据库取该身份剩余的第一条记录作为新的代表
+     */
+    private void refreshRepresentatives() {
+        for (String name : staleRepresentatives) {
+            FaceImageInfo first = faceImageDao.getFirstByName(name);
+            if (first != null) {
+                representatives.put(name, new SimilarInfoBean(first.getId(), name, first.getPath(), 0f));
+            } else {
+                representatives.remove(name);
+            }
+        }
+        staleRepresentatives.clear();
+    }
+
+    private void publish() {
+        ScannableGallery gallery;
+        CentroidIndex index;
+        if (removedRows.isEmpty() && added.isEmpty()) {
+            gallery = base.getGallery();
+            index = baseCentroids;
+        } else {
+            gallery = new DeltaGallery(base, removedRows,
+                    FaceVerifier.buildGallery(new ArrayList<>(added.values()), base.getGallery().getPrecision()),
+                    representatives);
+            // 只对增删的行做向量运算
+            index = CentroidIndex.derive(baseCentroids, gallery, removedRows);
+        }
+        publish(gallery, index, 1f);
+    }
+
+    private void publish(ScannableGallery gallery, CentroidIndex index, float coverage) {
+        centroids = index;
+        published = gallery;
+        this.coverage = coverage;
+        for (Listener listener : listeners) {
+            listener.onGalleryChanged(gallery, coverage);
+        }
+    }
+
+    @Override
+    public String toString() {
+        ScannableGallery gallery = published;
+        return "GalleryRepository{size=" + (gallery == null ? 0 : gallery.size())
+                + ", coverage=" + coverage
+                + ", precision=" + precision
+                + ", appliedSeq=" + appliedSeq
+                + ", fullLoads=" + fullLoads
+                + ", deltaSyncs=" + deltaSyncs + "}";
+    }
+}
@@ -0,0 +1,107 @@
+package com.app.facerecognizer.ml;
+
+import android.graphics.Rect;
+
+import com.app.facerecognizer.metrics.PipelineMetrics;
+import com.google.mlkit.vision.face.Face;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一帧中多张人脸的识别：按面积取最大的若干张人脸，同一帧的所有人脸区域在一个批次中提取特征，
+ * 再用同一个版本的底库逐个检索，每张人脸返回一个带检测框的结果。
+ * <p>
+ * 有跟踪 id 的人脸由 {@link FaceTracker} 决定是否需要重新提取，跳过的人脸沿用轨迹上融合的结果，
+ * 每帧的推理量只与新出现或明显变化的人脸数有关。只在识别线程中调用
+ */
+public class MultiFaceRecognizer {
+
+    // 每帧最多识别的人脸数，与提取器默认的最大批大小一致
+    public static final int MAX_FACES = 8;
+
+    private final EmbeddingExtractorPool extractorPool;
+    private final FaceVerifier faceVerifier;
+    private final FaceTracker faceTracker;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    // 复用的裁剪区域和按面积排序的人脸
+    private final int[][] crops = new int[MAX_FACES][4];
+    private final int[] cropRegion = new int[4];
+    private final List<Face> sortedFaces = new ArrayList<>();
+
+    public MultiFaceRecognizer(EmbeddingExtractorPool extractorPool, FaceVerifier faceVerifier, FaceTracker faceTracker) {
+        this.extractorPool = extractorPool;
+        this.faceVerifier = faceVerifier;
+        this.faceTracker = faceTracker;
+    }
+
+    /**
+     * 识别一帧中的人脸，结果按人脸面积从大到小排列
+     */
+    public List<FaceMatch> recognize(FaceFrame frame) {
+        if (frame.getFaces().isEmpty()) return Collections.emptyList();
+        sortedFaces.clear();
+        sortedFaces.addAll(frame.getFaces());
+        Collections.sort(sortedFaces, (a, b) -> Long.compare(area(b.getBoundingBox()), area(a.getBoundingBox())));
+        int faceCount = Math.min(MAX_FACES, sortedFaces.size());
+
+        // 先决定哪些人脸需要提取特征，需要的裁剪区域依次放入 crops
+        Face[] faces = new Face[faceCount];
+        int[] embedIndex = new int[faceCount];
+        int embedCount = 0;
+        long now = System.nanoTime();
+        for (int i = 0; i < faceCount; i++) {
+            Face face = sortedFaces.get(i);
+            faces[i] = face;
+            embedIndex[i] = -1;
+            if (!frame.headRegion(face, cropRegion)) continue;
+            Integer trackingId = face.getTrackingId();
+            if (trackingId != null) {
+                float area = (float) (cropRegion[2] - cropRegion[0]) * (cropRegion[3] - cropRegion[1]);
+                float sharpness = frame.getYuvPlanes() != null
+                        ? frame.getYuvPlanes().lumaSharpness(cropRegion, frame.getRotationDegrees()) : 0f;
+                if (!faceTracker.shouldEmbed(trackingId, area, sharpness, now)) {
+                    metrics.increment(PipelineMetrics.Counter.EMBEDDINGS_SKIPPED);
+                    continue;
+                }
+            }
+            System.arraycopy(cropRegion, 0, crops[embedCount], 0, 4);
+            embedIndex[i] = embedCount++;
+        }
+
+        List<List<SimilarInfoBean>> searched = Collections.emptyList();
+        if (embedCount > 0) {
+            float[][] embeddings = frame.getYuvPlanes() != null
+                    ? extractorPool.getFaceEmbeddings(frame.getYuvPlanes(), frame.getRotationDegrees(), false, crops, embedCount)
+                    : extractorPool.getFaceEmbeddings(frame.getBitmap(), frame.getRotationDegrees(), crops, embedCount);
+            searched = faceVerifier.searchAll(embeddings, embedCount, 1);
+        }
+
+        List<FaceMatch> matches = new ArrayList<>(faceCount);
+        for (int i = 0; i < faceCount; i++) {
+            Face face = faces[i];
+            Integer trackingId = face.getTrackingId();
+            SimilarInfoBean result;
+            if (embedIndex[i] >= 0) {
+                List<SimilarInfoBean> top = searched.get(embedIndex[i]);
+                result = top.isEmpty() ? null : top.get(0);
+                // 有跟踪 id 时按轨迹上融合后的得分判定
+                if (trackingId != null) {
+                    result = faceTracker.addResult(trackingId, result);
+                }
+            } else {
+                result = trackingId != null ? faceTracker.currentResult(trackingId) : null;
+            }
+            Rect box = face.getBoundingBox();
+            matches.add(new FaceMatch(trackingId != null ? trackingId : FaceMatch.NO_TRACKING_ID,
+                    box.left, box.top, box.right, box.bottom, result, embedIndex[i] >= 0));
+        }
+        return matches;
+    }
+
+    private static long area(Rect box) {
+        return (long) box.width() * box.height();
+    }
+}
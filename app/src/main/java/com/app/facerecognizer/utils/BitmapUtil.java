@@ -29,6 +29,26 @@ public class BitmapUtil {
         return null; // 如果没有有效的图片，返回 null
     }
 
+    /**
+     * 按 inSampleSize 降采样解码，保证短边不小于 minSide，省去解码全分辨率图片的开销
+     */
+    public static Bitmap decodeSampledFile(String path, int minSide) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int shortSide = Math.min(options.outWidth, options.outHeight);
+        int sampleSize = 1;
+        while (shortSide / (sampleSize * 2) >= minSide) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
     private static Bitmap mediaImageToBitmap(android.media.Image mediaImage) {
         ByteBuffer buffer = mediaImage.getPlanes()[0].getBuffer();
         byte[] bytes = new byte[buffer.remaining()];
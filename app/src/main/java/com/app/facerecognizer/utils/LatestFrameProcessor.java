@@ -0,0 +1,180 @@
+package com.app.facerecognizer.utils;
+
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * 单槽位的最新帧交接：生产者（相机分析线程）只保留最新的一帧，专用工作线程逐帧处理，
+ * 每帧最多处理一次，没有新帧时线程挂起，不占用 CPU。
+ * 处理不过来时旧帧直接被新帧覆盖，计入丢帧数。处理时抛出的运行时异常只记录日志和失败数，
+ * 工作线程继续处理后续帧。
+ * <p>
+ * 设置了 recycler 时，每个交给 {@link #submit} 的帧最终都会交给它恰好一次：处理完成后、
+ * 被新帧覆盖时、stop 清空槽位时，以及未运行时提交的帧，用于归还帧占用的缓冲区
+ */
+public class LatestFrameProcessor<T> {
+
+    private static final String TAG = "LatestFrameProcessor";
+    private static final long STATS_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final Consumer<T> handler;
+    private final Consumer<T> recycler;
+    private final AtomicReference<T> slot = new AtomicReference<>();
+    private volatile Thread worker;
+    private volatile boolean running;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    // 最近一个统计窗口的处理帧率，由工作线程更新
+    private volatile float framesPerSecond;
+    private long windowStartNanos;
+    private long windowStartProcessed;
+
+    public LatestFrameProcessor(String name, Consumer<T> handler) {
+        this(name, handler, null);
+    }
+
+    /**
+     * @param recycler 帧不再使用时的回调，可能在提交线程、工作线程或调用 stop 的线程中执行
+     */
+    public LatestFrameProcessor(String name, Consumer<T> handler, Consumer<T> recycler) {
+        this.name = name;
+        this.handler = handler;
+        this.recycler = recycler;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        Thread thread = new Thread(this::loop, name);
+        worker = thread;
+        thread.start();
+    }
+
+    /**
+     * 停止工作线程，正在处理的帧会处理完，槽位中未处理的帧被丢弃
+     */
+    public synchronized void stop() {
+        running = false;
+        Thread thread = worker;
+        worker = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        recycle(slot.getAndSet(null));
+    }
+
+    /**
+     * 提交一帧，覆盖槽位中尚未处理的旧帧。可在任意线程调用，不会阻塞
+     *
+     * @return 是否有尚未处理的旧帧因此被丢弃
+     */
+    public boolean submit(T frame) {
+        if (frame == null) return false;
+        if (!running) {
+            recycle(frame);
+            return false;
+        }
+        submitted.incrementAndGet();
+        T old = slot.getAndSet(frame);
+        boolean replaced = old != null;
+        if (replaced) {
+            dropped.incrementAndGet();
+            recycle(old);
+        }
+        Thread thread = worker;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        return replaced;
+    }
+
+    private void loop() {
+        windowStartNanos = System.nanoTime();
+        // stop 之后再次 start 时旧线程随之退出
+        while (running && worker == Thread.currentThread()) {
+            T frame = slot.getAndSet(null);
+            if (frame == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            try {
+                handler.accept(frame);
+            } catch (RuntimeException e) {
+                // 一帧失败不能让工作线程退出，否则槽位继续被填充但不再有帧被处理
+                failed.incrementAndGet();
+                Log.e(TAG, name + ": failed to process frame", e);
+            } finally {
+                recycle(frame);
+            }
+            processed.incrementAndGet();
+            updateFramesPerSecond();
+        }
+    }
+
+    private void recycle(T frame) {
+        if (frame != null && recycler != null) {
+            recycler.accept(frame);
+        }
+    }
+
+    private void updateFramesPerSecond() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos;
+        if (elapsed >= STATS_WINDOW_NANOS) {
+            long count = processed.get();
+            framesPerSecond = (count - windowStartProcessed) * 1e9f / elapsed;
+            windowStartNanos = now;
+            windowStartProcessed = count;
+        }
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * 处理时抛出异常的帧数，这些帧也计入已处理帧数
+     */
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     * 最近一秒左右的处理帧率，空闲期间不更新
+     */
+    public float getFramesPerSecond() {
+        return framesPerSecond;
+    }
+
+    /**
+     * 被新帧覆盖而未处理的帧占提交帧数的比例
+     */
+    public float getDropRate() {
+        long total = submitted.get();
+        return total == 0 ? 0f : (float) dropped.get() / total;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": submitted " + submitted.get() + ", processed " + processed.get()
+                + ", dropped " + dropped.get() + String.format(" (%.1f%%), %.1f fps", getDropRate() * 100, framesPerSecond)
+                + ", failed " + failed.get();
+    }
+}
@@ -0,0 +1,22 @@
+package com.app.facerecognizer.utils;
+
+import android.os.Trace;
+
+import com.app.facerecognizer.metrics.PipelineMetrics;
+
+/**
+ * 把流水线阶段输出为 android.os.Trace 区段，可在 Perfetto / systrace 中按线程查看。
+ * 未开始抓取时 Trace 的调用几乎没有开销
+ */
+public class SystemTraceSink implements PipelineMetrics.TraceSink {
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
@@ -0,0 +1,261 @@
+package com.app.facerecognizer.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 人脸图片缩略图的异步加载：后台线程按目标尺寸用 inSampleSize 降采样解码，
+ * 结果放入按字节计算容量的内存 LRU，同时压缩写入 cacheDir 下的磁盘缓存，下次启动直接读取缩略图。
+ * <p>
+ * 每个 ImageView 同时只有一个有效请求，重新绑定或 {@link #cancel} 时旧请求作废，
+ * 列表快速滑动时被回收的条目不会再解码，也不会把旧图片设置到已复用的 View 上。
+ * {@link #load} 和 {@link #cancel} 需在主线程调用
+ */
+public class ThumbnailLoader {
+
+    private static final String TAG = "ThumbnailLoader";
+    private static final String DISK_CACHE_DIR = "thumbnails";
+    private static final long DISK_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int DECODE_THREADS = 2;
+    private static final int JPEG_QUALITY = 90;
+    // View 尚未完成布局时使用的目标尺寸
+    private static final int DEFAULT_SIZE_DP = 128;
+
+    private static volatile ThumbnailLoader INSTANCE = null;
+
+    private final File diskCacheDir;
+    private final int defaultSizePx;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService executor = Executors.newFixedThreadPool(DECODE_THREADS, runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, TAG);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // 只在主线程访问
+    private final Map<ImageView, Request> activeRequests = new WeakHashMap<>();
+    // 磁盘缓存的字节数，首次写入时统计
+    private final AtomicLong diskCacheBytes = new AtomicLong(-1);
+
+    private ThumbnailLoader(Context context) {
+        diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        defaultSizePx = Math.round(DEFAULT_SIZE_DP * context.getResources().getDisplayMetrics().density);
+        // 内存缓存占可用堆的 1/8
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    public static ThumbnailLoader getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ThumbnailLoader.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ThumbnailLoader(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * 按 View 的当前尺寸加载，尚未布局时使用默认尺寸
+     */
+    public void load(String path, ImageView view) {
+        int size = Math.max(view.getWidth(), view.getHeight());
+        load(path, view, size > 0 ? size : defaultSizePx);
+    }
+
+    /**
+     * 加载 path 的缩略图到 view，短边不小于 sizePx。内存命中时同步设置，否则先清空 view 再异步加载
+     */
+    public void load(String path, ImageView view, int sizePx) {
+        cancel(view);
+        if (path == null) {
+            view.setImageDrawable(null);
+            return;
+        }
+        String key = memoryKey(path, sizePx);
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageDrawable(null);
+        Request request = new Request(path, sizePx, key, view);
+        activeRequests.put(view, request);
+        executor.execute(request);
+    }
+
+    /**
+     * 作废 view 上尚未完成的请求，列表条目被回收时调用
+     */
+    public void cancel(ImageView view) {
+        Request request = activeRequests.remove(view);
+        if (request != null) {
+            request.cancelled = true;
+        }
+    }
+
+    /**
+     * 图片被删除或覆盖后调用，移除内存中该图片的所有尺寸。磁盘缓存按文件修改时间区分，不需要移除
+     */
+    public void evict(String path) {
+        String prefix = path + "@";
+        for (String key : memoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                memoryCache.remove(key);
+            }
+        }
+    }
+
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    private static String memoryKey(String path, int sizePx) {
+        return path + "@" + sizePx;
+    }
+
+    private final class Request implements Runnable {
+        private final String path;
+        private final int sizePx;
+        private final String key;
+        private final ImageView view;
+        volatile boolean cancelled;
+
+        Request(String path, int sizePx, String key, ImageView view) {
+            this.path = path;
+            this.sizePx = sizePx;
+            this.key = key;
+            this.view = view;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) return;
+            Bitmap bitmap = memoryCache.get(key);
+            if (bitmap == null) {
+                bitmap = loadThumbnail(path, sizePx);
+                if (bitmap == null) return;
+                memoryCache.put(key, bitmap);
+            }
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                if (cancelled || activeRequests.get(view) != this) return;
+                activeRequests.remove(view);
+                view.setImageBitmap(result);
+            });
+        }
+    }
+
+    private Bitmap loadThumbnail(String path, int sizePx) {
+        File source = new File(path);
+        if (!source.exists()) return null;
+        // 源文件被覆盖后修改时间或长度变化，对应新的缓存文件
+        File cacheFile = new File(diskCacheDir, Integer.toHexString(path.hashCode()) + "_"
+                + Long.toHexString(source.lastModified()) + "_" + source.length() + "_" + sizePx + ".jpg");
+        if (cacheFile.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(cacheFile.getPath());
+            if (bitmap != null) {
+                // 修改时间作为磁盘缓存的访问时间，清理时先删最久未用的
+                cacheFile.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+        Bitmap bitmap = BitmapUtil.decodeSampledFile(path, sizePx);
+        if (bitmap == null) return null;
+        int shortSide = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (shortSide > sizePx) {
+            // inSampleSize 只能按 2 的幂缩小，剩余部分再缩放一次
+            float scale = (float) sizePx / shortSide;
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+        writeDiskCache(cacheFile, bitmap);
+        return bitmap;
+    }
+
+    private void writeDiskCache(File cacheFile, Bitmap bitmap) {
+        if (!diskCacheDir.exists() && !diskCacheDir.mkdirs()) return;
+        File tmp = new File(cacheFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write thumbnail " + cacheFile.getName(), e);
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(cacheFile)) {
+            tmp.delete();
+            return;
+        }
+        diskCacheBytes.compareAndSet(-1, directorySize());
+        if (diskCacheBytes.addAndGet(cacheFile.length()) > DISK_CACHE_BYTES) {
+            trimDiskCache();
+        }
+    }
+
+    private long directorySize() {
+        long total = 0;
+        File[] files = diskCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                total += file.length();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 按修改时间删除最久未用的缩略图，直到总大小降到上限的 3/4
+     */
+    private synchronized void trimDiskCache() {
+        File[] files = diskCacheDir.listFiles();
+        if (files == null) return;
+        long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+            total += files[i].length();
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(lastModified[a], lastModified[b]));
+        for (int i = 0; i < order.length && total > DISK_CACHE_BYTES * 3 / 4; i++) {
+            File file = files[order[i]];
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        diskCacheBytes.set(total);
+    }
+}
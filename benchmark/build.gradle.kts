@@ -0,0 +1,26 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+// 运行：./gradlew :benchmark:jmh
+// 只跑部分基准：./gradlew :benchmark:jmh -Pjmh.includes=VectorMathBenchmark
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    jmh(project(":core"))
+}
+
+jmh {
+    jmhVersion.set(libs.versions.jmh.get())
+    includes.set(providers.gradleProperty("jmh.includes").map { listOf(it) }.orElse(emptyList()))
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+}
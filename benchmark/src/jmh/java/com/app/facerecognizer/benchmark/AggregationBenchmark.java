@@ -0,0 +1,65 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.FaceGallery;
+import com.app.facerecognizer.ml.GallerySearcher;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按身份聚合逐行得分并取 top-K，不含扫描本身
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AggregationBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    @Param({"1", "10"})
+    public int k;
+
+    private GallerySearcher searcher;
+    private FaceGallery gallery;
+    private float[] scores;
+
+    @Setup
+    public void setup() {
+        searcher = new GallerySearcher(1);
+        gallery = BenchmarkData.gallery(BenchmarkData.randomVectors(gallerySize, 3), FaceGallery.Precision.FLOAT32);
+        scores = new float[gallerySize];
+        Random random = new Random(5);
+        for (int i = 0; i < gallerySize; i++) {
+            scores[i] = random.nextFloat();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        searcher.close();
+    }
+
+    @Benchmark
+    public List<SimilarInfoBean> aggregate() {
+        return searcher.aggregate(gallery, scores, k);
+    }
+}
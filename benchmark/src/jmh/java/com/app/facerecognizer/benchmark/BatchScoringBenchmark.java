@@ -0,0 +1,78 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.FaceGallery;
+import com.app.facerecognizer.ml.GallerySearcher;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一组查询的全量检索：逐个查询扫描与多查询分块打分（searchAll）的对比，单位为整组查询的耗时。
+ * 结果缓存关闭，每个查询都走完整检索
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchScoringBenchmark {
+
+    private static final int K = 5;
+
+    @Param({"10000", "100000"})
+    public int gallerySize;
+
+    @Param({"FLOAT32", "FP16"})
+    public FaceGallery.Precision precision;
+
+    @Param({"4", "16"})
+    public int queryCount;
+
+    // 1 为单线程扫描，0 为按 CPU 核数分块并行
+    @Param({"1", "0"})
+    public int scanThreads;
+
+    private GallerySearcher searcher;
+    private float[][] queries;
+
+    @Setup
+    public void setup() {
+        searcher = scanThreads > 0 ? new GallerySearcher(scanThreads) : new GallerySearcher();
+        searcher.configureResultCache(1, 0, 0f);
+        searcher.setGallery(BenchmarkData.gallery(BenchmarkData.clusteredVectors(gallerySize, 7), precision));
+        queries = BenchmarkData.randomVectors(queryCount, 11);
+    }
+
+    @TearDown
+    public void tearDown() {
+        searcher.close();
+    }
+
+    @Benchmark
+    public void perQuery(Blackhole blackhole) {
+        for (float[] query : queries) {
+            blackhole.consume(searcher.search(query, K));
+        }
+    }
+
+    @Benchmark
+    public List<List<SimilarInfoBean>> batched() {
+        return searcher.searchAll(queries, queryCount, K);
+    }
+}
@@ -0,0 +1,75 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.FaceGallery;
+
+import java.util.Random;
+
+/**
+ * 基准测试用的合成数据：固定种子生成，每次运行结果可比
+ */
+final class BenchmarkData {
+
+    static final int DIM = FaceGallery.DIM;
+    // 每个身份的模板数，与实际注册时每人几张照片相当
+    static final int TEMPLATES_PER_IDENTITY = 4;
+
+    private BenchmarkData() {
+    }
+
+    static float[] randomVector(Random random) {
+        float[] vector = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    static float[][] randomVectors(int count, long seed) {
+        Random random = new Random(seed);
+        float[][] vectors = new float[count][];
+        for (int i = 0; i < count; i++) {
+            vectors[i] = randomVector(random);
+        }
+        return vectors;
+    }
+
+    /**
+     * 同一身份的模板围绕一个中心向量小幅扰动，接近真实底库的分布
+     */
+    static float[][] clusteredVectors(int count, long seed) {
+        return clusteredVectors(count, TEMPLATES_PER_IDENTITY, 0.3f, seed);
+    }
+
+    /**
+     * @param noise 模板相对中心向量的扰动幅度，越大同一身份的模板越分散
+     */
+    static float[][] clusteredVectors(int count, int templatesPerIdentity, float noise, long seed) {
+        Random random = new Random(seed);
+        float[][] vectors = new float[count][];
+        float[] center = null;
+        for (int i = 0; i < count; i++) {
+            if (i % templatesPerIdentity == 0) {
+                center = randomVector(random);
+            }
+            float[] vector = new float[DIM];
+            for (int d = 0; d < DIM; d++) {
+                vector[d] = center[d] + noise * (float) random.nextGaussian();
+            }
+            vectors[i] = vector;
+        }
+        return vectors;
+    }
+
+    static FaceGallery gallery(float[][] vectors, FaceGallery.Precision precision) {
+        return gallery(vectors, precision, TEMPLATES_PER_IDENTITY);
+    }
+
+    static FaceGallery gallery(float[][] vectors, FaceGallery.Precision precision, int templatesPerIdentity) {
+        FaceGallery.Builder builder = new FaceGallery.Builder(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            int identity = i / templatesPerIdentity;
+            builder.add(i, "person-" + identity, "/faces/" + i + ".jpg", vectors[i]);
+        }
+        return builder.build(precision);
+    }
+}
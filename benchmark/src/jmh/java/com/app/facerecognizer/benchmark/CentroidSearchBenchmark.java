@@ -0,0 +1,129 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.CentroidIndex;
+import com.app.facerecognizer.ml.FaceGallery;
+import com.app.facerecognizer.ml.GallerySearcher;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每人多模板的底库上，全量按身份求平均与质心粗排后精确打分的延迟对比。
+ * 准备阶段以全量结果为基准打印粗排的 top-1 一致率和 recall@K
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CentroidSearchBenchmark {
+
+    private static final int K = 5;
+    private static final int QUERY_COUNT = 64;
+    private static final int ACCURACY_QUERIES = 200;
+    // 模板较分散，粗排更容易出错
+    private static final float TEMPLATE_NOISE = 2.5f;
+
+    @Param({"20000", "100000"})
+    public int gallerySize;
+
+    @Param({"10", "40"})
+    public int templatesPerIdentity;
+
+    @Param({"8", "32"})
+    public int coarseCandidates;
+
+    private GallerySearcher exhaustive;
+    private GallerySearcher coarse;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        float[][] vectors = BenchmarkData.clusteredVectors(gallerySize, templatesPerIdentity, TEMPLATE_NOISE, 17);
+        FaceGallery gallery = BenchmarkData.gallery(vectors, FaceGallery.Precision.FLOAT32, templatesPerIdentity);
+        exhaustive = newSearcher(gallery);
+        coarse = newSearcher(gallery);
+        coarse.setCentroidIndex(CentroidIndex.build(gallery));
+        coarse.setCoarseCandidates(coarseCandidates);
+        queries = queries(vectors, QUERY_COUNT, 19);
+        printAccuracy(vectors);
+    }
+
+    private static GallerySearcher newSearcher(FaceGallery gallery) {
+        GallerySearcher searcher = new GallerySearcher(1);
+        searcher.configureResultCache(1, 0, 0f);
+        searcher.setGallery(gallery);
+        return searcher;
+    }
+
+    /**
+     * 以底库中随机模板加扰动作为查询，与真实识别时查询接近某个身份的情况相当
+     */
+    private float[][] queries(float[][] vectors, int count, long seed) {
+        float[][] noise = BenchmarkData.randomVectors(count, seed);
+        float[][] result = new float[count][BenchmarkData.DIM];
+        for (int q = 0; q < count; q++) {
+            float[] base = vectors[(int) ((q * 7919L) % vectors.length)];
+            for (int d = 0; d < BenchmarkData.DIM; d++) {
+                result[q][d] = base[d] + TEMPLATE_NOISE * noise[q][d];
+            }
+        }
+        return result;
+    }
+
+    private void printAccuracy(float[][] vectors) {
+        int top1 = 0;
+        int recalled = 0;
+        for (float[] query : queries(vectors, ACCURACY_QUERIES, 23)) {
+            List<SimilarInfoBean> expected = exhaustive.search(query, K);
+            List<SimilarInfoBean> actual = coarse.search(query, K);
+            if (!actual.isEmpty() && actual.get(0).getName().equals(expected.get(0).getName())) {
+                top1++;
+            }
+            Set<String> names = new HashSet<>();
+            for (SimilarInfoBean bean : expected) {
+                names.add(bean.getName());
+            }
+            for (SimilarInfoBean bean : actual) {
+                if (names.contains(bean.getName())) recalled++;
+            }
+        }
+        System.out.printf("%nCentroid size=%d templates=%d M=%d top1=%.3f recall@%d=%.3f%n", gallerySize,
+                templatesPerIdentity, coarseCandidates, (float) top1 / ACCURACY_QUERIES, K,
+                (float) recalled / (ACCURACY_QUERIES * K));
+    }
+
+    @TearDown
+    public void tearDown() {
+        exhaustive.close();
+        coarse.close();
+    }
+
+    @Benchmark
+    public List<SimilarInfoBean> exhaustive() {
+        return exhaustive.search(queries[next++ & (QUERY_COUNT - 1)], K);
+    }
+
+    @Benchmark
+    public List<SimilarInfoBean> centroid() {
+        return coarse.search(queries[next++ & (QUERY_COUNT - 1)], K);
+    }
+}
@@ -0,0 +1,59 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.db.FeatureCodec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 特征存储格式：BLOB 与旧版逗号分隔字符串的编解码
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class FeatureCodecBenchmark {
+
+    private float[] feature;
+    private byte[] blob;
+    private String legacy;
+
+    @Setup
+    public void setup() {
+        feature = BenchmarkData.randomVectors(1, 9)[0];
+        blob = FeatureCodec.toBytes(feature);
+        legacy = FeatureCodec.toLegacyString(feature);
+    }
+
+    @Benchmark
+    public byte[] blobEncode() {
+        return FeatureCodec.toBytes(feature);
+    }
+
+    @Benchmark
+    public float[] blobDecode() {
+        return FeatureCodec.fromBytes(blob);
+    }
+
+    @Benchmark
+    public String legacyEncode() {
+        return FeatureCodec.toLegacyString(feature);
+    }
+
+    @Benchmark
+    public float[] legacyDecode() {
+        return FeatureCodec.fromLegacyString(legacy);
+    }
+}
@@ -0,0 +1,68 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.FaceGallery;
+import com.app.facerecognizer.ml.GallerySearcher;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 1:N 全量检索：扫描、（量化底库的）得分和按身份聚合。结果缓存关闭，每次都走完整检索
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class GallerySearchBenchmark {
+
+    private static final int QUERY_COUNT = 64;
+
+    @Param({"1000", "10000", "100000"})
+    public int gallerySize;
+
+    @Param({"FLOAT32", "INT8", "FP16"})
+    public FaceGallery.Precision precision;
+
+    // 1 为单线程扫描，0 为按 CPU 核数分块并行
+    @Param({"1", "0"})
+    public int scanThreads;
+
+    private GallerySearcher searcher;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        searcher = scanThreads > 0 ? new GallerySearcher(scanThreads) : new GallerySearcher();
+        searcher.configureResultCache(1, 0, 0f);
+        searcher.setGallery(BenchmarkData.gallery(BenchmarkData.clusteredVectors(gallerySize, 7), precision));
+        queries = BenchmarkData.randomVectors(QUERY_COUNT, 11);
+    }
+
+    @TearDown
+    public void tearDown() {
+        searcher.close();
+    }
+
+    @Benchmark
+    public List<SimilarInfoBean> searchTop1() {
+        float[] query = queries[next++ & (QUERY_COUNT - 1)];
+        return searcher.search(query, 1);
+    }
+}
@@ -0,0 +1,104 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.FaceCrop;
+import com.app.facerecognizer.ml.ImagePreprocessor;
+import com.app.facerecognizer.ml.YuvConverter;
+import com.app.facerecognizer.ml.YuvPlanes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 识别路径上不经过 Bitmap 的预处理开销：由检测框计算头部区域（FaceCrop），再转换为 112x112 模型输入。
+ * 与整帧直接缩放到模型输入对比；ARGB 路径中 Canvas 绘制需要设备，这里只含裁剪计算和像素归一化
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HeadCropBenchmark {
+
+    private static final int INPUT_SIZE = 112;
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    // 正向（旋转 90 度后为 480x640）坐标下的检测框 left, top, right, bottom，轮流使用
+    private static final int[][] BOXES = {
+            {140, 180, 340, 420},
+            {20, 40, 220, 300},
+            {300, 380, 470, 630},
+            {180, 200, 300, 350},
+    };
+
+    private final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private final float[] out = new float[INPUT_SIZE * INPUT_SIZE * 3];
+    private final int[] crop = new int[4];
+    private final int[] fullFrame = {0, 0, FRAME_HEIGHT, FRAME_WIDTH};
+    private final YuvConverter yuvConverter = new YuvConverter(INPUT_SIZE);
+    private YuvPlanes planes;
+    private int next;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(7);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        byte[] y = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        // NV21 交错布局，U/V 像素跨度为 2
+        byte[] uv = new byte[FRAME_WIDTH * FRAME_HEIGHT / 2];
+        random.nextBytes(y);
+        random.nextBytes(uv);
+        ByteBuffer yBuffer = ByteBuffer.wrap(y);
+        ByteBuffer vBuffer = ByteBuffer.wrap(uv, 0, uv.length - 1).slice();
+        ByteBuffer uBuffer = ByteBuffer.wrap(uv, 1, uv.length - 1).slice();
+        planes = YuvPlanes.copyOf(yBuffer, FRAME_WIDTH, uBuffer, vBuffer, FRAME_WIDTH, 2, FRAME_WIDTH, FRAME_HEIGHT);
+    }
+
+    private int[] nextBox() {
+        next = (next + 1) & (BOXES.length - 1);
+        return BOXES[next];
+    }
+
+    @Benchmark
+    public int[] cropMath() {
+        int[] box = nextBox();
+        FaceCrop.headRegion(box[0], box[1], box[2], box[3], FRAME_HEIGHT, FRAME_WIDTH, crop);
+        return crop;
+    }
+
+    @Benchmark
+    public float[] headRegionArgb() {
+        int[] box = nextBox();
+        FaceCrop.headRegion(box[0], box[1], box[2], box[3], FRAME_HEIGHT, FRAME_WIDTH, crop);
+        ImagePreprocessor.argbToRgbFloats(pixels, pixels.length, out);
+        return out;
+    }
+
+    @Benchmark
+    public float[] headRegionYuv() {
+        int[] box = nextBox();
+        FaceCrop.headRegion(box[0], box[1], box[2], box[3], FRAME_HEIGHT, FRAME_WIDTH, crop);
+        yuvConverter.convert(planes, 90, true, crop, out);
+        return out;
+    }
+
+    @Benchmark
+    public float[] fullFrameYuv() {
+        yuvConverter.convert(planes, 90, true, fullFrame, out);
+        return out;
+    }
+}
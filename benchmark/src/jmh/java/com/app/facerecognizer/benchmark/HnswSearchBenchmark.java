@@ -0,0 +1,100 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.HnswIndex;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+import com.app.facerecognizer.ml.TopKHeap;
+import com.app.facerecognizer.ml.VectorMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HNSW 近似检索在不同 efSearch 下的延迟。召回率在准备阶段对照精确 top-K 计算并打印，
+ * 与延迟一起看才能选出合适的 ef
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HnswSearchBenchmark {
+
+    private static final int K = 10;
+    private static final int QUERY_COUNT = 64;
+    private static final int RECALL_QUERIES = 50;
+
+    @Param({"20000"})
+    public int gallerySize;
+
+    @Param({"16", "64", "256"})
+    public int efSearch;
+
+    private HnswIndex index;
+    private float[][] queries;
+    private int next;
+
+    @Setup
+    public void setup() {
+        float[][] vectors = BenchmarkData.clusteredVectors(gallerySize, 7);
+        index = new HnswIndex(BenchmarkData.DIM);
+        for (int i = 0; i < vectors.length; i++) {
+            index.insert(i, "person-" + i / BenchmarkData.TEMPLATES_PER_IDENTITY, "", vectors[i]);
+        }
+        index.setEfSearch(efSearch);
+        queries = BenchmarkData.randomVectors(QUERY_COUNT, 11);
+        System.out.printf("%nHNSW size=%d ef=%d recall@%d=%.3f%n", gallerySize, efSearch, K, recall(vectors));
+    }
+
+    /**
+     * 以带扰动的底库向量为查询，统计近似结果覆盖精确 top-K 的比例
+     */
+    private float recall(float[][] vectors) {
+        float[][] unit = new float[vectors.length][BenchmarkData.DIM];
+        for (int i = 0; i < vectors.length; i++) {
+            VectorMath.normalize(vectors[i], 0, unit[i], 0, BenchmarkData.DIM);
+        }
+        float[][] noise = BenchmarkData.randomVectors(RECALL_QUERIES, 13);
+        float[] query = new float[BenchmarkData.DIM];
+        TopKHeap exact = new TopKHeap(K);
+        int found = 0;
+        for (int q = 0; q < RECALL_QUERIES; q++) {
+            float[] base = vectors[q * (vectors.length / RECALL_QUERIES)];
+            for (int d = 0; d < BenchmarkData.DIM; d++) {
+                query[d] = base[d] + 0.2f * noise[q][d];
+            }
+            VectorMath.normalize(query, 0, query, 0, BenchmarkData.DIM);
+            exact.reset(K);
+            for (int i = 0; i < unit.length; i++) {
+                exact.offer(i, VectorMath.dot(query, 0, unit[i], 0, BenchmarkData.DIM));
+            }
+            List<SimilarInfoBean> approximate = index.search(query, K);
+            for (int i = 0; i < exact.size(); i++) {
+                for (SimilarInfoBean bean : approximate) {
+                    if (bean.getId() == exact.idAt(i)) {
+                        found++;
+                        break;
+                    }
+                }
+            }
+        }
+        return found / (float) (RECALL_QUERIES * K);
+    }
+
+    @Benchmark
+    public List<SimilarInfoBean> search() {
+        return index.search(queries[next++ & (QUERY_COUNT - 1)], K);
+    }
+}
@@ -0,0 +1,55 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.metrics.LatencyHistogram;
+import com.app.facerecognizer.metrics.PipelineMetrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 热路径上记录一次指标的开销，多线程版本反映识别、检测、检索线程同时记录时的争用
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private long value = 123456;
+
+    @Benchmark
+    public void histogramRecord() {
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record((value >>> 40) & 0xFFFFFFL);
+    }
+
+    @Benchmark
+    public void stageStartEnd() {
+        metrics.end(PipelineMetrics.Stage.SEARCH, metrics.start(PipelineMetrics.Stage.SEARCH));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void stageStartEndContended() {
+        metrics.end(PipelineMetrics.Stage.SEARCH, metrics.start(PipelineMetrics.Stage.SEARCH));
+    }
+
+    @Benchmark
+    public LatencyHistogram.Snapshot snapshot() {
+        return histogram.snapshot();
+    }
+}
@@ -0,0 +1,72 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.ImagePreprocessor;
+import com.app.facerecognizer.ml.YuvConverter;
+import com.app.facerecognizer.ml.YuvPlanes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型输入预处理：112x112 ARGB 像素转 float，以及从 640x480 YUV 帧裁剪、旋转并转换
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PreprocessBenchmark {
+
+    private static final int INPUT_SIZE = 112;
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+
+    private final int[] pixels = new int[INPUT_SIZE * INPUT_SIZE];
+    private final float[] out = new float[INPUT_SIZE * INPUT_SIZE * 3];
+    private final YuvConverter yuvConverter = new YuvConverter(INPUT_SIZE);
+    private YuvPlanes planes;
+    // 正向坐标（旋转 90 度后为 480x640）下的头部区域
+    private final int[] crop = {120, 160, 360, 460};
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xFF000000 | random.nextInt(0x1000000);
+        }
+        byte[] y = new byte[FRAME_WIDTH * FRAME_HEIGHT];
+        // NV21 交错布局，U/V 像素跨度为 2
+        byte[] uv = new byte[FRAME_WIDTH * FRAME_HEIGHT / 2];
+        random.nextBytes(y);
+        random.nextBytes(uv);
+        ByteBuffer yBuffer = ByteBuffer.wrap(y);
+        ByteBuffer vBuffer = ByteBuffer.wrap(uv, 0, uv.length - 1).slice();
+        ByteBuffer uBuffer = ByteBuffer.wrap(uv, 1, uv.length - 1).slice();
+        planes = YuvPlanes.copyOf(yBuffer, FRAME_WIDTH, uBuffer, vBuffer, FRAME_WIDTH, 2, FRAME_WIDTH, FRAME_HEIGHT);
+    }
+
+    @Benchmark
+    public float[] argbToRgbFloats() {
+        ImagePreprocessor.argbToRgbFloats(pixels, pixels.length, out);
+        return out;
+    }
+
+    @Benchmark
+    public float[] yuvConvert() {
+        yuvConverter.convert(planes, 90, true, crop, out);
+        return out;
+    }
+}
@@ -0,0 +1,60 @@
+package com.app.facerecognizer.benchmark;
+
+import com.app.facerecognizer.ml.VectorMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单对 192 维向量的相似度内核
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class VectorMathBenchmark {
+
+    private float[] a;
+    private float[] b;
+    private final float[] unit = new float[BenchmarkData.DIM];
+
+    @Setup
+    public void setup() {
+        float[][] vectors = BenchmarkData.randomVectors(2, 42);
+        a = vectors[0];
+        b = vectors[1];
+    }
+
+    @Benchmark
+    public float dot() {
+        return VectorMath.dot(a, 0, b, 0, BenchmarkData.DIM);
+    }
+
+    @Benchmark
+    public float cosineSimilarity() {
+        return VectorMath.cosineSimilarity(a, b);
+    }
+
+    @Benchmark
+    public float l2Distance() {
+        return VectorMath.l2Distance(a, b);
+    }
+
+    @Benchmark
+    public float[] normalize() {
+        VectorMath.normalize(a, 0, unit, 0, BenchmarkData.DIM);
+        return unit;
+    }
+}
@@ -0,0 +1,29 @@
+plugins {
+    application
+}
+
+// 离线批量 1:N 检索，输入为预先提取的特征（JVM 上没有 TFLite）
+// 运行：./gradlew :cli:run --args="--gallery face_gallery.snap --queries queries.csv --out results.json"
+// 打包：./gradlew :cli:installDist，之后直接运行 cli/build/install/face-identify/bin/face-identify
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+application {
+    mainClass.set("com.app.facerecognizer.cli.IdentifyCli")
+    applicationName = "face-identify"
+}
+
+tasks.named<JavaExec>("run") {
+    // 相对路径按执行 gradlew 的目录解析
+    workingDir = rootDir
+}
@@ -0,0 +1,96 @@
+package com.app.facerecognizer.cli;
+
+import com.app.facerecognizer.metrics.PipelineMetrics;
+import com.app.facerecognizer.ml.FeatureStore;
+import com.app.facerecognizer.ml.GallerySearcher;
+import com.app.facerecognizer.ml.ScannableGallery;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 多线程批量 1:N 检索：查询按 BLOCK_QUERIES 个分块，每个工作线程持有一个在本线程中扫描的
+ * {@link GallerySearcher}，依次领取分块做多查询扫描（{@link GallerySearcher#searchAll}），
+ * 所有线程共享同一个只读底库。
+ * <p>
+ * 结果缓存关闭，每个查询都走完整检索。INT8 底库不支持多查询打分，扫描会在底库的锁上串行
+ */
+final class BatchIdentifier {
+
+    // 每次领取的查询数，searchAll 内部再按批扫描
+    private static final int BLOCK_QUERIES = 64;
+
+    private final ScannableGallery gallery;
+    private final FeatureStore featureStore;
+    private final int threads;
+    private final PipelineMetrics metrics;
+
+    /**
+     * @param featureStore 量化底库重排用的全精度特征，为 null 时不重排
+     */
+    BatchIdentifier(ScannableGallery gallery, FeatureStore featureStore, int threads, PipelineMetrics metrics) {
+        this.gallery = gallery;
+        this.featureStore = featureStore;
+        this.threads = Math.max(1, threads);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 检索全部查询，第 i 个结果为 queries[i] 平均分最高的 K 个身份
+     */
+    List<List<SimilarInfoBean>> identify(float[][] queries, int k) throws InterruptedException {
+        int count = queries.length;
+        // 各线程只写自己领取的下标，Future.get 保证写入对调用线程可见
+        List<List<SimilarInfoBean>> results = new ArrayList<>(Collections.<List<SimilarInfoBean>>nCopies(count, null));
+        AtomicInteger nextBlock = new AtomicInteger();
+        List<Callable<Void>> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(() -> {
+                GallerySearcher searcher = newSearcher();
+                float[][] block = new float[BLOCK_QUERIES][];
+                try {
+                    int from;
+                    while ((from = nextBlock.getAndAdd(BLOCK_QUERIES)) < count) {
+                        int blockCount = Math.min(BLOCK_QUERIES, count - from);
+                        System.arraycopy(queries, from, block, 0, blockCount);
+                        List<List<SimilarInfoBean>> searched = searcher.searchAll(block, blockCount, k);
+                        for (int q = 0; q < blockCount; q++) {
+                            results.set(from + q, searched.get(q));
+                        }
+                    }
+                } finally {
+                    searcher.close();
+                }
+                return null;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : executor.invokeAll(workers)) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Identification failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private GallerySearcher newSearcher() {
+        GallerySearcher searcher = new GallerySearcher(0);
+        searcher.configureResultCache(1, 0, 0f);
+        searcher.setMetrics(metrics);
+        searcher.setFeatureStore(featureStore);
+        searcher.setGallery(gallery);
+        return searcher;
+    }
+}
@@ -0,0 +1,208 @@
+package com.app.facerecognizer.cli;
+
+import com.app.facerecognizer.ml.FaceGallery;
+import com.app.facerecognizer.ml.GallerySnapshot;
+import com.app.facerecognizer.ml.ScannableGallery;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命令行工具读取的底库和查询文件：
+ * <ul>
+ * <li>底库快照：应用写入的 face_gallery.snap（{@link GallerySnapshot} 格式），直接映射</li>
+ * <li>底库 CSV：每行 faceId,name,path，后接 192 个特征值</li>
+ * <li>查询 CSV：每行 queryId，后接 192 个特征值；只有特征值时查询 id 为行号</li>
+ * <li>查询二进制：N×192 个小端序 float32 连续存放，与 FeatureCodec 的编码相同，查询 id 为行号</li>
+ * </ul>
+ * CSV 中以 # 开头的行、空行和表头会被跳过，字段可以用双引号包围
+ */
+final class EmbeddingFiles {
+
+    private static final int DIM = ScannableGallery.DIM;
+
+    private EmbeddingFiles() {
+    }
+
+    /**
+     * 一组查询，ids[i] 对应 vectors[i]
+     */
+    static final class QuerySet {
+        final String[] ids;
+        final float[][] vectors;
+
+        QuerySet(String[] ids, float[][] vectors) {
+            this.ids = ids;
+            this.vectors = vectors;
+        }
+    }
+
+    /**
+     * 按扩展名读取底库，.csv 在内存中构建 float32 底库，其余按快照映射
+     */
+    static ScannableGallery readGallery(File file) throws IOException {
+        if (!isCsv(file)) {
+            return GallerySnapshot.open(file);
+        }
+        FaceGallery.Builder builder = new FaceGallery.Builder(1024);
+        float[] feature = new float[DIM];
+        try (BufferedReader reader = open(file)) {
+            String line;
+            int lineNumber = 0;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (skip(line)) continue;
+                boolean first = header;
+                header = false;
+                List<String> fields = split(line);
+                if (fields.size() != 3 + DIM) {
+                    if (first) continue;
+                    throw new IOException(file + ":" + lineNumber + ": expected faceId,name,path and " + DIM
+                            + " feature values, got " + fields.size() + " fields");
+                }
+                int faceId;
+                try {
+                    faceId = Integer.parseInt(fields.get(0).trim());
+                    parseFeature(fields, 3, feature);
+                } catch (NumberFormatException e) {
+                    if (first) continue;
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+                builder.add(faceId, fields.get(1), fields.get(2), feature);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 按扩展名读取查询，.csv 按文本读取，其余按 float32 二进制读取
+     */
+    static QuerySet readQueries(File file) throws IOException {
+        return isCsv(file) ? readQueryCsv(file) : readQueryBinary(file);
+    }
+
+    private static QuerySet readQueryCsv(File file) throws IOException {
+        List<String> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        try (BufferedReader reader = open(file)) {
+            String line;
+            int lineNumber = 0;
+            boolean header = true;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (skip(line)) continue;
+                boolean first = header;
+                header = false;
+                List<String> fields = split(line);
+                int offset = fields.size() - DIM;
+                if (offset != 0 && offset != 1) {
+                    if (first) continue;
+                    throw new IOException(file + ":" + lineNumber + ": expected queryId and " + DIM
+                            + " feature values, got " + fields.size() + " fields");
+                }
+                float[] feature = new float[DIM];
+                try {
+                    parseFeature(fields, offset, feature);
+                } catch (NumberFormatException e) {
+                    if (first) continue;
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+                }
+                ids.add(offset == 1 ? fields.get(0) : String.valueOf(vectors.size()));
+                vectors.add(feature);
+            }
+        }
+        return new QuerySet(ids.toArray(new String[0]), vectors.toArray(new float[0][]));
+    }
+
+    private static QuerySet readQueryBinary(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            long rowBytes = (long) DIM * Float.BYTES;
+            if (channel.size() % rowBytes != 0) {
+                throw new IOException(file + ": size " + channel.size() + " is not a multiple of " + rowBytes
+                        + " bytes (" + DIM + " float32 per query)");
+            }
+            int count = (int) (channel.size() / rowBytes);
+            FloatBuffer floats = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            String[] ids = new String[count];
+            float[][] vectors = new float[count][DIM];
+            for (int i = 0; i < count; i++) {
+                ids[i] = String.valueOf(i);
+                floats.get(vectors[i]);
+            }
+            return new QuerySet(ids, vectors);
+        }
+    }
+
+    private static boolean isCsv(File file) {
+        return file.getName().toLowerCase().endsWith(".csv");
+    }
+
+    private static BufferedReader open(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+    }
+
+    private static boolean skip(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
+    }
+
+    private static void parseFeature(List<String> fields, int offset, float[] out) {
+        for (int i = 0; i < DIM; i++) {
+            out[i] = Float.parseFloat(fields.get(offset + i).trim());
+        }
+    }
+
+    /**
+     * 按逗号拆分一行，双引号内的逗号不拆分，"" 表示一个双引号
+     */
+    static List<String> split(String line) {
+        List<String> fields = new ArrayList<>(DIM + 3);
+        if (line.indexOf('"') < 0) {
+            int start = 0;
+            int comma;
+            while ((comma = line.indexOf(',', start)) >= 0) {
+                fields.add(line.substring(start, comma));
+                start = comma + 1;
+            }
+            fields.add(line.substring(start));
+            return fields;
+        }
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
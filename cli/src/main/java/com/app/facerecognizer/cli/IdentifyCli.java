@@ -0,0 +1,247 @@
+package com.app.facerecognizer.cli;
+
+import com.app.facerecognizer.metrics.PipelineMetrics;
+import com.app.facerecognizer.ml.FaceGallery;
+import com.app.facerecognizer.ml.FeatureStore;
+import com.app.facerecognizer.ml.ScannableGallery;
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 离线批量 1:N 识别：读取底库导出和一组预先提取的查询特征，用全部 CPU 核并行检索，
+ * 结果写为 CSV 或 JSON，耗时和吞吐量输出到标准错误。
+ * <p>
+ * JVM 上没有 TFLite，查询需要是已经提取好的 192 维特征，文件格式见 {@link EmbeddingFiles}。
+ * 应用的底库快照可以直接使用：
+ * <pre>
+ * adb exec-out run-as com.app.facerecognizer cat databases/face_gallery.snap &gt; face_gallery.snap
+ * </pre>
+ */
+public final class IdentifyCli {
+
+    private static final String USAGE = "Usage: face-identify --gallery <face_gallery.snap|gallery.csv>"
+            + " --queries <queries.csv|queries.f32> [options]\n"
+            + "  --out <file>          result file, standard output if omitted\n"
+            + "  --format csv|json     result format, defaults to the --out extension or csv\n"
+            + "  --top-k <n>           identities per query (default 1)\n"
+            + "  --threads <n>         search threads (default: available processors)\n"
+            + "  --precision <p>       FLOAT32, FP16 or INT8 gallery storage (default FLOAT32);\n"
+            + "                        quantized galleries are reranked with the full-precision features\n"
+            + "  --metrics             print per-stage latency statistics\n";
+
+    private IdentifyCli() {
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options == null) {
+            System.out.print(USAGE);
+            return;
+        }
+        try {
+            run(options);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.exit(1);
+        }
+    }
+
+    private static void run(Options options) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        ScannableGallery source = EmbeddingFiles.readGallery(options.gallery);
+        ScannableGallery gallery = source;
+        FeatureStore featureStore = null;
+        if (options.precision != FaceGallery.Precision.FLOAT32) {
+            gallery = quantize(source, options.precision);
+            featureStore = featureStore(source);
+        }
+        log("Gallery: %d templates, %d identities, %s, loaded in %.0f ms", gallery.size(),
+                gallery.identityCount(), gallery.getPrecision(), millisSince(start));
+
+        start = System.nanoTime();
+        EmbeddingFiles.QuerySet queries = EmbeddingFiles.readQueries(options.queries);
+        log("Queries: %d, loaded in %.0f ms", queries.vectors.length, millisSince(start));
+
+        PipelineMetrics metrics = new PipelineMetrics();
+        BatchIdentifier identifier = new BatchIdentifier(gallery, featureStore, options.threads, metrics);
+        start = System.nanoTime();
+        List<List<SimilarInfoBean>> results = identifier.identify(queries.vectors, options.topK);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        log("Identified %d queries in %.2f s (%d threads): %.1f queries/s", queries.vectors.length, seconds,
+                options.threads, seconds == 0 ? 0 : queries.vectors.length / seconds);
+        if (options.metrics) {
+            System.err.print(metrics.snapshot());
+        }
+
+        OutputStream stream = options.out != null ? new FileOutputStream(options.out) : System.out;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            options.format.write(writer, queries.ids, results);
+        } finally {
+            if (options.out != null) {
+                writer.close();
+            } else {
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * 把 float32 底库按行拷贝为量化底库，身份表不变
+     */
+    private static FaceGallery quantize(ScannableGallery source, FaceGallery.Precision precision) {
+        FaceGallery.Builder builder = new FaceGallery.Builder(source.size());
+        float[] vector = new float[ScannableGallery.DIM];
+        for (int row = 0; row < source.size(); row++) {
+            source.getRowVector(row, vector);
+            int identity = source.getRowIdentity(row);
+            builder.add(source.getRowFaceId(row), source.getIdentityName(identity),
+                    source.getIdentityPath(identity), vector);
+        }
+        return builder.build(precision);
+    }
+
+    /**
+     * 以 float32 底库作为重排时的全精度特征来源，多个检索线程并发读取
+     */
+    private static FeatureStore featureStore(ScannableGallery source) {
+        Map<Integer, Integer> rows = new HashMap<>(source.size() * 2);
+        for (int row = 0; row < source.size(); row++) {
+            rows.put(source.getRowFaceId(row), row);
+        }
+        return faceIds -> {
+            float[][] features = new float[faceIds.length][];
+            for (int i = 0; i < faceIds.length; i++) {
+                Integer row = rows.get(faceIds[i]);
+                if (row == null) continue;
+                features[i] = new float[ScannableGallery.DIM];
+                source.getRowVector(row, features[i]);
+            }
+            return features;
+        };
+    }
+
+    private static double millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1e6;
+    }
+
+    private static void log(String format, Object... args) {
+        System.err.println(String.format(Locale.US, format, args));
+    }
+
+    /**
+     * 命令行参数
+     */
+    static final class Options {
+        File gallery;
+        File queries;
+        File out;
+        ResultWriter format;
+        int topK = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        FaceGallery.Precision precision = FaceGallery.Precision.FLOAT32;
+        boolean metrics;
+
+        /**
+         * @return 解析后的参数，--help 时为 null
+         * @throws IllegalArgumentException 参数缺失或取值不合法
+         */
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-h":
+                    case "--help":
+                        return null;
+                    case "--metrics":
+                        options.metrics = true;
+                        break;
+                    case "--gallery":
+                        options.gallery = new File(value(args, ++i, arg));
+                        break;
+                    case "--queries":
+                        options.queries = new File(value(args, ++i, arg));
+                        break;
+                    case "--out":
+                        options.out = new File(value(args, ++i, arg));
+                        break;
+                    case "--format":
+                        options.format = format(value(args, ++i, arg));
+                        break;
+                    case "--top-k":
+                        options.topK = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "--threads":
+                        options.threads = positive(value(args, ++i, arg), arg);
+                        break;
+                    case "--precision":
+                        options.precision = precision(value(args, ++i, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option: " + arg);
+                }
+            }
+            if (options.gallery == null) throw new IllegalArgumentException("Missing --gallery");
+            if (options.queries == null) throw new IllegalArgumentException("Missing --queries");
+            if (options.format == null) {
+                boolean json = options.out != null && options.out.getName().toLowerCase(Locale.US).endsWith(".json");
+                options.format = json ? ResultWriter.JSON : ResultWriter.CSV;
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+            return args[index];
+        }
+
+        private static int positive(String value, String option) {
+            try {
+                int parsed = Integer.parseInt(value);
+                if (parsed > 0) return parsed;
+            } catch (NumberFormatException ignored) {
+            }
+            throw new IllegalArgumentException(option + " must be a positive integer: " + value);
+        }
+
+        private static ResultWriter format(String value) {
+            try {
+                return ResultWriter.valueOf(value.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown format: " + value);
+            }
+        }
+
+        private static FaceGallery.Precision precision(String value) {
+            try {
+                return FaceGallery.Precision.valueOf(value.toUpperCase(Locale.US));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown precision: " + value);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.app.facerecognizer.cli;
+
+import com.app.facerecognizer.ml.SimilarInfoBean;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * 检索结果的输出格式。CSV 每个查询的每个候选一行，没有结果的查询不输出；
+ * JSON 为查询对象的数组，每个对象带按得分排列的 matches
+ */
+enum ResultWriter {
+
+    CSV {
+        @Override
+        void write(Writer out, String[] queryIds, List<List<SimilarInfoBean>> results) throws IOException {
+            out.write("query,rank,face_id,name,path,similarity\n");
+            for (int i = 0; i < queryIds.length; i++) {
+                List<SimilarInfoBean> matches = results.get(i);
+                for (int rank = 0; rank < matches.size(); rank++) {
+                    SimilarInfoBean match = matches.get(rank);
+                    out.write(csvField(queryIds[i]));
+                    out.write(',');
+                    out.write(String.valueOf(rank + 1));
+                    out.write(',');
+                    out.write(String.valueOf(match.getId()));
+                    out.write(',');
+                    out.write(csvField(match.getName()));
+                    out.write(',');
+                    out.write(csvField(match.getPath()));
+                    out.write(',');
+                    out.write(String.valueOf(match.getSimilarity()));
+                    out.write('\n');
+                }
+            }
+        }
+    },
+
+    JSON {
+        @Override
+        void write(Writer out, String[] queryIds, List<List<SimilarInfoBean>> results) throws IOException {
+            out.write("[\n");
+            for (int i = 0; i < queryIds.length; i++) {
+                out.write("  {\"query\": ");
+                out.write(jsonString(queryIds[i]));
+                out.write(", \"matches\": [");
+                List<SimilarInfoBean> matches = results.get(i);
+                for (int rank = 0; rank < matches.size(); rank++) {
+                    SimilarInfoBean match = matches.get(rank);
+                    out.write(rank == 0 ? "\n" : ",\n");
+                    out.write("    {\"rank\": " + (rank + 1) + ", \"faceId\": " + match.getId() + ", \"name\": ");
+                    out.write(jsonString(match.getName()));
+                    out.write(", \"path\": ");
+                    out.write(jsonString(match.getPath()));
+                    out.write(", \"similarity\": " + match.getSimilarity() + "}");
+                }
+                out.write(matches.isEmpty() ? "]}" : "\n  ]}");
+                out.write(i < queryIds.length - 1 ? ",\n" : "\n");
+            }
+            out.write("]\n");
+        }
+    };
+
+    /**
+     * 按查询顺序写出结果，results.get(i) 对应 queryIds[i]
+     */
+    abstract void write(Writer out, String[] queryIds, List<List<SimilarInfoBean>> results) throws IOException;
+
+    /**
+     * 含逗号、双引号或换行的字段用双引号包围，内部的双引号写成 ""
+     */
+    static String csvField(String value) {
+        if (value == null) return "";
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+
+    static String jsonString(String value) {
+        if (value == null) return "null";
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,17 @@
+plugins {
+    `java-library`
+}
+
+// 不依赖 Android 的检索、量化和预处理代码，app 和基准测试共用
+java {
+    sourceCompatibility = JavaVersion.VERSION_1_8
+    targetCompatibility = JavaVersion.VERSION_1_8
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    options.encoding = "UTF-8"
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,60 @@
+package com.app.facerecognizer.db;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * 特征向量的存储编码：当前使用小端序 float 的二进制 BLOB (192 维 = 768 字节)，
+ * 数据库版本 1 使用逗号分隔的字符串，仅在迁移旧数据时用到
+ */
+public final class FeatureCodec {
+
+    private FeatureCodec() {
+    }
+
+    public static byte[] toBytes(float[] value) {
+        if (value == null) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(value.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(value);
+        return buffer.array();
+    }
+
+    public static float[] fromBytes(byte[] value) {
+        if (value == null || value.length == 0) {
+            return null;
+        }
+        FloatBuffer floatBuffer = ByteBuffer.wrap(value).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        float[] floatArray = new float[floatBuffer.remaining()];
+        floatBuffer.get(floatArray);
+        return floatArray;
+    }
+
+    public static String toLegacyString(float[] value) {
+        if (value == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length; i++) {
+            sb.append(value[i]);
+            if (i < value.length - 1) {
+                sb.append(",");
+            }
+        }
+        return sb.toString();
+    }
+
+    public static float[] fromLegacyString(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        String[] parts = value.split(",");
+        float[] floatArray = new float[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            floatArray[i] = Float.parseFloat(parts[i]);
+        }
+        return floatArray;
+    }
+}
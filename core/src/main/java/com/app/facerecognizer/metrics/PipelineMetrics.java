@@ -0,0 +1,225 @@
+package com.app.facerecognizer.metrics;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 识别流水线的分阶段耗时和计数。每个阶段一个 {@link LatencyHistogram}，另有帧、分配等计数器，
+ * 记录全程无锁，可在任意线程调用。
+ * <p>
+ * 设置 {@link TraceSink} 后，{@link #start}/{@link #end} 之间同时输出一个追踪区段，
+ * 在 Android 上可对应 systrace / Perfetto 的 Trace 区段。跨线程完成的阶段用 {@link #record} 直接记录耗时，不输出区段
+ */
+public final class PipelineMetrics {
+
+    public enum Stage {
+        DETECT("detect"),
+        CONVERT("convert"),
+        PREPROCESS("preprocess"),
+        INVOKE("invoke"),
+        SEARCH("search"),
+        AGGREGATE("aggregate");
+
+        private final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Counter {
+        FRAMES_SUBMITTED("frames_submitted"),
+        FRAMES_DROPPED("frames_dropped"),
+        FRAMES_PROCESSED("frames_processed"),
+        EMBEDDINGS_SKIPPED("embeddings_skipped"),
+        SEARCHES("searches"),
+        RESULT_CACHE_HITS("result_cache_hits"),
+        ALLOCATIONS("allocations"),
+        ALLOCATED_BYTES("allocated_bytes");
+
+        private final String label;
+
+        Counter(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 追踪区段的输出目标，begin/end 在同一线程成对调用
+     */
+    public interface TraceSink {
+        void beginSection(String name);
+
+        void endSection();
+    }
+
+    private static final PipelineMetrics GLOBAL = new PipelineMetrics();
+    private static final String TRACE_PREFIX = "FaceRecognizer:";
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLong[] counters = new AtomicLong[Counter.values().length];
+    private final String[] sectionNames = new String[Stage.values().length];
+    private volatile TraceSink traceSink;
+    private volatile long resetNanos = System.nanoTime();
+
+    public PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            histograms[stage.ordinal()] = new LatencyHistogram();
+            sectionNames[stage.ordinal()] = TRACE_PREFIX + stage.label;
+        }
+        for (Counter counter : Counter.values()) {
+            counters[counter.ordinal()] = new AtomicLong();
+        }
+    }
+
+    /**
+     * 进程内共享的实例
+     */
+    public static PipelineMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * 设置为 null 时关闭追踪区段。切换发生在某个阶段进行中时，该阶段的区段可能不成对
+     */
+    public void setTraceSink(TraceSink traceSink) {
+        this.traceSink = traceSink;
+    }
+
+    public boolean isTracing() {
+        return traceSink != null;
+    }
+
+    /**
+     * 开始一个阶段，返回传给 {@link #end} 的起始时间
+     */
+    public long start(Stage stage) {
+        TraceSink sink = traceSink;
+        if (sink != null) {
+            sink.beginSection(sectionNames[stage.ordinal()]);
+        }
+        return System.nanoTime();
+    }
+
+    public void end(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].record(System.nanoTime() - startNanos);
+        TraceSink sink = traceSink;
+        if (sink != null) {
+            sink.endSection();
+        }
+    }
+
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].incrementAndGet();
+    }
+
+    public void add(Counter counter, long delta) {
+        counters[counter.ordinal()].addAndGet(delta);
+    }
+
+    /**
+     * 记录热路径上的一次堆分配
+     */
+    public void countAllocation(long bytes) {
+        counters[Counter.ALLOCATIONS.ordinal()].incrementAndGet();
+        counters[Counter.ALLOCATED_BYTES.ordinal()].addAndGet(bytes);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        for (AtomicLong counter : counters) {
+            counter.set(0);
+        }
+        resetNanos = System.nanoTime();
+    }
+
+    public Snapshot snapshot() {
+        Map<Stage, LatencyHistogram.Snapshot> stages = new EnumMap<>(Stage.class);
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, histograms[stage.ordinal()].snapshot());
+        }
+        Map<Counter, Long> values = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            values.put(counter, counters[counter.ordinal()].get());
+        }
+        return new Snapshot(stages, values, System.nanoTime() - resetNanos);
+    }
+
+    /**
+     * 某一时刻的全部指标，{@link #toString} 输出 dumpsys 风格的文本
+     */
+    public static final class Snapshot {
+        private final Map<Stage, LatencyHistogram.Snapshot> stages;
+        private final Map<Counter, Long> counters;
+        private final long elapsedNanos;
+
+        Snapshot(Map<Stage, LatencyHistogram.Snapshot> stages, Map<Counter, Long> counters, long elapsedNanos) {
+            this.stages = stages;
+            this.counters = counters;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public LatencyHistogram.Snapshot get(Stage stage) {
+            return stages.get(stage);
+        }
+
+        public long get(Counter counter) {
+            return counters.get(counter);
+        }
+
+        /**
+         * 距上次重置（或创建）的时长
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * 阶段的吞吐量，每秒完成的次数
+         */
+        public double getRate(Stage stage) {
+            return elapsedNanos == 0 ? 0 : stages.get(stage).getCount() * 1e9 / elapsedNanos;
+        }
+
+        public void dump(StringBuilder out, String prefix) {
+            out.append(prefix).append(String.format(Locale.US, "Pipeline metrics over %.1fs:%n", elapsedNanos / 1e9));
+            out.append(prefix).append(String.format(Locale.US, "  %-10s %8s %8s %8s %8s %8s %8s %8s%n",
+                    "stage", "count", "rate/s", "mean", "p50", "p90", "p99", "max"));
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram.Snapshot histogram = stages.get(stage);
+                out.append(prefix).append(String.format(Locale.US, "  %-10s %8d %8.1f %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                        stage.label, histogram.getCount(), getRate(stage), histogram.getMeanNanos() / 1e6,
+                        histogram.getPercentileNanos(50) / 1e6, histogram.getPercentileNanos(90) / 1e6,
+                        histogram.getPercentileNanos(99) / 1e6, histogram.getMaxNanos() / 1e6));
+            }
+            out.append(prefix).append("  (latencies in ms)").append(System.lineSeparator());
+            for (Counter counter : Counter.values()) {
+                out.append(prefix).append("  ").append(counter.label).append('=').append(counters.get(counter))
+                        .append(System.lineSeparator());
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder();
+            dump(out, "");
+            return out.toString();
+        }
+    }
+}
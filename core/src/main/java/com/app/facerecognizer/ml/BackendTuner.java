@@ -0,0 +1,131 @@
+package com.app.facerecognizer.ml;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * 推理后端自动调优：依次用每个候选配置创建会话，预热后测量若干次推理，取中位延迟最小的配置。
+ * 创建或推理失败的配置被记录为失败并跳过，NNAPI 悄悄退回 CPU 之类的情况直接体现在测得的延迟上。
+ * <p>
+ * 会话的创建由 {@link SessionFactory} 提供，本类不依赖具体的推理库
+ */
+public class BackendTuner {
+
+    public interface Session {
+        void run() throws Exception;
+
+        void close();
+    }
+
+    public interface SessionFactory {
+        Session open(InferenceConfig config) throws Exception;
+    }
+
+    public static final class Result {
+        private final InferenceConfig config;
+        private final long medianNanos;
+        private final String error;
+
+        Result(InferenceConfig config, long medianNanos, String error) {
+            this.config = config;
+            this.medianNanos = medianNanos;
+            this.error = error;
+        }
+
+        public InferenceConfig getConfig() {
+            return config;
+        }
+
+        /**
+         * 失败时为 Long.MAX_VALUE
+         */
+        public long getMedianNanos() {
+            return medianNanos;
+        }
+
+        public boolean isFailed() {
+            return error != null;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) return config + " failed: " + error;
+            return String.format(Locale.US, "%s %.2fms", config, medianNanos / 1e6);
+        }
+    }
+
+    private int warmupRuns = 3;
+    private int measureRuns = 10;
+
+    public void setRuns(int warmupRuns, int measureRuns) {
+        this.warmupRuns = Math.max(0, warmupRuns);
+        this.measureRuns = Math.max(1, measureRuns);
+    }
+
+    /**
+     * 候选配置：CPU 1..maxThreads 线程分别开关 XNNPACK，以及可用时的 NNAPI 和 GPU
+     */
+    public static List<InferenceConfig> candidates(int maxThreads, boolean nnapi, boolean gpu) {
+        List<InferenceConfig> configs = new ArrayList<>();
+        for (int threads = 1; threads <= Math.max(1, maxThreads); threads++) {
+            configs.add(InferenceConfig.cpu(threads, true));
+            configs.add(InferenceConfig.cpu(threads, false));
+        }
+        if (nnapi) configs.add(InferenceConfig.nnapi());
+        if (gpu) configs.add(InferenceConfig.gpu());
+        return configs;
+    }
+
+    /**
+     * 测量所有候选配置，结果按中位延迟从小到大排列，失败的排在最后
+     */
+    public List<Result> measure(List<InferenceConfig> candidates, SessionFactory factory) {
+        List<Result> results = new ArrayList<>(candidates.size());
+        long[] samples = new long[measureRuns];
+        for (InferenceConfig config : candidates) {
+            Session session = null;
+            try {
+                session = factory.open(config);
+                for (int i = 0; i < warmupRuns; i++) {
+                    session.run();
+                }
+                for (int i = 0; i < measureRuns; i++) {
+                    long start = System.nanoTime();
+                    session.run();
+                    samples[i] = System.nanoTime() - start;
+                }
+                Arrays.sort(samples);
+                results.add(new Result(config, samples[measureRuns / 2], null));
+            } catch (Exception | LinkageError e) {
+                // 委托在部分设备上会在创建或首次推理时抛出，记录后继续测下一个
+                results.add(new Result(config, Long.MAX_VALUE, String.valueOf(e)));
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
+            }
+        }
+        Collections.sort(results, (a, b) -> Long.compare(a.medianNanos, b.medianNanos));
+        return results;
+    }
+
+    /**
+     * 模型内容的 CRC32，用于区分模型版本。不改变 buffer 的 position
+     */
+    public static String checksum(ByteBuffer model) {
+        CRC32 crc = new CRC32();
+        ByteBuffer source = model.duplicate();
+        source.rewind();
+        crc.update(source);
+        return Long.toHexString(crc.getValue());
+    }
+}
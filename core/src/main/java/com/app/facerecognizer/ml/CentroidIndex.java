@@ -0,0 +1,143 @@
+package com.app.facerecognizer.ml;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * 身份质心粗排索引：保存每个身份全部模板单位向量之和，以及每个身份的行号列表。
+ * 查询与模板点积的平均值等于查询与模板均值向量的点积，因此先对身份的均值向量打分，
+ * 只对得分最高的若干身份逐个模板精确计算，结果与全量按身份求平均一致，除非真正的匹配身份没有进入候选。
+ * <p>
+ * 实例不可变并绑定一个底库版本。底库在旧版本的基础上增删得到时用 {@link #derive} 增量更新，
+ * 只对增删的行做向量运算
+ */
+public class CentroidIndex {
+
+    private static final int DIM = FaceGallery.DIM;
+
+    private final ScannableGallery gallery;
+    private final int identityCount;
+    // identityCount × DIM，每个身份的模板向量之和
+    private final float[] sums;
+    private final int[] templateCounts;
+    // 按身份分组的行号：identityRows[identityRowStarts[i], identityRowStarts[i + 1]) 为身份 i 的行，升序
+    private final int[] identityRowStarts;
+    private final int[] identityRows;
+
+    private CentroidIndex(ScannableGallery gallery, float[] sums) {
+        this.gallery = gallery;
+        this.identityCount = gallery.identityCount();
+        this.sums = sums;
+        this.templateCounts = new int[identityCount];
+        for (int identity = 0; identity < identityCount; identity++) {
+            templateCounts[identity] = gallery.getIdentityTemplateCount(identity);
+        }
+        // 计数排序按身份分组，组内行号升序
+        int size = gallery.size();
+        int[] rowCounts = new int[identityCount + 1];
+        for (int row = 0; row < size; row++) {
+            rowCounts[gallery.getRowIdentity(row) + 1]++;
+        }
+        for (int i = 0; i < identityCount; i++) {
+            rowCounts[i + 1] += rowCounts[i];
+        }
+        this.identityRowStarts = rowCounts.clone();
+        this.identityRows = new int[size];
+        for (int row = 0; row < size; row++) {
+            identityRows[rowCounts[gallery.getRowIdentity(row)]++] = row;
+        }
+    }
+
+    /**
+     * 读取底库全部行构建索引
+     */
+    public static CentroidIndex build(ScannableGallery gallery) {
+        if (gallery instanceof DeltaGallery) {
+            // 叠加底库中被删除的行仍可读取，需从基础底库的索引中扣除
+            DeltaGallery delta = (DeltaGallery) gallery;
+            return derive(build(delta.getBase()), delta, delta.getRemovedRows());
+        }
+        float[] sums = new float[gallery.identityCount() * DIM];
+        float[] vector = new float[DIM];
+        for (int row = 0; row < gallery.size(); row++) {
+            gallery.getRowVector(row, vector);
+            accumulate(sums, gallery.getRowIdentity(row), vector, 1f);
+        }
+        return new CentroidIndex(gallery, sums);
+    }
+
+    /**
+     * 由旧版本的索引增量得到新底库的索引。要求新底库的前 previous.getGallery().size() 行与旧底库逐行相同（身份 id 不变），
+     * 其中 removedRows 标记的行已删除，其后的行都是新增的；身份 id 只会在末尾追加。
+     * {@link DeltaGallery} 相对其基础底库、{@link SegmentedGallery#append} 前后的两个版本都满足这一条件
+     *
+     * @param removedRows 被删除的旧底库行，可为空
+     */
+    public static CentroidIndex derive(CentroidIndex previous, ScannableGallery gallery, BitSet removedRows) {
+        ScannableGallery old = previous.gallery;
+        float[] sums = Arrays.copyOf(previous.sums, gallery.identityCount() * DIM);
+        float[] vector = new float[DIM];
+        if (removedRows != null) {
+            for (int row = removedRows.nextSetBit(0); row >= 0 && row < old.size(); row = removedRows.nextSetBit(row + 1)) {
+                old.getRowVector(row, vector);
+                accumulate(sums, old.getRowIdentity(row), vector, -1f);
+            }
+        }
+        for (int row = old.size(); row < gallery.size(); row++) {
+            gallery.getRowVector(row, vector);
+            accumulate(sums, gallery.getRowIdentity(row), vector, 1f);
+        }
+        return new CentroidIndex(gallery, sums);
+    }
+
+    private static void accumulate(float[] sums, int identity, float[] vector, float sign) {
+        int offset = identity * DIM;
+        for (int i = 0; i < DIM; i++) {
+            sums[offset + i] += sign * vector[i];
+        }
+    }
+
+    public ScannableGallery getGallery() {
+        return gallery;
+    }
+
+    public int identityCount() {
+        return identityCount;
+    }
+
+    /**
+     * 查询与身份模板均值向量的点积，即查询与该身份各模板点积的平均值
+     */
+    public float meanDot(float[] unitQuery, int identity) {
+        int count = templateCounts[identity];
+        if (count == 0) return Float.NEGATIVE_INFINITY;
+        return VectorMath.dot(unitQuery, 0, sums, identity * DIM, DIM) / count;
+    }
+
+    /**
+     * 对所有身份粗排，把均值点积最高的 m 个身份放入 out（降序）
+     */
+    public void topIdentities(float[] unitQuery, int m, TopKHeap out) {
+        out.reset(m);
+        for (int identity = 0; identity < identityCount; identity++) {
+            if (templateCounts[identity] == 0) continue;
+            float score = meanDot(unitQuery, identity);
+            if (score > out.threshold()) {
+                out.offer(identity, score);
+            }
+        }
+        out.sortDescending();
+    }
+
+    public int rowStart(int identity) {
+        return identityRowStarts[identity];
+    }
+
+    public int rowEnd(int identity) {
+        return identityRowStarts[identity + 1];
+    }
+
+    public int rowAt(int index) {
+        return identityRows[index];
+    }
+}
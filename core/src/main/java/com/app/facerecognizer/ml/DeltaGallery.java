@@ -0,0 +1,262 @@
+package com.app.facerecognizer.ml;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 在不可变的基础底库上叠加少量增删得到的底库视图，基础底库本身不做任何修改。
+ * 行号 [0, base.size()) 对应基础底库的行，其后是新增的行；被删除的基础行得分恒为 0，
+ * 也不计入身份的模板数，因此按身份求平均时不受影响。
+ * <p>
+ * 实例不可变，增删累积较多时应由调用方重新构建基础底库
+ */
+public class DeltaGallery extends ScannableGallery {
+
+    /**
+     * 基础底库的查找表，每个基础底库只需构建一次
+     */
+    public static final class Base {
+        private final ScannableGallery gallery;
+        private final int[] sortedFaceIds;
+        private final int[] rowsBySortedId;
+        private final Map<String, Integer> identityByName;
+
+        public Base(ScannableGallery gallery) {
+            this.gallery = gallery;
+            int size = gallery.size();
+            long[] pairs = new long[size];
+            for (int row = 0; row < size; row++) {
+                pairs[row] = ((long) gallery.getRowFaceId(row) << 32) | row;
+            }
+            Arrays.sort(pairs);
+            sortedFaceIds = new int[size];
+            rowsBySortedId = new int[size];
+            for (int i = 0; i < size; i++) {
+                sortedFaceIds[i] = (int) (pairs[i] >> 32);
+                rowsBySortedId[i] = (int) pairs[i];
+            }
+            identityByName = new HashMap<>(gallery.identityCount() * 2);
+            for (int identity = 0; identity < gallery.identityCount(); identity++) {
+                identityByName.put(gallery.getIdentityName(identity), identity);
+            }
+        }
+
+        public ScannableGallery getGallery() {
+            return gallery;
+        }
+
+        /**
+         * faceId 所在的行，不在基础底库中时返回 -1
+         */
+        public int rowOf(int faceId) {
+            int index = Arrays.binarySearch(sortedFaceIds, faceId);
+            return index >= 0 ? rowsBySortedId[index] : -1;
+        }
+
+        public int identityOf(String name) {
+            Integer identity = identityByName.get(name);
+            return identity == null ? -1 : identity;
+        }
+    }
+
+    private final ScannableGallery base;
+    private final int baseSize;
+    private final BitSet removedRows;
+    private final FaceGallery added;
+
+    private final int identityCount;
+    private final int[] addedIdentities;
+    private final String[] identityNames;
+    private final String[] identityPaths;
+    private final int[] identityFaceIds;
+    private final int[] identityTemplateCounts;
+
+    /**
+     * @param removedRows     被删除的基础底库行，实例会持有一份拷贝
+     * @param added           新增的模板，精度需与基础底库一致
+     * @param representatives 代表图片被删除的身份的替代代表，按名称查找，可为空
+     */
+    public DeltaGallery(Base base, BitSet removedRows, FaceGallery added, Map<String, SimilarInfoBean> representatives) {
+        super(base.gallery.size() + added.size());
+        this.base = base.gallery;
+        this.baseSize = this.base.size();
+        this.removedRows = (BitSet) removedRows.clone();
+        this.added = added;
+
+        // 身份表：先是基础底库的全部身份，再是新增模板里的新名称
+        int baseIdentities = this.base.identityCount();
+        int capacity = baseIdentities + added.identityCount();
+        String[] names = new String[capacity];
+        String[] paths = new String[capacity];
+        int[] faceIds = new int[capacity];
+        int[] counts = new int[capacity];
+        for (int identity = 0; identity < baseIdentities; identity++) {
+            names[identity] = this.base.getIdentityName(identity);
+            paths[identity] = this.base.getIdentityPath(identity);
+            faceIds[identity] = this.base.getIdentityFaceId(identity);
+            counts[identity] = this.base.getIdentityTemplateCount(identity);
+        }
+        for (int row = this.removedRows.nextSetBit(0); row >= 0; row = this.removedRows.nextSetBit(row + 1)) {
+            counts[this.base.getRowIdentity(row)]--;
+        }
+        int identityCount = baseIdentities;
+        addedIdentities = new int[added.identityCount()];
+        Map<String, Integer> newIdentities = new HashMap<>();
+        for (int i = 0; i < added.identityCount(); i++) {
+            String name = added.getIdentityName(i);
+            int identity = base.identityOf(name);
+            if (identity < 0) {
+                Integer existing = newIdentities.get(name);
+                identity = existing != null ? existing : identityCount++;
+                newIdentities.put(name, identity);
+            }
+            if (counts[identity] == 0) {
+                // 基础底库中已没有该身份的模板，代表图片取新增模板
+                paths[identity] = added.getIdentityPath(i);
+                faceIds[identity] = added.getIdentityFaceId(i);
+            }
+            names[identity] = name;
+            counts[identity] += added.getIdentityTemplateCount(i);
+            addedIdentities[i] = identity;
+        }
+        if (representatives != null) {
+            for (int identity = 0; identity < identityCount; identity++) {
+                SimilarInfoBean representative = representatives.get(names[identity]);
+                if (representative != null) {
+                    paths[identity] = representative.getPath();
+                    faceIds[identity] = representative.getId();
+                }
+            }
+        }
+        this.identityCount = identityCount;
+        this.identityNames = Arrays.copyOf(names, identityCount);
+        this.identityPaths = Arrays.copyOf(paths, identityCount);
+        this.identityFaceIds = Arrays.copyOf(faceIds, identityCount);
+        this.identityTemplateCounts = Arrays.copyOf(counts, identityCount);
+    }
+
+    public ScannableGallery getBase() {
+        return base;
+    }
+
+    /**
+     * 叠加的增删行数，用于判断是否需要重建基础底库
+     */
+    public int deltaSize() {
+        return removedRows.cardinality() + added.size();
+    }
+
+    @Override
+    public int size() {
+        return baseSize + added.size();
+    }
+
+    @Override
+    public FaceGallery.Precision getPrecision() {
+        return base.getPrecision();
+    }
+
+    @Override
+    public int identityCount() {
+        return identityCount;
+    }
+
+    @Override
+    public int getRowFaceId(int row) {
+        return row < baseSize ? base.getRowFaceId(row) : added.getRowFaceId(row - baseSize);
+    }
+
+    @Override
+    public int getRowIdentity(int row) {
+        return row < baseSize ? base.getRowIdentity(row) : addedIdentities[added.getRowIdentity(row - baseSize)];
+    }
+
+    @Override
+    public String getIdentityName(int identity) {
+        return identityNames[identity];
+    }
+
+    @Override
+    public String getIdentityPath(int identity) {
+        return identityPaths[identity];
+    }
+
+    @Override
+    public int getIdentityFaceId(int identity) {
+        return identityFaceIds[identity];
+    }
+
+    @Override
+    public int getIdentityTemplateCount(int identity) {
+        return identityTemplateCounts[identity];
+    }
+
+    @Override
+    public void getRowVector(int row, float[] out) {
+        if (row < baseSize) {
+            base.getRowVector(row, out);
+        } else {
+            added.getRowVector(row - baseSize, out);
+        }
+    }
+
+    /**
+     * 被删除的基础底库行，返回拷贝
+     */
+    public BitSet getRemovedRows() {
+        return (BitSet) removedRows.clone();
+    }
+
+    /**
+     * 基础底库可能同时被旧的视图检索，与它共用扫描锁，避免查询预处理状态被覆盖
+     */
+    @Override
+    protected Object scanLock() {
+        return base.scanLock();
+    }
+
+    @Override
+    protected void prepareQuery(float[] unitQuery) {
+        base.prepareQuery(unitQuery);
+        added.prepareQuery(unitQuery);
+    }
+
+    @Override
+    protected void scoreRows(float[] unitQuery, float[] scores, int from, int to) {
+        int baseTo = Math.min(to, baseSize);
+        if (from < baseTo) {
+            base.scoreRows(unitQuery, scores, from, baseTo);
+            for (int row = removedRows.nextSetBit(from); row >= 0 && row < baseTo; row = removedRows.nextSetBit(row + 1)) {
+                scores[row] = 0f;
+            }
+        }
+        int addedFrom = Math.max(from, baseSize);
+        if (addedFrom < to) {
+            added.scoreRows(unitQuery, scores, baseSize, addedFrom - baseSize, to - baseSize);
+        }
+    }
+
+    @Override
+    protected boolean supportsBatchScoring() {
+        return base.supportsBatchScoring() && added.supportsBatchScoring();
+    }
+
+    @Override
+    protected void scoreRowsBatch(float[] unitQueries, int count, float[][] scores, int from, int to, float[] tile) {
+        int baseTo = Math.min(to, baseSize);
+        if (from < baseTo) {
+            base.scoreRowsBatch(unitQueries, count, scores, from, baseTo, tile);
+            for (int row = removedRows.nextSetBit(from); row >= 0 && row < baseTo; row = removedRows.nextSetBit(row + 1)) {
+                for (int q = 0; q < count; q++) {
+                    scores[q][row] = 0f;
+                }
+            }
+        }
+        int addedFrom = Math.max(from, baseSize);
+        if (addedFrom < to) {
+            added.scoreRowsBatch(unitQueries, count, scores, baseSize, addedFrom - baseSize, to - baseSize, tile);
+        }
+    }
+}
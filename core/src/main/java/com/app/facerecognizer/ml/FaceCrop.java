@@ -0,0 +1,28 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 由检测框计算送入模型的头部区域：左右各外扩固定的 50 像素，上下各外扩框高的 20%，再裁到图像范围内。
+ * 这是录入时一直使用的规则，已有的底库特征都按它提取；录入裁剪（ImageCaptureActivity.cropHeadRegion）
+ * 与识别裁剪共用这里的规则，保证两边取到的区域一致。修改规则需要重新提取全部已录入的特征
+ */
+public final class FaceCrop {
+
+    public static final int HORIZONTAL_PADDING_PX = 50;
+    public static final double VERTICAL_PADDING = 0.2;
+
+    private FaceCrop() {
+    }
+
+    /**
+     * @param out 依次写入 left, top, right, bottom
+     * @return 区域是否有效，检测框完全在图像外时为 false
+     */
+    public static boolean headRegion(int left, int top, int right, int bottom, int imageWidth, int imageHeight, int[] out) {
+        double padY = (bottom - top) * VERTICAL_PADDING;
+        out[0] = Math.max(0, left - HORIZONTAL_PADDING_PX);
+        out[1] = Math.max(0, (int) (top - padY));
+        out[2] = Math.min(imageWidth, right + HORIZONTAL_PADDING_PX);
+        out[3] = Math.min(imageHeight, (int) (bottom + padY));
+        return out[2] > out[0] && out[3] > out[1];
+    }
+}
@@ -0,0 +1,335 @@
+package com.app.facerecognizer.ml;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 堆内人脸底库：所有模板按行连续存放在一个 float[] (N×DIM) 中，构建时完成标准化，
+ * 每一行带一个 int 身份 id（同名模板共享同一个身份）。
+ * <p>
+ * 也可以选择量化存储：INT8 为每行一个缩放系数加 DIM 个 int8 编码，用整数点积打分；
+ * FP16 为半精度编码。量化后的得分是近似值，需要时由调用方用全精度特征重排。
+ */
+public class FaceGallery extends ScannableGallery {
+
+    public enum Precision {
+        FLOAT32, INT8, FP16
+    }
+
+    private final int size;
+    private final Precision precision;
+    private final float[] matrix;
+    private final byte[] int8Codes;
+    private final float[] int8Scales;
+    private final short[] fp16Codes;
+    private final int[] rowFaceIds;
+    private final int[] rowIdentities;
+
+    private final int identityCount;
+    private final String[] identityNames;
+    private final String[] identityPaths;
+    private final int[] identityFaceIds;
+    private final int[] identityTemplateCounts;
+
+    // INT8 模式下量化后的查询向量
+    private final byte[] queryCodes = new byte[DIM];
+    private float queryScale;
+
+    private FaceGallery(Builder builder, Precision precision) {
+        super(builder.size);
+        this.size = builder.size;
+        this.precision = precision;
+        if (precision == Precision.INT8) {
+            this.matrix = null;
+            this.int8Codes = new byte[size * DIM];
+            this.int8Scales = new float[size];
+            for (int row = 0; row < size; row++) {
+                int8Scales[row] = quantize(builder.matrix, row * DIM, int8Codes, row * DIM);
+            }
+            this.fp16Codes = null;
+        } else if (precision == Precision.FP16) {
+            this.matrix = null;
+            this.int8Codes = null;
+            this.int8Scales = null;
+            this.fp16Codes = new short[size * DIM];
+            for (int i = 0; i < size * DIM; i++) {
+                fp16Codes[i] = HalfFloat.fromFloat(builder.matrix[i]);
+            }
+        } else {
+            this.matrix = Arrays.copyOf(builder.matrix, size * DIM);
+            this.int8Codes = null;
+            this.int8Scales = null;
+            this.fp16Codes = null;
+        }
+        this.rowFaceIds = Arrays.copyOf(builder.rowFaceIds, size);
+        this.rowIdentities = Arrays.copyOf(builder.rowIdentities, size);
+
+        this.identityCount = builder.identityIndex.size();
+        this.identityNames = Arrays.copyOf(builder.identityNames, identityCount);
+        this.identityPaths = Arrays.copyOf(builder.identityPaths, identityCount);
+        this.identityFaceIds = Arrays.copyOf(builder.identityFaceIds, identityCount);
+        this.identityTemplateCounts = Arrays.copyOf(builder.identityTemplateCounts, identityCount);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * 特征存储占用的字节数，不含身份表
+     */
+    public long featureBytes() {
+        switch (precision) {
+            case INT8:
+                return (long) size * DIM + (long) size * Float.BYTES;
+            case FP16:
+                return (long) size * DIM * 2;
+            default:
+                return (long) size * DIM * Float.BYTES;
+        }
+    }
+
+    @Override
+    public int identityCount() {
+        return identityCount;
+    }
+
+    @Override
+    public int getRowFaceId(int row) {
+        return rowFaceIds[row];
+    }
+
+    @Override
+    public int getRowIdentity(int row) {
+        return rowIdentities[row];
+    }
+
+    @Override
+    public String getIdentityName(int identity) {
+        return identityNames[identity];
+    }
+
+    @Override
+    public String getIdentityPath(int identity) {
+        return identityPaths[identity];
+    }
+
+    @Override
+    public int getIdentityFaceId(int identity) {
+        return identityFaceIds[identity];
+    }
+
+    @Override
+    public int getIdentityTemplateCount(int identity) {
+        return identityTemplateCounts[identity];
+    }
+
+    @Override
+    public void getRowVector(int row, float[] out) {
+        int offset = row * DIM;
+        switch (precision) {
+            case INT8:
+                float scale = int8Scales[row];
+                for (int i = 0; i < DIM; i++) {
+                    out[i] = int8Codes[offset + i] * scale;
+                }
+                break;
+            case FP16:
+                for (int i = 0; i < DIM; i++) {
+                    out[i] = HalfFloat.toFloat(fp16Codes[offset + i]);
+                }
+                break;
+            default:
+                System.arraycopy(matrix, offset, out, 0, DIM);
+                break;
+        }
+    }
+
+    @Override
+    protected void prepareQuery(float[] unitQuery) {
+        if (precision == Precision.INT8) {
+            queryScale = quantize(unitQuery, 0, queryCodes, 0);
+        }
+    }
+
+    @Override
+    protected void scoreRows(float[] unitQuery, float[] scores, int from, int to) {
+        scoreRows(unitQuery, scores, 0, from, to);
+    }
+
+    /**
+     * 计算 [from, to) 行的得分，写入 scores[scoreOffset + row]，供组合底库使用
+     */
+    void scoreRows(float[] unitQuery, float[] scores, int scoreOffset, int from, int to) {
+        switch (precision) {
+            case INT8:
+                for (int row = from, offset = from * DIM; row < to; row++, offset += DIM) {
+                    float dot = int8Dot(queryCodes, int8Codes, offset) * queryScale * int8Scales[row];
+                    scores[scoreOffset + row] = VectorMath.combinedScore(dot);
+                }
+                break;
+            case FP16:
+                for (int row = from, offset = from * DIM; row < to; row++, offset += DIM) {
+                    float dot = 0f;
+                    for (int i = 0; i < DIM; i++) {
+                        dot += unitQuery[i] * HalfFloat.toFloat(fp16Codes[offset + i]);
+                    }
+                    scores[scoreOffset + row] = VectorMath.combinedScore(dot);
+                }
+                break;
+            default:
+                for (int row = from, offset = from * DIM; row < to; row++, offset += DIM) {
+                    float dot = VectorMath.dot(unitQuery, 0, matrix, offset, DIM);
+                    scores[scoreOffset + row] = VectorMath.combinedScore(dot);
+                }
+                break;
+        }
+    }
+
+    /**
+     * INT8 的查询量化状态只有一份，不能多个查询一起打分
+     */
+    @Override
+    protected boolean supportsBatchScoring() {
+        return precision != Precision.INT8;
+    }
+
+    @Override
+    protected void scoreRowsBatch(float[] unitQueries, int count, float[][] scores, int from, int to, float[] tile) {
+        scoreRowsBatch(unitQueries, count, scores, 0, from, to, tile);
+    }
+
+    /**
+     * 计算 [from, to) 行与多个查询的得分，写入 scores[q][scoreOffset + row]，供组合底库使用
+     */
+    void scoreRowsBatch(float[] unitQueries, int count, float[][] scores, int scoreOffset, int from, int to, float[] tile) {
+        if (precision == Precision.FP16) {
+            // 每次解码一个分块，解码结果供所有查询复用
+            for (int start = from; start < to; start += BlockedScorer.TILE_ROWS) {
+                int rows = Math.min(BlockedScorer.TILE_ROWS, to - start);
+                int offset = start * DIM;
+                for (int i = 0; i < rows * DIM; i++) {
+                    tile[i] = HalfFloat.toFloat(fp16Codes[offset + i]);
+                }
+                BlockedScorer.score(unitQueries, count, tile, 0, rows, scores, scoreOffset + start);
+            }
+        } else {
+            BlockedScorer.score(unitQueries, count, matrix, from, to - from, scores, scoreOffset + from);
+        }
+    }
+
+    private static int int8Dot(byte[] query, byte[] codes, int offset) {
+        int s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        for (int i = 0; i < DIM; i += 4) {
+            s0 += query[i] * codes[offset + i];
+            s1 += query[i + 1] * codes[offset + i + 1];
+            s2 += query[i + 2] * codes[offset + i + 2];
+            s3 += query[i + 3] * codes[offset + i + 3];
+        }
+        return s0 + s1 + s2 + s3;
+    }
+
+    /**
+     * 对称量化到 [-127, 127]
+     *
+     * @return 缩放系数，原值约等于 code * scale
+     */
+    private static float quantize(float[] src, int srcOffset, byte[] dst, int dstOffset) {
+        float maxAbs = 0f;
+        for (int i = 0; i < DIM; i++) {
+            maxAbs = Math.max(maxAbs, Math.abs(src[srcOffset + i]));
+        }
+        if (maxAbs == 0f) {
+            Arrays.fill(dst, dstOffset, dstOffset + DIM, (byte) 0);
+            return 0f;
+        }
+        float scale = maxAbs / 127f;
+        float inverse = 127f / maxAbs;
+        for (int i = 0; i < DIM; i++) {
+            dst[dstOffset + i] = (byte) Math.round(src[srcOffset + i] * inverse);
+        }
+        return scale;
+    }
+
+    public static class Builder {
+        private int size;
+        private float[] matrix;
+        private int[] rowFaceIds;
+        private int[] rowIdentities;
+
+        private final Map<String, Integer> identityIndex = new HashMap<>();
+        private String[] identityNames = new String[0];
+        private String[] identityPaths = new String[0];
+        private int[] identityFaceIds = new int[0];
+        private int[] identityTemplateCounts = new int[0];
+
+        public Builder() {
+            this(64);
+        }
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(1, expectedSize);
+            matrix = new float[capacity * DIM];
+            rowFaceIds = new int[capacity];
+            rowIdentities = new int[capacity];
+        }
+
+        /**
+         * 添加一条模板，特征向量在这里被标准化拷贝，原数组不会被修改
+         *
+         * @return 是否添加成功，特征为空或维度不符时忽略
+         */
+        public boolean add(int faceId, String name, String path, float[] feature) {
+            if (feature == null || feature.length != DIM) return false;
+            ensureCapacity(size + 1);
+            VectorMath.normalize(feature, 0, matrix, size * DIM, DIM);
+            rowFaceIds[size] = faceId;
+            rowIdentities[size] = identityOf(faceId, name, path);
+            size++;
+            return true;
+        }
+
+        private int identityOf(int faceId, String name, String path) {
+            Integer identity = identityIndex.get(name);
+            if (identity == null) {
+                identity = identityIndex.size();
+                identityIndex.put(name, identity);
+                if (identity == identityNames.length) {
+                    int capacity = Math.max(16, identity * 2);
+                    identityNames = Arrays.copyOf(identityNames, capacity);
+                    identityPaths = Arrays.copyOf(identityPaths, capacity);
+                    identityFaceIds = Arrays.copyOf(identityFaceIds, capacity);
+                    identityTemplateCounts = Arrays.copyOf(identityTemplateCounts, capacity);
+                }
+                identityNames[identity] = name;
+                identityPaths[identity] = path;
+                identityFaceIds[identity] = faceId;
+            }
+            identityTemplateCounts[identity]++;
+            return identity;
+        }
+
+        private void ensureCapacity(int rows) {
+            if (rows <= rowFaceIds.length) return;
+            int capacity = Math.max(rows, rowFaceIds.length * 2);
+            matrix = Arrays.copyOf(matrix, capacity * DIM);
+            rowFaceIds = Arrays.copyOf(rowFaceIds, capacity);
+            rowIdentities = Arrays.copyOf(rowIdentities, capacity);
+        }
+
+        public FaceGallery build() {
+            return build(Precision.FLOAT32);
+        }
+
+        public FaceGallery build(Precision precision) {
+            return new FaceGallery(this, precision);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 多人脸识别中一张人脸的结果：检测框（正向坐标）、跟踪 id 以及比对得到的身份
+ */
+public class FaceMatch {
+
+    public static final int NO_TRACKING_ID = -1;
+
+    private final int trackingId;
+    private final int left;
+    private final int top;
+    private final int right;
+    private final int bottom;
+    private final SimilarInfoBean result;
+    private final boolean embedded;
+
+    /**
+     * @param result   得分最高的身份，底库为空时为 null
+     * @param embedded 这一帧是否重新提取了特征，为 false 时 result 沿用轨迹上融合的结果
+     */
+    public FaceMatch(int trackingId, int left, int top, int right, int bottom, SimilarInfoBean result, boolean embedded) {
+        this.trackingId = trackingId;
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.result = result;
+        this.embedded = embedded;
+    }
+
+    public int getTrackingId() {
+        return trackingId;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+
+    public SimilarInfoBean getResult() {
+        return result;
+    }
+
+    public boolean isEmbedded() {
+        return embedded;
+    }
+
+    /**
+     * 得分超过阈值时为匹配的身份名，否则为 null
+     */
+    public String matchedName(float threshold) {
+        return result != null && result.getSimilarity() > threshold ? result.getName() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "FaceMatch{track=" + trackingId
+                + ", box=[" + left + "," + top + "," + right + "," + bottom + "]"
+                + ", name=" + (result == null ? null : result.getName())
+                + ", similarity=" + (result == null ? 0f : result.getSimilarity())
+                + ", embedded=" + embedded + "}";
+    }
+}
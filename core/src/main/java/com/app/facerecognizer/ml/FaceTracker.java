@@ -0,0 +1,142 @@
+package com.app.facerecognizer.ml;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按检测器的跟踪 id 维护每张人脸的状态。同一条轨迹只在人脸明显变大、明显变清晰或超过刷新间隔时
+ * 重新提取特征，其余帧直接跳过；轨迹上每次检索的得分被融合后再做判定，结果更稳定。
+ * <p>
+ * 融合得分为某身份在该轨迹所有检索中的得分之和除以检索次数，未排在首位的检索按 0 计，
+ * 因此身份在轨迹上反复出现才能得到高分
+ */
+public class FaceTracker {
+
+    private static final class Track {
+        float embeddedArea;
+        float embeddedSharpness;
+        long embeddedNanos;
+        long lastSeenNanos;
+        int observations;
+        final Map<String, Float> scoreSums = new HashMap<>();
+        final Map<String, SimilarInfoBean> identities = new HashMap<>();
+    }
+
+    private final Map<Integer, Track> tracks = new HashMap<>();
+    private float areaGrowthRatio = 1.3f;
+    private float sharpnessGainRatio = 1.2f;
+    private long refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(1000);
+    private long trackTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(1500);
+    private long embedCount;
+    private long skipCount;
+
+    /**
+     * @param areaGrowthRatio      人脸面积相对上次提取时增大到该倍数以上时重新提取
+     * @param sharpnessGainRatio   清晰度相对上次提取时提高到该倍数以上时重新提取
+     * @param refreshIntervalMs    距上次提取超过该时间时重新提取
+     * @param trackTimeoutMs       轨迹超过该时间未出现即被丢弃
+     */
+    public synchronized void configure(float areaGrowthRatio, float sharpnessGainRatio, long refreshIntervalMs, long trackTimeoutMs) {
+        this.areaGrowthRatio = areaGrowthRatio;
+        this.sharpnessGainRatio = sharpnessGainRatio;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMs);
+        this.trackTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(trackTimeoutMs);
+    }
+
+    /**
+     * 判断这一帧是否需要为该轨迹提取特征，需要时记录本次的面积和清晰度作为之后比较的基准
+     */
+    public synchronized boolean shouldEmbed(int trackId, float area, float sharpness, long nowNanos) {
+        evictStale(nowNanos);
+        Track track = tracks.get(trackId);
+        boolean embed;
+        if (track == null) {
+            track = new Track();
+            tracks.put(trackId, track);
+            embed = true;
+        } else {
+            embed = area >= track.embeddedArea * areaGrowthRatio
+                    || (track.embeddedSharpness > 0f && sharpness >= track.embeddedSharpness * sharpnessGainRatio)
+                    || nowNanos - track.embeddedNanos >= refreshIntervalNanos;
+        }
+        track.lastSeenNanos = nowNanos;
+        if (embed) {
+            track.embeddedArea = area;
+            track.embeddedSharpness = sharpness;
+            track.embeddedNanos = nowNanos;
+            embedCount++;
+        } else {
+            skipCount++;
+        }
+        return embed;
+    }
+
+    /**
+     * 记录一次检索的首位结果，返回融合后得分最高的身份，轨迹不存在或结果为空时返回 null
+     */
+    public synchronized SimilarInfoBean addResult(int trackId, SimilarInfoBean top) {
+        Track track = tracks.get(trackId);
+        if (track == null) return null;
+        track.observations++;
+        if (top != null) {
+            Float sum = track.scoreSums.get(top.getName());
+            track.scoreSums.put(top.getName(), (sum == null ? 0f : sum) + top.getSimilarity());
+            track.identities.put(top.getName(), top);
+        }
+        return fusedResult(track);
+    }
+
+    /**
+     * 轨迹当前融合后得分最高的身份，不计入新的检索。跳过提取的帧用它作为该人脸的结果
+     */
+    public synchronized SimilarInfoBean currentResult(int trackId) {
+        Track track = tracks.get(trackId);
+        return track != null ? fusedResult(track) : null;
+    }
+
+    private static SimilarInfoBean fusedResult(Track track) {
+        String bestName = null;
+        float bestSum = Float.NEGATIVE_INFINITY;
+        for (Map.Entry<String, Float> entry : track.scoreSums.entrySet()) {
+            if (entry.getValue() > bestSum) {
+                bestSum = entry.getValue();
+                bestName = entry.getKey();
+            }
+        }
+        if (bestName == null) return null;
+        SimilarInfoBean identity = track.identities.get(bestName);
+        return new SimilarInfoBean(identity.getId(), identity.getName(), identity.getPath(), bestSum / track.observations);
+    }
+
+    public synchronized int trackCount() {
+        return tracks.size();
+    }
+
+    public synchronized long getEmbedCount() {
+        return embedCount;
+    }
+
+    public synchronized long getSkipCount() {
+        return skipCount;
+    }
+
+    public synchronized void clear() {
+        tracks.clear();
+    }
+
+    private void evictStale(long nowNanos) {
+        Iterator<Track> iterator = tracks.values().iterator();
+        while (iterator.hasNext()) {
+            if (nowNanos - iterator.next().lastSeenNanos > trackTimeoutNanos) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "tracks " + tracks.size() + ", embedded " + embedCount + ", skipped " + skipCount;
+    }
+}
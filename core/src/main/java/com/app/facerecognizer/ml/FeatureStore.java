@@ -0,0 +1,14 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 按需读取全精度特征，用于量化底库的重排
+ */
+public interface FeatureStore {
+
+    /**
+     * 批量读取特征
+     *
+     * @return 与 faceIds 一一对应的特征，不存在的记录为 null
+     */
+    float[][] loadFeatures(int[] faceIds);
+}
@@ -0,0 +1,480 @@
+package com.app.facerecognizer.ml;
+
+import com.app.facerecognizer.metrics.PipelineMetrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 1:N 底库检索：全量扫描或 HNSW 近似检索，量化底库的重排，以及按身份聚合得分。
+ * 不依赖 Android，可以直接在 JVM 上运行和做基准测试
+ */
+public class GallerySearcher {
+
+    // 底库达到该规模时改用 HNSW 近似检索
+    public static final int ANN_MIN_GALLERY_SIZE = 20000;
+    // 近似检索时每个目标身份取回的模板候选数
+    private static final int ANN_CANDIDATES_PER_IDENTITY = 4;
+    // 量化底库中用全精度特征重新打分的模板数
+    private static final int RERANK_CANDIDATES = 32;
+    private static final int RERANK_CACHE_SIZE = 256;
+    // 质心粗排默认保留的身份数
+    public static final int DEFAULT_COARSE_CANDIDATES = 32;
+    // 检索结果缓存：条目数、有效期和复用结果允许的余弦距离
+    private static final int RESULT_CACHE_SIZE = 8;
+    private static final long RESULT_CACHE_TTL_MS = 2000;
+    private static final float RESULT_CACHE_EPSILON = 0.05f;
+    // 多查询扫描每批的查询数，每个查询需要一个底库大小的得分数组
+    private static final int MAX_BATCH_QUERIES = 16;
+
+    private volatile RecentResultCache resultCache = new RecentResultCache(RESULT_CACHE_SIZE, RESULT_CACHE_TTL_MS, RESULT_CACHE_EPSILON);
+    private final ExecutorService executorService;
+    // 查询时复用的缓冲区，避免每帧分配
+    private final float[] queryBuffer = new float[FaceGallery.DIM];
+    private float[] scoreBuffer = new float[0];
+    private float[] identitySums = new float[0];
+    private final TopKHeap topK = new TopKHeap(8);
+    private volatile ScannableGallery gallery;
+    private volatile HnswIndex annIndex;
+    private volatile CentroidIndex centroidIndex;
+    private volatile int coarseCandidates = DEFAULT_COARSE_CANDIDATES;
+    private final TopKHeap coarseIdentities = new TopKHeap(DEFAULT_COARSE_CANDIDATES);
+    private int[] selectedRows = new int[0];
+    // 多查询扫描的查询和逐行得分
+    private float[] batchQueries = new float[0];
+    private int[] batchIndices = new int[MAX_BATCH_QUERIES];
+    private float[][] batchScores = new float[MAX_BATCH_QUERIES][0];
+    // 不分块的多查询扫描用的分块缓冲区
+    private float[] batchTile = new float[0];
+    private volatile FeatureStore featureStore;
+    private volatile PipelineMetrics metrics = PipelineMetrics.global();
+    private final TopKHeap rerankRows = new TopKHeap(RERANK_CANDIDATES);
+    private final float[] rerankBuffer = new float[FaceGallery.DIM];
+    private ScannableGallery rerankGallery;
+    private final Map<Integer, float[]> rerankCache = new LinkedHashMap<Integer, float[]>(RERANK_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, float[]> eldest) {
+            return size() > RERANK_CACHE_SIZE;
+        }
+    };
+
+    public GallerySearcher() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param scanThreads 全量扫描时分块并行的线程数，为 0 时在调用线程中扫描，
+     *                    供已在外部按查询并行的批量检索使用
+     */
+    public GallerySearcher(int scanThreads) {
+        this.executorService = scanThreads > 0 ? Executors.newFixedThreadPool(scanThreads) : null;
+    }
+
+    /**
+     * 替换检索目标后清空结果缓存，进行中的检索得到的旧底库结果不会再写入缓存
+     */
+    public void setGallery(ScannableGallery gallery) {
+        this.gallery = gallery;
+        resultCache.clear();
+    }
+
+    public ScannableGallery getGallery() {
+        return gallery;
+    }
+
+    /**
+     * 量化底库检索时，得分最高的若干模板会通过 featureStore 读取全精度特征重新打分
+     */
+    public void setFeatureStore(FeatureStore featureStore) {
+        this.featureStore = featureStore;
+    }
+
+    /**
+     * 检索各阶段耗时的记录目标，默认为进程内共享的实例
+     */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 设置后全量检索先按身份质心粗排，只对候选身份的模板精确打分。
+     * 索引只在其 {@link CentroidIndex#getGallery()} 与当前底库相同时使用
+     */
+    public void setCentroidIndex(CentroidIndex centroidIndex) {
+        this.centroidIndex = centroidIndex;
+        resultCache.clear();
+    }
+
+    public CentroidIndex getCentroidIndex() {
+        return centroidIndex;
+    }
+
+    /**
+     * 质心粗排保留的身份数，越大越接近全量结果
+     */
+    public void setCoarseCandidates(int coarseCandidates) {
+        this.coarseCandidates = Math.max(1, coarseCandidates);
+        resultCache.clear();
+    }
+
+    /**
+     * 设置 HNSW 索引后 {@link #search} 走近似检索，不再扫描底库
+     */
+    public void setAnnIndex(HnswIndex annIndex) {
+        this.annIndex = annIndex;
+        resultCache.clear();
+    }
+
+    public HnswIndex getAnnIndex() {
+        return annIndex;
+    }
+
+    /**
+     * 调整检索结果缓存，cosineEpsilon 为 0 时只有几乎相同的查询才会命中
+     */
+    public void configureResultCache(int capacity, long ttlMillis, float cosineEpsilon) {
+        this.resultCache = new RecentResultCache(capacity, ttlMillis, cosineEpsilon);
+    }
+
+    public RecentResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public boolean isReady() {
+        return gallery != null || annIndex != null;
+    }
+
+    /**
+     * 1:N 检索，返回按身份平均分从高到低排列的前 K 个身份。
+     * 与最近某次查询足够接近时直接复用其结果
+     */
+    public synchronized List<SimilarInfoBean> search(float[] query, int k) {
+        if (query == null || k <= 0 || !isReady()) return Collections.emptyList();
+        // 标准化查询向量，与底库的单位向量做一次点积即可得到余弦和 L2 两项
+        VectorMath.normalize(query, 0, queryBuffer, 0, FaceGallery.DIM);
+        PipelineMetrics metrics = this.metrics;
+        metrics.increment(PipelineMetrics.Counter.SEARCHES);
+        RecentResultCache resultCache = this.resultCache;
+        // 先于读取底库和索引取得代数，期间被替换时结果不写入缓存
+        int generation = resultCache.generation();
+        List<SimilarInfoBean> result = resultCache.get(queryBuffer, k);
+        if (result != null) {
+            metrics.increment(PipelineMetrics.Counter.RESULT_CACHE_HITS);
+            return result;
+        }
+
+        HnswIndex annIndex = this.annIndex;
+        result = annIndex != null ? searchApproximate(annIndex, queryBuffer, k, metrics) : searchExhaustive(k, metrics);
+        resultCache.put(queryBuffer, k, result, generation);
+        return result;
+    }
+
+    /**
+     * 同一帧中多张人脸或批量任务的检索，第 i 个结果对应 queries[i]，为空的查询对应空列表。
+     * 整批在一次加锁内完成，所有查询都与同一个版本的底库比对。
+     * 全量扫描时未命中缓存的查询每 MAX_BATCH_QUERIES 个一起扫描（{@link ScannableGallery#scanAll}），
+     * 底库每批只读一遍；近似检索和质心粗排单次代价已很低，逐个检索
+     */
+    public synchronized List<List<SimilarInfoBean>> searchAll(float[][] queries, int count, int k) {
+        List<List<SimilarInfoBean>> results = new ArrayList<>(count);
+        RecentResultCache resultCache = this.resultCache;
+        int generation = resultCache.generation();
+        ScannableGallery gallery = this.gallery;
+        if (count < 2 || k <= 0 || annIndex != null || gallery == null || gallery.size() == 0
+                || !gallery.supportsBatchScoring() || useCoarse(gallery, centroidIndex, k)) {
+            for (int i = 0; i < count; i++) {
+                results.add(search(queries[i], k));
+            }
+            return results;
+        }
+        PipelineMetrics metrics = this.metrics;
+        if (batchQueries.length < MAX_BATCH_QUERIES * FaceGallery.DIM) {
+            batchQueries = new float[MAX_BATCH_QUERIES * FaceGallery.DIM];
+            batchTile = new float[BlockedScorer.TILE_FLOATS];
+            metrics.countAllocation(4L * (batchQueries.length + batchTile.length));
+        }
+        int pending = 0;
+        for (int i = 0; i < count; i++) {
+            results.add(Collections.<SimilarInfoBean>emptyList());
+            if (queries[i] == null) continue;
+            metrics.increment(PipelineMetrics.Counter.SEARCHES);
+            VectorMath.normalize(queries[i], 0, queryBuffer, 0, FaceGallery.DIM);
+            List<SimilarInfoBean> cached = resultCache.get(queryBuffer, k);
+            if (cached != null) {
+                metrics.increment(PipelineMetrics.Counter.RESULT_CACHE_HITS);
+                results.set(i, cached);
+                continue;
+            }
+            System.arraycopy(queryBuffer, 0, batchQueries, pending * FaceGallery.DIM, FaceGallery.DIM);
+            batchIndices[pending++] = i;
+            if (pending == MAX_BATCH_QUERIES) {
+                searchBatch(gallery, pending, k, results, resultCache, generation, metrics);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            searchBatch(gallery, pending, k, results, resultCache, generation, metrics);
+        }
+        return results;
+    }
+
+    /**
+     * 对 batchQueries 中的 count 个查询做一次多查询扫描，再逐个重排、按身份聚合，结果放入 results[batchIndices[q]]
+     */
+    private void searchBatch(ScannableGallery gallery, int count, int k, List<List<SimilarInfoBean>> results,
+                             RecentResultCache resultCache, int generation, PipelineMetrics metrics) {
+        int size = gallery.size();
+        for (int q = 0; q < count; q++) {
+            if (batchScores[q].length < size) {
+                batchScores[q] = new float[size];
+                metrics.countAllocation(4L * size);
+            }
+        }
+        // 整批扫描计为一次 SEARCH
+        long start = metrics.start(PipelineMetrics.Stage.SEARCH);
+        gallery.scanAll(batchQueries, count, batchScores, batchTile, executorService);
+        metrics.end(PipelineMetrics.Stage.SEARCH, start);
+        FeatureStore featureStore = this.featureStore;
+        boolean rerank = gallery.getPrecision() != FaceGallery.Precision.FLOAT32 && featureStore != null;
+        for (int q = 0; q < count; q++) {
+            // 重排和缓存都以 queryBuffer 为当前查询
+            System.arraycopy(batchQueries, q * FaceGallery.DIM, queryBuffer, 0, FaceGallery.DIM);
+            if (rerank) {
+                rerank(gallery, batchScores[q], null, size, featureStore, metrics);
+            }
+            start = metrics.start(PipelineMetrics.Stage.AGGREGATE);
+            rankIdentities(gallery, batchScores[q], k, metrics);
+            List<SimilarInfoBean> result = collectTopK(gallery);
+            metrics.end(PipelineMetrics.Stage.AGGREGATE, start);
+            resultCache.put(queryBuffer, k, result, generation);
+            results.set(batchIndices[q], result);
+        }
+    }
+
+    /**
+     * 把已算好的逐行得分按身份求平均，返回平均分最高的 K 个身份
+     */
+    public synchronized List<SimilarInfoBean> aggregate(ScannableGallery gallery, float[] scores, int k) {
+        PipelineMetrics metrics = this.metrics;
+        long start = metrics.start(PipelineMetrics.Stage.AGGREGATE);
+        rankIdentities(gallery, scores, k, metrics);
+        List<SimilarInfoBean> result = collectTopK(gallery);
+        metrics.end(PipelineMetrics.Stage.AGGREGATE, start);
+        return result;
+    }
+
+    private List<SimilarInfoBean> searchExhaustive(int k, PipelineMetrics metrics) {
+        ScannableGallery gallery = this.gallery;
+        if (gallery == null || gallery.size() == 0) return Collections.emptyList();
+        CentroidIndex centroidIndex = this.centroidIndex;
+        if (useCoarse(gallery, centroidIndex, k)) {
+            return searchCoarse(gallery, centroidIndex, Math.max(k, coarseCandidates), k, metrics);
+        }
+        long start = metrics.start(PipelineMetrics.Stage.SEARCH);
+        if (scoreBuffer.length < gallery.size()) {
+            scoreBuffer = new float[gallery.size()];
+            metrics.countAllocation(4L * gallery.size());
+        }
+        gallery.scan(queryBuffer, scoreBuffer, executorService);
+        FeatureStore featureStore = this.featureStore;
+        if (gallery.getPrecision() != FaceGallery.Precision.FLOAT32 && featureStore != null) {
+            rerank(gallery, scoreBuffer, null, gallery.size(), featureStore, metrics);
+        }
+        metrics.end(PipelineMetrics.Stage.SEARCH, start);
+
+        // 聚类比对
+        start = metrics.start(PipelineMetrics.Stage.AGGREGATE);
+        rankIdentities(gallery, scoreBuffer, k, metrics);
+        List<SimilarInfoBean> result = collectTopK(gallery);
+        metrics.end(PipelineMetrics.Stage.AGGREGATE, start);
+        return result;
+    }
+
+    /**
+     * 是否先用质心索引粗排。身份数不多时粗排省不了多少计算
+     */
+    private boolean useCoarse(ScannableGallery gallery, CentroidIndex centroidIndex, int k) {
+        return centroidIndex != null && centroidIndex.getGallery() == gallery
+                && gallery.identityCount() > 2 * Math.max(k, coarseCandidates);
+    }
+
+    /**
+     * 质心粗排取 candidates 个身份，只对这些身份的模板打分并求平均
+     */
+    private List<SimilarInfoBean> searchCoarse(ScannableGallery gallery, CentroidIndex index, int candidates, int k,
+                                               PipelineMetrics metrics) {
+        long start = metrics.start(PipelineMetrics.Stage.SEARCH);
+        index.topIdentities(queryBuffer, candidates, coarseIdentities);
+        int rowCount = 0;
+        for (int i = 0; i < coarseIdentities.size(); i++) {
+            int identity = coarseIdentities.idAt(i);
+            rowCount += index.rowEnd(identity) - index.rowStart(identity);
+        }
+        if (selectedRows.length < rowCount) {
+            selectedRows = new int[Math.max(rowCount, selectedRows.length * 2)];
+            metrics.countAllocation(4L * selectedRows.length);
+        }
+        if (scoreBuffer.length < gallery.size()) {
+            scoreBuffer = new float[gallery.size()];
+            metrics.countAllocation(4L * gallery.size());
+        }
+        rowCount = 0;
+        for (int i = 0; i < coarseIdentities.size(); i++) {
+            int identity = coarseIdentities.idAt(i);
+            for (int j = index.rowStart(identity); j < index.rowEnd(identity); j++) {
+                selectedRows[rowCount++] = index.rowAt(j);
+            }
+        }
+        // 升序后同一身份连续的行可以合并扫描
+        Arrays.sort(selectedRows, 0, rowCount);
+        gallery.scanRows(queryBuffer, selectedRows, rowCount, scoreBuffer);
+        FeatureStore featureStore = this.featureStore;
+        if (gallery.getPrecision() != FaceGallery.Precision.FLOAT32 && featureStore != null) {
+            rerank(gallery, scoreBuffer, selectedRows, rowCount, featureStore, metrics);
+        }
+        metrics.end(PipelineMetrics.Stage.SEARCH, start);
+
+        start = metrics.start(PipelineMetrics.Stage.AGGREGATE);
+        topK.reset(k);
+        for (int i = 0; i < coarseIdentities.size(); i++) {
+            int identity = coarseIdentities.idAt(i);
+            float sum = 0f;
+            for (int j = index.rowStart(identity); j < index.rowEnd(identity); j++) {
+                sum += scoreBuffer[index.rowAt(j)];
+            }
+            topK.offer(identity, sum / gallery.getIdentityTemplateCount(identity));
+        }
+        topK.sortDescending();
+        List<SimilarInfoBean> result = collectTopK(gallery);
+        metrics.end(PipelineMetrics.Stage.AGGREGATE, start);
+        return result;
+    }
+
+    private List<SimilarInfoBean> collectTopK(ScannableGallery gallery) {
+        List<SimilarInfoBean> result = new ArrayList<>(topK.size());
+        for (int i = 0; i < topK.size(); i++) {
+            int identity = topK.idAt(i);
+            result.add(new SimilarInfoBean(gallery.getIdentityFaceId(identity), gallery.getIdentityName(identity),
+                    gallery.getIdentityPath(identity), topK.scoreAt(i)));
+        }
+        return result;
+    }
+
+    /**
+     * 按身份累加得分并求平均，取平均分最高的 K 个身份放入 topK
+     */
+    private void rankIdentities(ScannableGallery gallery, float[] scores, int k, PipelineMetrics metrics) {
+        int identityCount = gallery.identityCount();
+        if (identitySums.length < identityCount) {
+            identitySums = new float[identityCount];
+            metrics.countAllocation(4L * identityCount);
+        }
+        Arrays.fill(identitySums, 0, identityCount, 0f);
+        for (int row = 0; row < gallery.size(); row++) {
+            identitySums[gallery.getRowIdentity(row)] += scores[row];
+        }
+
+        topK.reset(k);
+        for (int identity = 0; identity < identityCount; identity++) {
+            int templates = gallery.getIdentityTemplateCount(identity);
+            // 叠加底库中模板已全部删除的身份
+            if (templates == 0) continue;
+            topK.offer(identity, identitySums[identity] / templates);
+        }
+        topK.sortDescending();
+    }
+
+    /**
+     * 取量化得分最高的若干行，用全精度特征重新计算得分并写回 scores
+     *
+     * @param rows 参与重排的行，为 null 时为前 count 行
+     */
+    private void rerank(ScannableGallery gallery, float[] scores, int[] rows, int count, FeatureStore store,
+                        PipelineMetrics metrics) {
+        if (gallery != rerankGallery) {
+            // 底库更换后缓存中可能有已删除模板的特征
+            rerankCache.clear();
+            rerankGallery = gallery;
+        }
+        rerankRows.reset(RERANK_CANDIDATES);
+        for (int i = 0; i < count; i++) {
+            int row = rows != null ? rows[i] : i;
+            if (scores[row] > rerankRows.threshold()) {
+                rerankRows.offer(row, scores[row]);
+            }
+        }
+        count = rerankRows.size();
+        int missing = 0;
+        int[] missingIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            int faceId = gallery.getRowFaceId(rerankRows.idAt(i));
+            if (!rerankCache.containsKey(faceId)) {
+                missingIds[missing++] = faceId;
+            }
+        }
+        if (missing > 0) {
+            metrics.countAllocation(4L * missing * FaceGallery.DIM);
+            float[][] loaded = store.loadFeatures(Arrays.copyOf(missingIds, missing));
+            for (int i = 0; i < missing; i++) {
+                if (loaded[i] != null && loaded[i].length == FaceGallery.DIM) {
+                    rerankCache.put(missingIds[i], loaded[i]);
+                }
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int row = rerankRows.idAt(i);
+            float[] feature = rerankCache.get(gallery.getRowFaceId(row));
+            if (feature == null) continue;
+            VectorMath.normalize(feature, 0, rerankBuffer, 0, FaceGallery.DIM);
+            scores[row] = VectorMath.combinedScore(VectorMath.dot(queryBuffer, 0, rerankBuffer, 0, FaceGallery.DIM));
+        }
+    }
+
+    /**
+     * 近似检索：取回 k 个身份所需的候选模板，再在候选内按身份求平均分
+     */
+    private List<SimilarInfoBean> searchApproximate(HnswIndex annIndex, float[] query, int k, PipelineMetrics metrics) {
+        if (query == null || k <= 0) return Collections.emptyList();
+        long start = metrics.start(PipelineMetrics.Stage.SEARCH);
+        List<SimilarInfoBean> candidates = annIndex.search(query, k * ANN_CANDIDATES_PER_IDENTITY);
+        metrics.end(PipelineMetrics.Stage.SEARCH, start);
+        start = metrics.start(PipelineMetrics.Stage.AGGREGATE);
+        Map<String, SimilarInfoBean> bestByName = new HashMap<>();
+        Map<String, float[]> sumByName = new HashMap<>();
+        for (SimilarInfoBean candidate : candidates) {
+            float[] sum = sumByName.get(candidate.getName());
+            if (sum == null) {
+                sum = new float[2];
+                sumByName.put(candidate.getName(), sum);
+                bestByName.put(candidate.getName(), candidate);
+            }
+            sum[0] += VectorMath.combinedScore(candidate.getSimilarity());
+            sum[1]++;
+        }
+        List<SimilarInfoBean> result = new ArrayList<>(bestByName.values());
+        for (SimilarInfoBean bean : result) {
+            float[] sum = sumByName.get(bean.getName());
+            bean.setSimilarity(sum[0] / sum[1]);
+        }
+        Collections.sort(result, (a, b) -> Float.compare(b.getSimilarity(), a.getSimilarity()));
+        if (result.size() > k) {
+            result = new ArrayList<>(result.subList(0, k));
+        }
+        metrics.end(PipelineMetrics.Stage.AGGREGATE, start);
+        return result;
+    }
+
+    /**
+     * 关闭扫描线程池
+     */
+    public void close() {
+        if (executorService != null) executorService.shutdown();
+    }
+}
@@ -0,0 +1,373 @@
+package com.app.facerecognizer.ml;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 内存映射的底库快照文件，检索直接读取 {@link MappedByteBuffer}，不在堆上拷贝特征。
+ * <p>
+ * 文件格式（小端序）：
+ * <pre>
+ * [0, 64)        文件头：magic、版本、维度、行数、身份数、各段偏移、正文长度、正文 CRC32、文件头 CRC32
+ * [64, ...)      特征块：行数 × DIM 个标准化后的 float，起始位置按 64 字节对齐
+ * 行表           每行 (faceId, identity) 两个 int
+ * 身份表         faceId[I]、模板数[I]、名称偏移[I]、路径偏移[I]，随后是字符串区（int 长度 + UTF-8，-1 表示 null）
+ * </pre>
+ * 打开时只校验文件头，耗时与底库规模无关；正文校验由 {@link #verify()} 在后台完成。
+ * 映射建立后文件随即关闭，映射在实例被回收前一直有效，快照不占用文件描述符。
+ */
+public class GallerySnapshot extends ScannableGallery implements Closeable {
+
+    private static final int MAGIC = 0x4E534746; // "FGSN"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private final File file;
+    private final MappedByteBuffer mapped;
+    private final int size;
+    private final int identityCount;
+    private final long bodyLength;
+    private final int bodyCrc;
+    private final FloatBuffer vectors;
+    private final IntBuffer rows;
+    private final IntBuffer identities;
+    private final ByteBuffer strings;
+
+    private GallerySnapshot(File file, MappedByteBuffer mapped, ByteBuffer header) {
+        super(header.getInt(12));
+        this.file = file;
+        this.mapped = mapped;
+        this.size = header.getInt(12);
+        this.identityCount = header.getInt(16);
+        int vectorOffset = (int) header.getLong(24);
+        int rowTableOffset = (int) header.getLong(32);
+        int identityTableOffset = (int) header.getLong(40);
+        this.bodyLength = header.getLong(48);
+        this.bodyCrc = header.getInt(56);
+        this.vectors = slice(mapped, vectorOffset, size * DIM * Float.BYTES).asFloatBuffer();
+        this.rows = slice(mapped, rowTableOffset, size * 2 * Integer.BYTES).asIntBuffer();
+        this.identities = slice(mapped, identityTableOffset, identityCount * 4 * Integer.BYTES).asIntBuffer();
+        int stringsOffset = identityTableOffset + identityCount * 4 * Integer.BYTES;
+        this.strings = slice(mapped, stringsOffset, (int) (HEADER_SIZE + bodyLength) - stringsOffset);
+    }
+
+    /**
+     * 映射快照文件并校验文件头
+     *
+     * @throws IOException 文件不存在、格式不符或文件头校验失败
+     */
+    public static GallerySnapshot open(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Snapshot too short: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer header = slice(mapped, 0, HEADER_SIZE);
+            CRC32 crc = new CRC32();
+            crc.update(slice(mapped, 0, HEADER_SIZE - Integer.BYTES));
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != DIM
+                    || header.getInt(60) != (int) crc.getValue()
+                    || header.getLong(48) != channel.size() - HEADER_SIZE) {
+                throw new IOException("Invalid snapshot header: " + file);
+            }
+            return new GallerySnapshot(file, mapped, header);
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.position(offset);
+        duplicate.limit(offset + length);
+        return duplicate.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * 校验正文 CRC32，耗时与文件大小成正比，应在后台线程调用
+     */
+    public boolean verify() {
+        CRC32 crc = new CRC32();
+        crc.update(slice(mapped, HEADER_SIZE, (int) bodyLength));
+        return (int) crc.getValue() == bodyCrc;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public FaceGallery.Precision getPrecision() {
+        return FaceGallery.Precision.FLOAT32;
+    }
+
+    @Override
+    public int identityCount() {
+        return identityCount;
+    }
+
+    @Override
+    public int getRowFaceId(int row) {
+        return rows.get(row * 2);
+    }
+
+    @Override
+    public int getRowIdentity(int row) {
+        return rows.get(row * 2 + 1);
+    }
+
+    @Override
+    public String getIdentityName(int identity) {
+        return readString(identities.get(identityCount * 2 + identity));
+    }
+
+    @Override
+    public String getIdentityPath(int identity) {
+        return readString(identities.get(identityCount * 3 + identity));
+    }
+
+    @Override
+    public int getIdentityFaceId(int identity) {
+        return identities.get(identity);
+    }
+
+    @Override
+    public int getIdentityTemplateCount(int identity) {
+        return identities.get(identityCount + identity);
+    }
+
+    @Override
+    public void getRowVector(int row, float[] out) {
+        FloatBuffer duplicate = vectors.duplicate();
+        duplicate.position(row * DIM);
+        duplicate.get(out, 0, DIM);
+    }
+
+    private String readString(int offset) {
+        int length = strings.getInt(offset);
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        ByteBuffer duplicate = strings.duplicate();
+        duplicate.position(offset + Integer.BYTES);
+        duplicate.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void scoreRows(float[] unitQuery, float[] scores, int from, int to) {
+        FloatBuffer vectors = this.vectors;
+        for (int row = from, offset = from * DIM; row < to; row++, offset += DIM) {
+            float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+            for (int i = 0; i < DIM; i += 4) {
+                s0 += unitQuery[i] * vectors.get(offset + i);
+                s1 += unitQuery[i + 1] * vectors.get(offset + i + 1);
+                s2 += unitQuery[i + 2] * vectors.get(offset + i + 2);
+                s3 += unitQuery[i + 3] * vectors.get(offset + i + 3);
+            }
+            scores[row] = VectorMath.combinedScore((s0 + s1) + (s2 + s3));
+        }
+    }
+
+    @Override
+    protected boolean supportsBatchScoring() {
+        return true;
+    }
+
+    /**
+     * 按分块把映射的特征拷贝到堆内再打分，每块只读一次
+     */
+    @Override
+    protected void scoreRowsBatch(float[] unitQueries, int count, float[][] scores, int from, int to, float[] tile) {
+        FloatBuffer vectors = this.vectors.duplicate();
+        for (int start = from; start < to; start += BlockedScorer.TILE_ROWS) {
+            int rows = Math.min(BlockedScorer.TILE_ROWS, to - start);
+            vectors.position(start * DIM);
+            vectors.get(tile, 0, rows * DIM);
+            BlockedScorer.score(unitQueries, count, tile, 0, rows, scores, start);
+        }
+    }
+
+    /**
+     * 文件在 {@link #open} 中已经关闭，替换快照时无需释放资源，保留以兼容 Closeable 的调用方
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * 以流式方式写出快照：特征逐行写入临时文件，提交时补写行表、身份表和文件头后替换目标文件
+     */
+    public static class Writer implements Closeable {
+        private final File target;
+        private final File tmp;
+        private final RandomAccessFile randomAccessFile;
+        private final FileChannel channel;
+        private final CRC32 crc = new CRC32();
+        private final ByteBuffer rowBuffer = ByteBuffer.allocate(DIM * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private final float[] unit = new float[DIM];
+
+        private int size;
+        private int[] rowFaceIds = new int[64];
+        private int[] rowIdentities = new int[64];
+        private final Map<String, Integer> identityIndex = new HashMap<>();
+        private final List<String> identityNames = new ArrayList<>();
+        private final List<String> identityPaths = new ArrayList<>();
+        private int[] identityFaceIds = new int[16];
+        private int[] identityCounts = new int[16];
+
+        public Writer(File target) throws IOException {
+            this.target = target;
+            this.tmp = new File(target.getPath() + ".tmp");
+            this.randomAccessFile = new RandomAccessFile(tmp, "rw");
+            this.randomAccessFile.setLength(0);
+            this.channel = randomAccessFile.getChannel();
+            channel.position(HEADER_SIZE);
+        }
+
+        public boolean add(int faceId, String name, String path, float[] feature) throws IOException {
+            if (feature == null || feature.length != DIM) return false;
+            VectorMath.normalize(feature, 0, unit, 0, DIM);
+            rowBuffer.clear();
+            rowBuffer.asFloatBuffer().put(unit);
+            writeBody(rowBuffer);
+            addRow(faceId, name, path);
+            return true;
+        }
+
+        /**
+         * 追加已有快照中的全部行，特征按字节整体拷贝，不做解码
+         */
+        public void addAll(GallerySnapshot snapshot) throws IOException {
+            writeBody(slice(snapshot.mapped, HEADER_SIZE, snapshot.size * DIM * Float.BYTES));
+            for (int row = 0; row < snapshot.size; row++) {
+                int identity = snapshot.getRowIdentity(row);
+                addRow(snapshot.getRowFaceId(row), snapshot.getIdentityName(identity), snapshot.getIdentityPath(identity));
+            }
+        }
+
+        private void addRow(int faceId, String name, String path) {
+            if (size == rowFaceIds.length) {
+                rowFaceIds = Arrays.copyOf(rowFaceIds, size * 2);
+                rowIdentities = Arrays.copyOf(rowIdentities, size * 2);
+            }
+            Integer identity = identityIndex.get(name);
+            if (identity == null) {
+                identity = identityNames.size();
+                identityIndex.put(name, identity);
+                identityNames.add(name);
+                identityPaths.add(path);
+                if (identity == identityFaceIds.length) {
+                    identityFaceIds = Arrays.copyOf(identityFaceIds, identity * 2);
+                    identityCounts = Arrays.copyOf(identityCounts, identity * 2);
+                }
+                identityFaceIds[identity] = faceId;
+            }
+            identityCounts[identity]++;
+            rowFaceIds[size] = faceId;
+            rowIdentities[size] = identity;
+            size++;
+        }
+
+        private void writeBody(ByteBuffer buffer) throws IOException {
+            crc.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+
+        public void commit() throws IOException {
+            long vectorOffset = HEADER_SIZE;
+            long rowTableOffset = channel.position();
+
+            ByteBuffer table = ByteBuffer.allocate(size * 2 * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < size; row++) {
+                table.putInt(rowFaceIds[row]).putInt(rowIdentities[row]);
+            }
+            table.flip();
+            writeBody(table);
+
+            long identityTableOffset = channel.position();
+            int identityCount = identityNames.size();
+            List<byte[]> encoded = new ArrayList<>(identityCount * 2);
+            int[] nameOffsets = new int[identityCount];
+            int[] pathOffsets = new int[identityCount];
+            int stringsLength = 0;
+            for (int i = 0; i < identityCount; i++) {
+                nameOffsets[i] = stringsLength;
+                stringsLength += encode(identityNames.get(i), encoded);
+                pathOffsets[i] = stringsLength;
+                stringsLength += encode(identityPaths.get(i), encoded);
+            }
+            ByteBuffer identityTable = ByteBuffer.allocate(identityCount * 4 * Integer.BYTES + stringsLength).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < identityCount; i++) identityTable.putInt(identityFaceIds[i]);
+            for (int i = 0; i < identityCount; i++) identityTable.putInt(identityCounts[i]);
+            for (int i = 0; i < identityCount; i++) identityTable.putInt(nameOffsets[i]);
+            for (int i = 0; i < identityCount; i++) identityTable.putInt(pathOffsets[i]);
+            for (byte[] bytes : encoded) {
+                if (bytes == null) {
+                    identityTable.putInt(-1);
+                } else {
+                    identityTable.putInt(bytes.length).put(bytes);
+                }
+            }
+            identityTable.flip();
+            writeBody(identityTable);
+
+            long bodyLength = channel.position() - HEADER_SIZE;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(DIM).putInt(size).putInt(identityCount).putInt(0)
+                    .putLong(vectorOffset).putLong(rowTableOffset).putLong(identityTableOffset)
+                    .putLong(bodyLength).putInt((int) crc.getValue());
+            CRC32 headerCrc = new CRC32();
+            headerCrc.update(header.array(), 0, HEADER_SIZE - Integer.BYTES);
+            header.putInt((int) headerCrc.getValue());
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+            randomAccessFile.close();
+            if (!tmp.renameTo(target)) {
+                throw new IOException("Failed to replace snapshot " + target);
+            }
+        }
+
+        private static int encode(String value, List<byte[]> encoded) {
+            byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+        }
+
+        /**
+         * 未提交时丢弃临时文件
+         */
+        @Override
+        public void close() throws IOException {
+            if (channel.isOpen()) {
+                randomAccessFile.close();
+                tmp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,789 @@
+package com.app.facerecognizer.ml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * HNSW (Hierarchical Navigable Small World) 近似最近邻索引。
+ * <p>
+ * 节点保存标准化后的特征向量，相似度为点积。支持增量插入和墓碑删除：
+ * 被删除的节点仍参与图遍历，只是不会出现在结果中。墓碑比例过高时在后台线程重建图，
+ * 重建期间的增删照常生效并被记录，重建完成后重放到新图上再替换，调用方不会被阻塞。
+ * <p>
+ * 持久化分两部分：{@link #save} 整体写入索引文件，{@link #persist} 把之后的增删追加到日志文件，
+ * 日志较长时才整体重写。所有公开方法互斥执行。
+ */
+public class HnswIndex {
+
+    private static final int MAGIC = 0x48534E57; // "HNSW"
+    private static final int VERSION = 2;
+    // magic, version, dim, m, efConstruction, efSearch, size, entryPoint, maxLevel, journalId
+    private static final int HEADER_SIZE = 9 * Integer.BYTES + Long.BYTES;
+    // 特征块读写时每次经过缓冲区的字节数
+    private static final int IO_CHUNK_BYTES = 1 << 16;
+    // 墓碑超过该比例时重建
+    private static final float REBUILD_DELETED_RATIO = 0.3f;
+    // 日志超过该条数时整体重写索引文件，同时限制加载时需要重放的插入数
+    private static final int JOURNAL_MAX_RECORDS = 4096;
+    private static final int JOURNAL_INSERT = 1;
+    private static final int JOURNAL_DELETE = 2;
+
+    private static final ExecutorService REBUILD_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hnsw-rebuild");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final int dim;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private int efSearch = 64;
+    private final Random random = new Random(42);
+
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private float[] vectors;
+    private int[] faceIds;
+    private String[] names;
+    private String[] paths;
+    private boolean[] deleted;
+    // links[node][level] = {count, neighbor1, neighbor2, ...}
+    private int[][][] links;
+    private Map<Integer, Integer> nodeOfFaceId = new HashMap<>();
+
+    // 非 null 时表示后台正在重建，记录重建开始后的增删
+    private List<Change> rebuildChanges;
+    // clear 时递增，使进行中的重建作废
+    private int generation;
+    // 索引文件对应的日志 id、日志中已有的记录数和尚未写入的增删
+    private long journalId;
+    private int journalRecords;
+    private final List<Change> unsavedChanges = new ArrayList<>();
+    // 未与文件关联或变更过多时为 true，此时不再记录增删，下次 persist 整体重写
+    private boolean fullSaveRequired = true;
+
+    // 检索过程中复用的临时结构
+    private int[] visitMarks = new int[0];
+    private int visitEpoch;
+    private final TopKHeap layerResults = new TopKHeap(64);
+    private final CandidateQueue candidates = new CandidateQueue();
+    private int[] selectIds = new int[0];
+    private float[] selectSims = new float[0];
+    private final float[] unitBuffer;
+
+    public HnswIndex(int dim) {
+        this(dim, 16, 100);
+    }
+
+    public HnswIndex(int dim, int m, int efConstruction) {
+        this.dim = dim;
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = efConstruction;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.unitBuffer = new float[dim];
+        allocate(64);
+    }
+
+    public int dimension() {
+        return dim;
+    }
+
+    /**
+     * 未被删除的节点数
+     */
+    public synchronized int liveCount() {
+        return size - deletedCount;
+    }
+
+    public synchronized void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    public synchronized boolean contains(int faceId) {
+        return nodeOfFaceId.containsKey(faceId);
+    }
+
+    /**
+     * 插入一条模板，同一个 faceId 已存在时先删除旧节点
+     */
+    public synchronized void insert(int faceId, String name, String path, float[] feature) {
+        if (feature == null || feature.length != dim) return;
+        Integer old = nodeOfFaceId.remove(faceId);
+        if (old != null) {
+            markDeleted(old);
+        }
+        int node = appendNode(faceId, name, path, feature);
+        nodeOfFaceId.put(faceId, node);
+        link(node);
+        if (rebuildChanges != null || !fullSaveRequired) {
+            record(new Change(faceId, name, path, Arrays.copyOfRange(vectors, node * dim, (node + 1) * dim)));
+        }
+        maybeRebuild();
+    }
+
+    /**
+     * 墓碑删除
+     *
+     * @return faceId 是否存在
+     */
+    public synchronized boolean delete(int faceId) {
+        Integer node = nodeOfFaceId.remove(faceId);
+        if (node == null) return false;
+        markDeleted(node);
+        record(new Change(faceId, null, null, null));
+        maybeRebuild();
+        return true;
+    }
+
+    public synchronized void clear() {
+        size = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        nodeOfFaceId.clear();
+        allocate(64);
+        generation++;
+        rebuildChanges = null;
+        // 清空后的索引很小，直接整体重写
+        unsavedChanges.clear();
+        fullSaveRequired = true;
+    }
+
+    /**
+     * 是否有后台重建尚未完成
+     */
+    public synchronized boolean isRebuilding() {
+        return rebuildChanges != null;
+    }
+
+    private void record(Change change) {
+        if (rebuildChanges != null) {
+            rebuildChanges.add(change);
+        }
+        if (fullSaveRequired) return;
+        if (unsavedChanges.size() >= JOURNAL_MAX_RECORDS) {
+            unsavedChanges.clear();
+            fullSaveRequired = true;
+        } else {
+            unsavedChanges.add(change);
+        }
+    }
+
+    /**
+     * 近似检索与查询最相似的 k 条模板，相似度为标准化向量的点积
+     */
+    public synchronized List<SimilarInfoBean> search(float[] query, int k) {
+        if (query == null || query.length != dim || entryPoint < 0 || k <= 0) return new ArrayList<>();
+        VectorMath.normalize(query, 0, unitBuffer, 0, dim);
+        int entry = greedyDescend(unitBuffer, entryPoint, maxLevel, 0);
+        int ef = Math.max(efSearch, k);
+        searchLayer(unitBuffer, entry, ef, 0);
+
+        layerResults.sortDescending();
+        List<SimilarInfoBean> result = new ArrayList<>(Math.min(k, layerResults.size()));
+        for (int i = 0; i < layerResults.size() && result.size() < k; i++) {
+            int node = layerResults.idAt(i);
+            if (deleted[node]) continue;
+            result.add(new SimilarInfoBean(faceIds[node], names[node], paths[node], layerResults.scoreAt(i)));
+        }
+        return result;
+    }
+
+    private int appendNode(int faceId, String name, String path, float[] feature) {
+        if (size == faceIds.length) {
+            grow(size * 2);
+        }
+        int node = size++;
+        VectorMath.normalize(feature, 0, vectors, node * dim, dim);
+        faceIds[node] = faceId;
+        names[node] = name;
+        paths[node] = path;
+        deleted[node] = false;
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        return node;
+    }
+
+    private void link(int node) {
+        int level = links[node].length - 1;
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+        float[] query = unitBuffer;
+        System.arraycopy(vectors, node * dim, query, 0, dim);
+        int entry = greedyDescend(query, entryPoint, maxLevel, level);
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            searchLayer(query, entry, efConstruction, l);
+            layerResults.sortDescending();
+            int count = layerResults.size();
+            ensureSelectCapacity(count);
+            for (int i = 0; i < count; i++) {
+                selectIds[i] = layerResults.idAt(i);
+                selectSims[i] = layerResults.scoreAt(i);
+            }
+            entry = selectIds[0];
+            int capacity = l == 0 ? maxM0 : m;
+            int selected = selectNeighbors(selectIds, selectSims, count, capacity);
+            int[] own = links[node][l];
+            own[0] = selected;
+            System.arraycopy(selectIds, 0, own, 1, selected);
+            for (int i = 0; i < selected; i++) {
+                addBackLink(own[i + 1], node, l, capacity);
+            }
+        }
+        if (level > maxLevel) {
+            entryPoint = node;
+            maxLevel = level;
+        }
+    }
+
+    private void addBackLink(int neighbor, int node, int level, int capacity) {
+        int[] list = links[neighbor][level];
+        int count = list[0];
+        if (count < capacity) {
+            list[count + 1] = node;
+            list[0] = count + 1;
+            return;
+        }
+        // 邻居已满，按启发式重新挑选
+        ensureSelectCapacity(count + 1);
+        int base = neighbor * dim;
+        for (int i = 0; i < count; i++) {
+            selectIds[i] = list[i + 1];
+        }
+        selectIds[count] = node;
+        for (int i = 0; i <= count; i++) {
+            selectSims[i] = VectorMath.dot(vectors, base, vectors, selectIds[i] * dim, dim);
+        }
+        sortBySimilarity(selectIds, selectSims, count + 1);
+        int selected = selectNeighbors(selectIds, selectSims, count + 1, capacity);
+        list[0] = selected;
+        System.arraycopy(selectIds, 0, list, 1, selected);
+    }
+
+    /**
+     * 启发式邻居选择：候选按相似度降序排列，只保留比已选邻居更接近基准点的候选，
+     * 不足 capacity 时用被剔除的候选补齐。结果写回 ids/sims 的前部
+     */
+    private int selectNeighbors(int[] ids, float[] sims, int count, int capacity) {
+        if (count <= capacity) return count;
+        int selected = 0;
+        int pruned = 0;
+        int[] prunedIds = new int[count];
+        float[] prunedSims = new float[count];
+        for (int i = 0; i < count && selected < capacity; i++) {
+            int candidate = ids[i];
+            float sim = sims[i];
+            boolean keep = true;
+            for (int j = 0; j < selected; j++) {
+                if (VectorMath.dot(vectors, candidate * dim, vectors, ids[j] * dim, dim) > sim) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                ids[selected] = candidate;
+                sims[selected] = sim;
+                selected++;
+            } else {
+                prunedIds[pruned] = candidate;
+                prunedSims[pruned] = sim;
+                pruned++;
+            }
+        }
+        for (int i = 0; i < pruned && selected < capacity; i++) {
+            ids[selected] = prunedIds[i];
+            sims[selected] = prunedSims[i];
+            selected++;
+        }
+        return selected;
+    }
+
+    private int greedyDescend(float[] query, int entry, int fromLevel, int toLevel) {
+        int current = entry;
+        float currentSim = VectorMath.dot(query, 0, vectors, current * dim, dim);
+        for (int l = fromLevel; l > toLevel; l--) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                int[] list = links[current][l];
+                for (int i = 1; i <= list[0]; i++) {
+                    int neighbor = list[i];
+                    float sim = VectorMath.dot(query, 0, vectors, neighbor * dim, dim);
+                    if (sim > currentSim) {
+                        currentSim = sim;
+                        current = neighbor;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 在单层内做 beam search，结果放在 layerResults 中（未排序）
+     */
+    private void searchLayer(float[] query, int entry, int ef, int level) {
+        if (visitMarks.length < size) {
+            visitMarks = new int[faceIds.length];
+            visitEpoch = 0;
+        }
+        if (++visitEpoch == Integer.MAX_VALUE) {
+            Arrays.fill(visitMarks, 0);
+            visitEpoch = 1;
+        }
+        layerResults.reset(ef);
+        candidates.clear();
+
+        float entrySim = VectorMath.dot(query, 0, vectors, entry * dim, dim);
+        visitMarks[entry] = visitEpoch;
+        layerResults.offer(entry, entrySim);
+        candidates.push(entry, entrySim);
+        while (candidates.size() > 0) {
+            if (candidates.topSim() < layerResults.threshold()) break;
+            int current = candidates.pop();
+            int[][] nodeLinks = links[current];
+            if (level >= nodeLinks.length) continue;
+            int[] list = nodeLinks[level];
+            for (int i = 1; i <= list[0]; i++) {
+                int neighbor = list[i];
+                if (visitMarks[neighbor] == visitEpoch) continue;
+                visitMarks[neighbor] = visitEpoch;
+                float sim = VectorMath.dot(query, 0, vectors, neighbor * dim, dim);
+                if (sim > layerResults.threshold()) {
+                    candidates.push(neighbor, sim);
+                    layerResults.offer(neighbor, sim);
+                }
+            }
+        }
+    }
+
+    private void markDeleted(int node) {
+        if (!deleted[node]) {
+            deleted[node] = true;
+            deletedCount++;
+        }
+    }
+
+    /**
+     * 墓碑过多时在后台重建：锁内只拷贝存活节点，建图在重建线程中完成，
+     * 期间的增删记录在 rebuildChanges 中，替换前重放到新图上
+     */
+    private void maybeRebuild() {
+        if (rebuildChanges != null || deletedCount <= size * REBUILD_DELETED_RATIO) return;
+        int live = size - deletedCount;
+        float[] liveVectors = new float[live * dim];
+        int[] liveFaceIds = new int[live];
+        String[] liveNames = new String[live];
+        String[] livePaths = new String[live];
+        int count = 0;
+        for (int node = 0; node < size; node++) {
+            if (deleted[node]) continue;
+            System.arraycopy(vectors, node * dim, liveVectors, count * dim, dim);
+            liveFaceIds[count] = faceIds[node];
+            liveNames[count] = names[node];
+            livePaths[count] = paths[node];
+            count++;
+        }
+        rebuildChanges = new ArrayList<>();
+        int expectedGeneration = generation;
+        REBUILD_EXECUTOR.execute(() -> {
+            HnswIndex rebuilt = null;
+            try {
+                rebuilt = new HnswIndex(dim, m, efConstruction);
+                float[] feature = new float[dim];
+                for (int i = 0; i < liveFaceIds.length; i++) {
+                    System.arraycopy(liveVectors, i * dim, feature, 0, dim);
+                    rebuilt.insert(liveFaceIds[i], liveNames[i], livePaths[i], feature);
+                }
+            } finally {
+                replaceWith(rebuilt, expectedGeneration);
+            }
+        });
+    }
+
+    /**
+     * 重放重建期间的增删后换上新图。重建失败（rebuilt 为 null）或期间被 clear 时丢弃结果
+     */
+    private synchronized void replaceWith(HnswIndex rebuilt, int expectedGeneration) {
+        List<Change> changes = rebuildChanges;
+        if (generation != expectedGeneration) return;
+        rebuildChanges = null;
+        if (rebuilt == null || changes == null) return;
+        for (Change change : changes) {
+            if (change.vector != null) {
+                rebuilt.insert(change.faceId, change.name, change.path, change.vector);
+            } else {
+                rebuilt.delete(change.faceId);
+            }
+        }
+        size = rebuilt.size;
+        deletedCount = rebuilt.deletedCount;
+        entryPoint = rebuilt.entryPoint;
+        maxLevel = rebuilt.maxLevel;
+        vectors = rebuilt.vectors;
+        faceIds = rebuilt.faceIds;
+        names = rebuilt.names;
+        paths = rebuilt.paths;
+        deleted = rebuilt.deleted;
+        links = rebuilt.links;
+        nodeOfFaceId = rebuilt.nodeOfFaceId;
+    }
+
+    private void allocate(int capacity) {
+        vectors = new float[capacity * dim];
+        faceIds = new int[capacity];
+        names = new String[capacity];
+        paths = new String[capacity];
+        deleted = new boolean[capacity];
+        links = new int[capacity][][];
+    }
+
+    private void grow(int capacity) {
+        vectors = Arrays.copyOf(vectors, capacity * dim);
+        faceIds = Arrays.copyOf(faceIds, capacity);
+        names = Arrays.copyOf(names, capacity);
+        paths = Arrays.copyOf(paths, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    private void ensureSelectCapacity(int count) {
+        if (selectIds.length < count) {
+            selectIds = new int[count];
+            selectSims = new float[count];
+        }
+    }
+
+    // 候选数量很小，插入排序即可
+    private static void sortBySimilarity(int[] ids, float[] sims, int count) {
+        for (int i = 1; i < count; i++) {
+            int id = ids[i];
+            float sim = sims[i];
+            int j = i - 1;
+            while (j >= 0 && sims[j] < sim) {
+                ids[j + 1] = ids[j];
+                sims[j + 1] = sims[j];
+                j--;
+            }
+            ids[j + 1] = id;
+            sims[j + 1] = sim;
+        }
+    }
+
+    /**
+     * 整体写入索引文件并删除日志。先写临时文件再替换，避免写入中断导致索引文件损坏
+     */
+    public synchronized void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        long newJournalId = System.nanoTime() ^ random.nextLong();
+        try (FileOutputStream stream = new FileOutputStream(tmp)) {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dim).putInt(m).putInt(efConstruction).putInt(efSearch)
+                    .putInt(size).putInt(entryPoint).putInt(maxLevel).putLong(newJournalId);
+            header.flip();
+            writeFully(channel, header);
+            // 特征按块整体写入，占文件的绝大部分
+            ByteBuffer chunk = ByteBuffer.allocate(IO_CHUNK_BYTES);
+            for (int offset = 0, total = size * dim; offset < total; ) {
+                int count = Math.min(total - offset, IO_CHUNK_BYTES / Float.BYTES);
+                chunk.clear();
+                chunk.asFloatBuffer().put(vectors, offset, count);
+                chunk.limit(count * Float.BYTES);
+                writeFully(channel, chunk);
+                offset += count;
+            }
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            for (int node = 0; node < size; node++) {
+                out.writeInt(faceIds[node]);
+                writeString(out, names[node]);
+                writeString(out, paths[node]);
+                out.writeBoolean(deleted[node]);
+                int[][] nodeLinks = links[node];
+                out.writeInt(nodeLinks.length);
+                for (int[] list : nodeLinks) {
+                    out.writeInt(list[0]);
+                    for (int i = 1; i <= list[0]; i++) {
+                        out.writeInt(list[i]);
+                    }
+                }
+            }
+            out.flush();
+        }
+        // 先删日志再替换：中途中断时最多得到缺少日志的旧文件，条数对不上会由数据库重建
+        File journal = journalFile(file);
+        if (journal.exists() && !journal.delete()) {
+            throw new IOException("Failed to delete index journal " + journal);
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace index file " + file);
+        }
+        journalId = newJournalId;
+        journalRecords = 0;
+        unsavedChanges.clear();
+        fullSaveRequired = false;
+    }
+
+    /**
+     * 写入上次保存以来的增删：变更不多时追加到日志文件（索引文件名加 .log），
+     * 否则调用 {@link #save} 整体重写。没有变更时不做任何事
+     */
+    public synchronized void persist(File file) throws IOException {
+        if (fullSaveRequired || !file.exists() || journalRecords + unsavedChanges.size() > JOURNAL_MAX_RECORDS) {
+            save(file);
+            return;
+        }
+        if (unsavedChanges.isEmpty()) return;
+        File journal = journalFile(file);
+        boolean created = !journal.exists() || journal.length() == 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journal, true), 1 << 16))) {
+            if (created) {
+                out.writeLong(journalId);
+            }
+            ByteBuffer vectorBytes = ByteBuffer.allocate(dim * Float.BYTES);
+            for (Change change : unsavedChanges) {
+                out.writeByte(change.vector != null ? JOURNAL_INSERT : JOURNAL_DELETE);
+                out.writeInt(change.faceId);
+                if (change.vector != null) {
+                    writeString(out, change.name);
+                    writeString(out, change.path);
+                    vectorBytes.clear();
+                    vectorBytes.asFloatBuffer().put(change.vector);
+                    out.write(vectorBytes.array());
+                }
+            }
+        }
+        journalRecords += unsavedChanges.size();
+        unsavedChanges.clear();
+    }
+
+    /**
+     * 读取索引文件并重放其日志
+     */
+    public static HnswIndex load(File file) throws IOException {
+        HnswIndex index;
+        try (FileInputStream stream = new FileInputStream(file)) {
+            FileChannel channel = stream.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported index file " + file);
+            }
+            int dim = header.getInt();
+            int m = header.getInt();
+            int efConstruction = header.getInt();
+            index = new HnswIndex(dim, m, efConstruction);
+            index.efSearch = header.getInt();
+            int size = header.getInt();
+            index.entryPoint = header.getInt();
+            index.maxLevel = header.getInt();
+            index.journalId = header.getLong();
+            if (size < 0 || channel.size() < HEADER_SIZE + (long) size * dim * Float.BYTES) {
+                throw new IOException("Truncated index file " + file);
+            }
+            index.allocate(Math.max(64, size));
+            ByteBuffer chunk = ByteBuffer.allocate(IO_CHUNK_BYTES);
+            for (int offset = 0, total = size * dim; offset < total; ) {
+                int count = Math.min(total - offset, IO_CHUNK_BYTES / Float.BYTES);
+                chunk.clear();
+                chunk.limit(count * Float.BYTES);
+                readFully(channel, chunk);
+                chunk.flip();
+                chunk.asFloatBuffer().get(index.vectors, offset, count);
+                offset += count;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            for (int node = 0; node < size; node++) {
+                index.faceIds[node] = in.readInt();
+                index.names[node] = readString(in);
+                index.paths[node] = readString(in);
+                index.deleted[node] = in.readBoolean();
+                int levels = in.readInt();
+                index.links[node] = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int[] list = new int[(l == 0 ? index.maxM0 : m) + 1];
+                    list[0] = in.readInt();
+                    for (int i = 1; i <= list[0]; i++) {
+                        list[i] = in.readInt();
+                    }
+                    index.links[node][l] = list;
+                }
+                if (index.deleted[node]) {
+                    index.deletedCount++;
+                } else {
+                    index.nodeOfFaceId.put(index.faceIds[node], node);
+                }
+            }
+            index.size = size;
+        }
+        synchronized (index) {
+            index.replayJournal(journalFile(file));
+            index.fullSaveRequired = false;
+        }
+        return index;
+    }
+
+    /**
+     * 重放日志中的增删。日志属于其他版本的索引文件时忽略，末尾写入中断的记录被丢弃
+     */
+    private void replayJournal(File journal) throws IOException {
+        if (!journal.isFile()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(journal), 1 << 16))) {
+            if (in.readLong() != journalId) return;
+            byte[] vectorBytes = new byte[dim * Float.BYTES];
+            float[] feature = new float[dim];
+            int type;
+            while ((type = in.read()) >= 0) {
+                int faceId = in.readInt();
+                if (type == JOURNAL_INSERT) {
+                    String name = readString(in);
+                    String path = readString(in);
+                    in.readFully(vectorBytes);
+                    ByteBuffer.wrap(vectorBytes).asFloatBuffer().get(feature);
+                    insert(faceId, name, path, feature);
+                } else if (type == JOURNAL_DELETE) {
+                    delete(faceId);
+                } else {
+                    throw new IOException("Corrupt index journal " + journal);
+                }
+                journalRecords++;
+            }
+        } catch (EOFException e) {
+            // 最后一条记录没有写完，之前的记录仍然有效
+        }
+    }
+
+    private static File journalFile(File file) {
+        return new File(file.getPath() + ".log");
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) throw new EOFException();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) out.writeUTF(value);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * 一次增删，vector 为 null 表示删除
+     */
+    private static final class Change {
+        final int faceId;
+        final String name;
+        final String path;
+        final float[] vector;
+
+        Change(int faceId, String name, String path, float[] vector) {
+            this.faceId = faceId;
+            this.name = name;
+            this.path = path;
+            this.vector = vector;
+        }
+    }
+
+    /**
+     * 按相似度出队的最大堆
+     */
+    private static final class CandidateQueue {
+        private int[] ids = new int[64];
+        private float[] sims = new float[64];
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        float topSim() {
+            return sims[0];
+        }
+
+        void push(int id, float sim) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                sims = Arrays.copyOf(sims, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (sims[parent] >= sim) break;
+                ids[i] = ids[parent];
+                sims[i] = sims[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            sims[i] = sim;
+        }
+
+        int pop() {
+            int top = ids[0];
+            int lastId = ids[--size];
+            float lastSim = sims[size];
+            int i = 0;
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && sims[right] > sims[child]) child = right;
+                if (lastSim >= sims[child]) break;
+                ids[i] = ids[child];
+                sims[i] = sims[child];
+                i = child;
+            }
+            if (size > 0) {
+                ids[i] = lastId;
+                sims[i] = lastSim;
+            }
+            return top;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 模型输入预处理：ARGB 像素转换为 [0, 1] 区间的 RGB float
+ */
+public final class ImagePreprocessor {
+
+    private static final float INV_255 = 1f / 255f;
+
+    private ImagePreprocessor() {
+    }
+
+    /**
+     * 将 count 个 ARGB 像素按 RGB 交错顺序写入 out，out 长度至少为 count * 3
+     */
+    public static void argbToRgbFloats(int[] pixels, int count, float[] out) {
+        for (int i = 0, j = 0; i < count; i++, j += 3) {
+            int pixelValue = pixels[i];
+            out[j] = ((pixelValue >> 16) & 0xFF) * INV_255;
+            out[j + 1] = ((pixelValue >> 8) & 0xFF) * INV_255;
+            out[j + 2] = (pixelValue & 0xFF) * INV_255;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 推理后端配置：CPU（线程数、是否启用 XNNPACK）、NNAPI 或 GPU 委托。
+ * 可编码为短字符串持久化，如 "CPU:4:xnnpack"、"NNAPI"、"GPU"
+ */
+public final class InferenceConfig {
+
+    public enum Backend {
+        CPU, NNAPI, GPU
+    }
+
+    private final Backend backend;
+    private final int numThreads;
+    private final boolean useXnnpack;
+
+    private InferenceConfig(Backend backend, int numThreads, boolean useXnnpack) {
+        this.backend = backend;
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+    }
+
+    /**
+     * @param numThreads 不大于 0 时由解释器决定
+     */
+    public static InferenceConfig cpu(int numThreads, boolean useXnnpack) {
+        return new InferenceConfig(Backend.CPU, Math.max(0, numThreads), useXnnpack);
+    }
+
+    public static InferenceConfig nnapi() {
+        return new InferenceConfig(Backend.NNAPI, 0, false);
+    }
+
+    public static InferenceConfig gpu() {
+        return new InferenceConfig(Backend.GPU, 0, false);
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean isUseXnnpack() {
+        return useXnnpack;
+    }
+
+    public String encode() {
+        if (backend != Backend.CPU) return backend.name();
+        return backend.name() + ":" + numThreads + ":" + (useXnnpack ? "xnnpack" : "plain");
+    }
+
+    /**
+     * 解析 {@link #encode} 的结果，格式不对时返回 null
+     */
+    public static InferenceConfig parse(String value) {
+        if (value == null) return null;
+        String[] parts = value.split(":");
+        try {
+            Backend backend = Backend.valueOf(parts[0]);
+            if (backend == Backend.NNAPI) return nnapi();
+            if (backend == Backend.GPU) return gpu();
+            if (parts.length != 3) return null;
+            return cpu(Integer.parseInt(parts[1]), "xnnpack".equals(parts[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof InferenceConfig)) return false;
+        InferenceConfig other = (InferenceConfig) o;
+        return backend == other.backend && numThreads == other.numThreads && useXnnpack == other.useXnnpack;
+    }
+
+    @Override
+    public int hashCode() {
+        return (backend.hashCode() * 31 + numThreads) * 31 + (useXnnpack ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
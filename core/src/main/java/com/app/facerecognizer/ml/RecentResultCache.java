@@ -0,0 +1,110 @@
+package com.app.facerecognizer.ml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 最近检索结果缓存，按查询向量的接近程度命中：新查询与某条缓存查询的余弦相似度不低于 1 - epsilon
+ * 且未过期时直接复用其结果，跳过底库检索。同一个人连续站在镜头前时只需检索一次。
+ * <p>
+ * 条目数有上限，超出时淘汰最久未使用的，超过 TTL 的条目不再命中。查询向量需已标准化。
+ * <p>
+ * 每次 {@link #clear} 递增代数。检索前取得 {@link #generation}，写入时带回，
+ * 期间底库被替换过的结果不会写入缓存
+ */
+public class RecentResultCache {
+
+    private static final class Entry {
+        final float[] query = new float[FaceGallery.DIM];
+        int k;
+        List<SimilarInfoBean> result;
+        long timeNanos;
+    }
+
+    private final float minSimilarity;
+    private final long ttlNanos;
+    // 按最近使用排列，下标 0 最新
+    private final List<Entry> entries;
+    private final int capacity;
+    private long hits;
+    private long misses;
+    private int generation;
+
+    public RecentResultCache(int capacity, long ttlMillis, float cosineEpsilon) {
+        this.capacity = Math.max(1, capacity);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.minSimilarity = 1f - cosineEpsilon;
+        this.entries = new ArrayList<>(this.capacity);
+    }
+
+    /**
+     * 查找可复用的结果，没有时返回 null
+     */
+    public synchronized List<SimilarInfoBean> get(float[] unitQuery, int k) {
+        long now = System.nanoTime();
+        int best = -1;
+        float bestSimilarity = minSimilarity;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            if (entry.k < k || now - entry.timeNanos > ttlNanos) continue;
+            float similarity = VectorMath.dot(unitQuery, 0, entry.query, 0, FaceGallery.DIM);
+            if (similarity >= bestSimilarity) {
+                bestSimilarity = similarity;
+                best = i;
+            }
+        }
+        if (best < 0) {
+            misses++;
+            return null;
+        }
+        hits++;
+        Entry entry = entries.remove(best);
+        entries.add(0, entry);
+        List<SimilarInfoBean> result = entry.result;
+        return new ArrayList<>(result.size() > k ? result.subList(0, k) : result);
+    }
+
+    /**
+     * 当前代数，检索开始前、读取底库之前取得
+     */
+    public synchronized int generation() {
+        return generation;
+    }
+
+    /**
+     * @param generation 检索开始时的 {@link #generation}，之后缓存被清空过时丢弃该结果
+     */
+    public synchronized void put(float[] unitQuery, int k, List<SimilarInfoBean> result, int generation) {
+        if (generation != this.generation) return;
+        Entry entry;
+        if (entries.size() < capacity) {
+            entry = new Entry();
+        } else {
+            // 复用最久未使用的条目
+            entry = entries.remove(entries.size() - 1);
+        }
+        System.arraycopy(unitQuery, 0, entry.query, 0, FaceGallery.DIM);
+        entry.k = k;
+        entry.result = Collections.unmodifiableList(new ArrayList<>(result));
+        entry.timeNanos = System.nanoTime();
+        entries.add(0, entry);
+    }
+
+    /**
+     * 底库变化后调用，之前的结果全部失效
+     */
+    public synchronized void clear() {
+        entries.clear();
+        generation++;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+}
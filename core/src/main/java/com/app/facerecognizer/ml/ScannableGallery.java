@@ -0,0 +1,259 @@
+package com.app.facerecognizer.ml;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 可被 {@link FaceVerifier} 检索的底库：按行存放模板，每行带一个 int 身份 id，
+ * 另有一张身份表（名称、代表图片、模板数）。
+ * <p>
+ * 检索时按行块并行扫描，块任务在构建时预先创建，单次查询不再产生逐条目的对象。
+ * 持有同一个 {@link #scanLock} 的 {@link #scan} 调用会串行执行。
+ * 多个查询可通过 {@link #scanAll} 一起扫描，支持的底库只读一遍特征数据，
+ * 不分块的多查询扫描不持锁，可由多个线程并发调用。
+ */
+public abstract class ScannableGallery {
+
+    public static final int DIM = 192;
+    // 每个并行块的最少行数，底库较小时直接单线程扫描
+    private static final int MIN_CHUNK_ROWS = 512;
+
+    private final ScanTask[] scanTasks;
+    private final AtomicInteger pendingChunks = new AtomicInteger();
+    // 块任务抛出的第一个异常，由等待的线程重新抛出
+    private final AtomicReference<Throwable> chunkFailure = new AtomicReference<>();
+    private volatile Thread scanWaiter;
+    private float[] scanQuery;
+    private float[] scanScores;
+    // 多查询扫描时的查询和得分，为 null 时为单查询扫描
+    private int scanQueryCount;
+    private float[][] scanBatchScores;
+
+    protected ScannableGallery(int size) {
+        int chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), size / MIN_CHUNK_ROWS));
+        this.scanTasks = new ScanTask[chunks];
+        int rowsPerChunk = (size + chunks - 1) / chunks;
+        for (int i = 0; i < chunks; i++) {
+            int from = Math.min(size, i * rowsPerChunk);
+            scanTasks[i] = new ScanTask(from, Math.min(size, from + rowsPerChunk));
+        }
+    }
+
+    public abstract int size();
+
+    public abstract FaceGallery.Precision getPrecision();
+
+    public abstract int identityCount();
+
+    public abstract int getRowFaceId(int row);
+
+    public abstract int getRowIdentity(int row);
+
+    public abstract String getIdentityName(int identity);
+
+    public abstract String getIdentityPath(int identity);
+
+    public abstract int getIdentityFaceId(int identity);
+
+    public abstract int getIdentityTemplateCount(int identity);
+
+    /**
+     * 把第 row 行的单位向量写入 out[0, DIM)，量化底库写入解码后的近似值
+     */
+    public abstract void getRowVector(int row, float[] out);
+
+    /**
+     * 每次扫描前调用一次，用于对查询向量做预处理（如量化）
+     */
+    protected void prepareQuery(float[] unitQuery) {
+    }
+
+    /**
+     * 计算 [from, to) 行的得分
+     */
+    protected abstract void scoreRows(float[] unitQuery, float[] scores, int from, int to);
+
+    /**
+     * 是否支持 {@link #scoreRowsBatch}。查询需要逐个预处理（如 INT8 量化）的底库返回 false，
+     * {@link #scanAll} 时逐个查询扫描
+     */
+    protected boolean supportsBatchScoring() {
+        return false;
+    }
+
+    /**
+     * 计算 [from, to) 行与多个查询的得分，第 q 个查询写入 scores[q][row]
+     *
+     * @param unitQueries count×DIM 连续存放的单位查询向量
+     * @param tile        长度为 {@link BlockedScorer#TILE_FLOATS} 的临时缓冲区，由调用方持有并复用，
+     *                    需要先解码或拷贝特征的底库按分块写入
+     */
+    protected void scoreRowsBatch(float[] unitQueries, int count, float[][] scores, int from, int to, float[] tile) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 扫描时持有的锁。共享查询预处理状态的多个底库实例需要返回同一个对象
+     */
+    protected Object scanLock() {
+        return this;
+    }
+
+    /**
+     * 计算单位查询向量与每一行的加权相似度，结果写入 scores[0, size)
+     *
+     * @param unitQuery 已标准化的查询向量
+     * @param executor  并行块的执行器，底库只有一个块时不会使用
+     */
+    public void scan(float[] unitQuery, float[] scores, Executor executor) {
+        synchronized (scanLock()) {
+            int size = size();
+            if (size == 0) return;
+            prepareQuery(unitQuery);
+            int chunks = scanTasks.length;
+            if (chunks == 1 || executor == null) {
+                scoreRows(unitQuery, scores, 0, size);
+                return;
+            }
+            scanQuery = unitQuery;
+            scanScores = scores;
+            try {
+                runChunks(executor);
+            } finally {
+                scanQuery = null;
+                scanScores = null;
+            }
+        }
+    }
+
+    /**
+     * 多个查询一起扫描，第 q 个查询的得分写入 scores[q][0, size)。
+     * 支持多查询打分的底库每个行块只读一次，供所有查询复用，其余底库逐个查询扫描
+     *
+     * @param unitQueries count×DIM 连续存放的单位查询向量
+     * @param tile        长度为 {@link BlockedScorer#TILE_FLOATS} 的临时缓冲区，不分块扫描时使用，
+     *                    并发扫描的线程各自持有一个；分块扫描时每个块使用自己的缓冲区
+     */
+    public void scanAll(float[] unitQueries, int count, float[][] scores, float[] tile, Executor executor) {
+        int size = size();
+        if (size == 0 || count == 0) return;
+        if (supportsBatchScoring() && (scanTasks.length == 1 || executor == null)) {
+            // 多查询打分只用调用方的状态，不分块时无需持锁，多个线程可以同时扫描同一个底库
+            scoreRowsBatch(unitQueries, count, scores, 0, size, tile);
+            return;
+        }
+        synchronized (scanLock()) {
+            if (!supportsBatchScoring()) {
+                float[] query = new float[DIM];
+                for (int q = 0; q < count; q++) {
+                    System.arraycopy(unitQueries, q * DIM, query, 0, DIM);
+                    scan(query, scores[q], executor);
+                }
+                return;
+            }
+            scanQuery = unitQueries;
+            scanQueryCount = count;
+            scanBatchScores = scores;
+            try {
+                runChunks(executor);
+            } finally {
+                scanQuery = null;
+                scanBatchScores = null;
+            }
+        }
+    }
+
+    /**
+     * 把第一个块之外的块交给 executor，当前线程计算第一个块后等待全部完成。
+     * 任一块失败或 executor 拒绝任务（如检索器已关闭）时，等已提交的块结束后抛出第一个异常，
+     * 不会返回只算了一部分的得分
+     */
+    private void runChunks(Executor executor) {
+        int chunks = scanTasks.length;
+        scanWaiter = Thread.currentThread();
+        chunkFailure.set(null);
+        pendingChunks.set(chunks - 1);
+        int submitted = 1;
+        Throwable failure = null;
+        try {
+            for (; submitted < chunks; submitted++) {
+                executor.execute(scanTasks[submitted]);
+            }
+            scanTasks[0].score();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        // 未提交的块不会再计数
+        if (submitted < chunks) {
+            pendingChunks.addAndGet(submitted - chunks);
+        }
+        while (pendingChunks.get() > 0) {
+            LockSupport.park(this);
+        }
+        scanWaiter = null;
+        if (failure == null) {
+            failure = chunkFailure.getAndSet(null);
+        }
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw (RuntimeException) failure;
+    }
+
+    /**
+     * 只计算指定行的得分，写入 scores[row]，其余位置不变。rows 按升序排列时连续的行合并计算
+     *
+     * @param rows  行号，使用前 count 个
+     */
+    public void scanRows(float[] unitQuery, int[] rows, int count, float[] scores) {
+        synchronized (scanLock()) {
+            if (count == 0) return;
+            prepareQuery(unitQuery);
+            int i = 0;
+            while (i < count) {
+                int from = rows[i];
+                int to = from + 1;
+                while (++i < count && rows[i] == to) {
+                    to++;
+                }
+                scoreRows(unitQuery, scores, from, to);
+            }
+        }
+    }
+
+    private final class ScanTask implements Runnable {
+        final int from;
+        final int to;
+        // 多查询扫描的分块缓冲区，第一次使用时创建，之后在锁内复用
+        private float[] tile;
+
+        ScanTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        void score() {
+            if (scanBatchScores != null) {
+                if (tile == null) {
+                    tile = new float[BlockedScorer.TILE_FLOATS];
+                }
+                scoreRowsBatch(scanQuery, scanQueryCount, scanBatchScores, from, to, tile);
+            } else {
+                scoreRows(scanQuery, scanScores, from, to);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                score();
+            } catch (RuntimeException | Error e) {
+                chunkFailure.compareAndSet(null, e);
+            } finally {
+                if (pendingChunks.decrementAndGet() == 0) {
+                    LockSupport.unpark(scanWaiter);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.app.facerecognizer.ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 由若干个 {@link FaceGallery} 分段依次拼接而成的底库，用于分页流式加载：
+ * 每读完一页就追加一个分段并发布新的实例，已加载的部分可以立即参与检索。
+ * 同名模板即使分布在不同分段中也归为同一个身份。
+ * <p>
+ * 实例不可变，{@link #append} 返回新的实例，新旧实例共享分段和扫描锁
+ */
+public class SegmentedGallery extends ScannableGallery {
+
+    private final FaceGallery.Precision precision;
+    private final Object scanLock;
+    private final List<FaceGallery> segments;
+    // segmentStarts[i] 为第 i 个分段的起始行，最后一项为总行数
+    private final int[] segmentStarts;
+    // 每个分段内的身份 id 到全局身份 id 的映射
+    private final int[][] segmentIdentities;
+    private final int size;
+    private final int[] rowFaceIds;
+    private final int[] rowIdentities;
+
+    private final Map<String, Integer> identityByName;
+    private final int identityCount;
+    private final String[] identityNames;
+    private final String[] identityPaths;
+    private final int[] identityFaceIds;
+    private final int[] identityTemplateCounts;
+
+    /**
+     * 空底库，之后通过 {@link #append} 逐段追加
+     */
+    public static SegmentedGallery empty(FaceGallery.Precision precision) {
+        return new SegmentedGallery(precision, new Object(), Collections.<FaceGallery>emptyList(), new int[]{0},
+                new int[0][], new int[0], new int[0], new HashMap<String, Integer>(), 0,
+                new String[0], new String[0], new int[0], new int[0]);
+    }
+
+    private SegmentedGallery(FaceGallery.Precision precision, Object scanLock, List<FaceGallery> segments,
+                             int[] segmentStarts, int[][] segmentIdentities, int[] rowFaceIds, int[] rowIdentities,
+                             Map<String, Integer> identityByName, int identityCount, String[] identityNames,
+                             String[] identityPaths, int[] identityFaceIds, int[] identityTemplateCounts) {
+        super(rowFaceIds.length);
+        this.precision = precision;
+        this.scanLock = scanLock;
+        this.segments = segments;
+        this.segmentStarts = segmentStarts;
+        this.segmentIdentities = segmentIdentities;
+        this.size = rowFaceIds.length;
+        this.rowFaceIds = rowFaceIds;
+        this.rowIdentities = rowIdentities;
+        this.identityByName = identityByName;
+        this.identityCount = identityCount;
+        this.identityNames = identityNames;
+        this.identityPaths = identityPaths;
+        this.identityFaceIds = identityFaceIds;
+        this.identityTemplateCounts = identityTemplateCounts;
+    }
+
+    /**
+     * 追加一个分段，返回包含它的新底库，当前实例不变
+     *
+     * @param segment 精度需与本底库一致
+     */
+    public SegmentedGallery append(FaceGallery segment) {
+        if (segment.getPrecision() != precision) {
+            throw new IllegalArgumentException("Segment precision " + segment.getPrecision() + " != " + precision);
+        }
+        int segmentCount = segments.size();
+        List<FaceGallery> newSegments = new ArrayList<>(segmentCount + 1);
+        newSegments.addAll(segments);
+        newSegments.add(segment);
+        int[] newStarts = Arrays.copyOf(segmentStarts, segmentCount + 2);
+        newStarts[segmentCount + 1] = size + segment.size();
+
+        // 合并身份表：已有名称沿用原来的身份和代表图片，只累加模板数
+        Map<String, Integer> newIdentityByName = new HashMap<>(identityByName);
+        int capacity = identityCount + segment.identityCount();
+        String[] names = Arrays.copyOf(identityNames, capacity);
+        String[] paths = Arrays.copyOf(identityPaths, capacity);
+        int[] faceIds = Arrays.copyOf(identityFaceIds, capacity);
+        int[] counts = Arrays.copyOf(identityTemplateCounts, capacity);
+        int newIdentityCount = identityCount;
+        int[] mapping = new int[segment.identityCount()];
+        for (int local = 0; local < mapping.length; local++) {
+            String name = segment.getIdentityName(local);
+            Integer identity = newIdentityByName.get(name);
+            if (identity == null) {
+                identity = newIdentityCount++;
+                newIdentityByName.put(name, identity);
+                names[identity] = name;
+                paths[identity] = segment.getIdentityPath(local);
+                faceIds[identity] = segment.getIdentityFaceId(local);
+            }
+            counts[identity] += segment.getIdentityTemplateCount(local);
+            mapping[local] = identity;
+        }
+        int[][] newSegmentIdentities = Arrays.copyOf(segmentIdentities, segmentCount + 1);
+        newSegmentIdentities[segmentCount] = mapping;
+
+        int newSize = size + segment.size();
+        int[] newRowFaceIds = Arrays.copyOf(rowFaceIds, newSize);
+        int[] newRowIdentities = Arrays.copyOf(rowIdentities, newSize);
+        for (int row = 0; row < segment.size(); row++) {
+            newRowFaceIds[size + row] = segment.getRowFaceId(row);
+            newRowIdentities[size + row] = mapping[segment.getRowIdentity(row)];
+        }
+        return new SegmentedGallery(precision, scanLock, Collections.unmodifiableList(newSegments), newStarts,
+                newSegmentIdentities, newRowFaceIds, newRowIdentities, newIdentityByName, newIdentityCount,
+                Arrays.copyOf(names, newIdentityCount), Arrays.copyOf(paths, newIdentityCount),
+                Arrays.copyOf(faceIds, newIdentityCount), Arrays.copyOf(counts, newIdentityCount));
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * 各分段特征数据占用的字节数之和
+     */
+    public long featureBytes() {
+        long bytes = 0;
+        for (FaceGallery segment : segments) {
+            bytes += segment.featureBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public FaceGallery.Precision getPrecision() {
+        return precision;
+    }
+
+    @Override
+    public int identityCount() {
+        return identityCount;
+    }
+
+    @Override
+    public int getRowFaceId(int row) {
+        return rowFaceIds[row];
+    }
+
+    @Override
+    public int getRowIdentity(int row) {
+        return rowIdentities[row];
+    }
+
+    @Override
+    public String getIdentityName(int identity) {
+        return identityNames[identity];
+    }
+
+    @Override
+    public String getIdentityPath(int identity) {
+        return identityPaths[identity];
+    }
+
+    @Override
+    public int getIdentityFaceId(int identity) {
+        return identityFaceIds[identity];
+    }
+
+    @Override
+    public int getIdentityTemplateCount(int identity) {
+        return identityTemplateCounts[identity];
+    }
+
+    @Override
+    public void getRowVector(int row, float[] out) {
+        int segment = segmentOf(row);
+        segments.get(segment).getRowVector(row - segmentStarts[segment], out);
+    }
+
+    /**
+     * 分段的查询预处理状态被新旧实例共享，所有版本使用同一把扫描锁
+     */
+    @Override
+    protected Object scanLock() {
+        return scanLock;
+    }
+
+    @Override
+    protected void prepareQuery(float[] unitQuery) {
+        for (FaceGallery segment : segments) {
+            segment.prepareQuery(unitQuery);
+        }
+    }
+
+    @Override
+    protected void scoreRows(float[] unitQuery, float[] scores, int from, int to) {
+        // 找到 from 所在的分段，再逐段计算
+        int segment = segmentOf(from);
+        for (int row = from; row < to; segment++) {
+            int start = segmentStarts[segment];
+            int end = Math.min(to, segmentStarts[segment + 1]);
+            if (row < end) {
+                segments.get(segment).scoreRows(unitQuery, scores, start, row - start, end - start);
+                row = end;
+            }
+        }
+    }
+
+    @Override
+    protected boolean supportsBatchScoring() {
+        return precision != FaceGallery.Precision.INT8;
+    }
+
+    @Override
+    protected void scoreRowsBatch(float[] unitQueries, int count, float[][] scores, int from, int to, float[] tile) {
+        int segment = segmentOf(from);
+        for (int row = from; row < to; segment++) {
+            int start = segmentStarts[segment];
+            int end = Math.min(to, segmentStarts[segment + 1]);
+            if (row < end) {
+                segments.get(segment).scoreRowsBatch(unitQueries, count, scores, start, row - start, end - start, tile);
+                row = end;
+            }
+        }
+    }
+
+    private int segmentOf(int row) {
+        int segment = Arrays.binarySearch(segmentStarts, 0, segments.size(), row);
+        if (segment < 0) return -segment - 2;
+        // 空分段与下一个分段的起始行相同，取实际包含该行的分段
+        while (segment + 1 < segments.size() && segmentStarts[segment + 1] == row) {
+            segment++;
+        }
+        return segment;
+    }
+}
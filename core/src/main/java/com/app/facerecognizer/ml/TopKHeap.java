@@ -0,0 +1,104 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 容量为 K 的最小堆，保存得分最高的 K 个 (id, score)，全部使用基本类型数组
+ */
+public final class TopKHeap {
+
+    private int[] ids;
+    private float[] scores;
+    private int capacity;
+    private int size;
+
+    public TopKHeap(int capacity) {
+        ids = new int[Math.max(1, capacity)];
+        scores = new float[Math.max(1, capacity)];
+        reset(capacity);
+    }
+
+    /**
+     * 清空并设置新的容量，容量不超过已分配大小时不会重新分配
+     */
+    public void reset(int capacity) {
+        if (capacity > ids.length) {
+            ids = new int[capacity];
+            scores = new float[capacity];
+        }
+        this.capacity = Math.max(0, capacity);
+        this.size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 当前堆中最低的得分，堆未满时返回负无穷
+     */
+    public float threshold() {
+        return size < capacity ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public void offer(int id, float score) {
+        if (capacity == 0) return;
+        if (size < capacity) {
+            int i = size++;
+            // 上浮
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (scores[parent] <= score) break;
+                ids[i] = ids[parent];
+                scores[i] = scores[parent];
+                i = parent;
+            }
+            ids[i] = id;
+            scores[i] = score;
+        } else if (score > scores[0]) {
+            siftDown(id, score);
+        }
+    }
+
+    private void siftDown(int id, float score) {
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && scores[right] < scores[child]) child = right;
+            if (score <= scores[child]) break;
+            ids[i] = ids[child];
+            scores[i] = scores[child];
+            i = child;
+        }
+        ids[i] = id;
+        scores[i] = score;
+    }
+
+    /**
+     * 将堆内容按得分从高到低排序，之后通过 {@link #idAt}/{@link #scoreAt} 读取。
+     * 排序后堆结构被破坏，继续使用前需要 {@link #reset}
+     */
+    public void sortDescending() {
+        // 依次弹出堆顶（最小值）放到末尾，得到降序序列
+        for (int end = size - 1; end > 0; end--) {
+            int topId = ids[0];
+            float topScore = scores[0];
+            int lastId = ids[end];
+            float lastScore = scores[end];
+            int saved = size;
+            size = end;
+            siftDown(lastId, lastScore);
+            size = saved;
+            ids[end] = topId;
+            scores[end] = topScore;
+        }
+    }
+
+    public int idAt(int index) {
+        return ids[index];
+    }
+
+    public float scoreAt(int index) {
+        return scores[index];
+    }
+}
@@ -0,0 +1,53 @@
+package com.app.facerecognizer.ml;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * 以 properties 文件保存各设备/模型组合的最佳推理配置，键由调用方拼接
+ */
+public class TuningStore {
+
+    private final File file;
+    private Properties properties;
+
+    public TuningStore(File file) {
+        this.file = file;
+    }
+
+    public synchronized InferenceConfig get(String key) {
+        return InferenceConfig.parse(properties().getProperty(key));
+    }
+
+    public synchronized void put(String key, InferenceConfig config) throws IOException {
+        Properties properties = properties();
+        properties.setProperty(key, config.encode());
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            properties.store(out, "Fastest inference configuration per device/model");
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Failed to replace tuning file " + file);
+        }
+    }
+
+    private Properties properties() {
+        if (properties == null) {
+            properties = new Properties();
+            if (file.isFile()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                } catch (IOException | IllegalArgumentException e) {
+                    // 文件损坏时当作没有记录，下次调优会重写
+                    properties.clear();
+                }
+            }
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,69 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * 特征向量相关的基础运算
+ */
+public final class VectorMath {
+
+    // 余弦相似度与 L2 距离的加权系数
+    public static final float COSINE_WEIGHT = 0.6f;
+    public static final float L2_WEIGHT = 0.4f;
+
+    private VectorMath() {
+    }
+
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * 将 src 标准化后写入 dst 的指定位置，不修改 src
+     *
+     * @return 标准化前的模长，为 0 时原样拷贝
+     */
+    public static float normalize(float[] src, int srcOffset, float[] dst, int dstOffset, int length) {
+        float norm = (float) Math.sqrt(dot(src, srcOffset, src, srcOffset, length));
+        float scale = norm == 0 ? 1f : 1f / norm;
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = src[srcOffset + i] * scale;
+        }
+        return norm;
+    }
+
+    public static float cosineSimilarity(float[] vec1, float[] vec2) {
+        float dotProduct = dot(vec1, 0, vec2, 0, vec1.length);
+        float normA = dot(vec1, 0, vec1, 0, vec1.length);
+        float normB = dot(vec2, 0, vec2, 0, vec2.length);
+        return dotProduct / (float) (Math.sqrt(normA) * Math.sqrt(normB));
+    }
+
+    // 计算 L2 norm (欧几里得距离)
+    public static float l2Distance(float[] vec1, float[] vec2) {
+        float sum = 0f;
+        for (int i = 0; i < vec1.length; i++) {
+            float d = vec1[i] - vec2[i];
+            sum += d * d;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    /**
+     * 两个单位向量的加权相似度：余弦即点积，L2 距离由 |a-b|² = 2 - 2·dot 得到，
+     * 因此只需要一次点积即可同时得到两项
+     */
+    public static float combinedScore(float unitDot) {
+        float l2 = (float) Math.sqrt(Math.max(0f, 2f - 2f * unitDot));
+        return COSINE_WEIGHT * unitDot + L2_WEIGHT * (1 - l2);
+    }
+}
@@ -0,0 +1,97 @@
+package com.app.facerecognizer.ml;
+
+/**
+ * YUV_420_888 直接转换为模型输入：裁剪、旋转、镜像和缩放都通过坐标映射在一次遍历中完成，
+ * 不经过 Bitmap。亮度双线性插值，色度取最近点，按 BT.601 全范围转换为 [0, 1] 区间的 RGB 交错 float，
+ * 与 {@link ImagePreprocessor#argbToRgbFloats} 的输出格式一致。
+ * <p>
+ * 实例持有坐标表，不是线程安全的
+ */
+public class YuvConverter {
+
+    private static final float INV_255 = 1f / 255f;
+
+    private final int outSize;
+    // 每个输出列/行对应的正向坐标
+    private final float[] columnX;
+    private final float[] rowY;
+
+    public YuvConverter(int outSize) {
+        this.outSize = outSize;
+        this.columnX = new float[outSize];
+        this.rowY = new float[outSize];
+    }
+
+    /**
+     * @param rotationDegrees 画面转为正向需要顺时针旋转的角度，0/90/180/270
+     * @param mirror          是否水平翻转输出
+     * @param crop            正向坐标下的裁剪区域 left, top, right, bottom
+     * @param out             长度至少为 outSize * outSize * 3
+     */
+    public void convert(YuvPlanes planes, int rotationDegrees, boolean mirror, int[] crop, float[] out) {
+        int width = planes.getWidth();
+        int height = planes.getHeight();
+        float scaleX = (crop[2] - crop[0]) / (float) outSize;
+        float scaleY = (crop[3] - crop[1]) / (float) outSize;
+        for (int i = 0; i < outSize; i++) {
+            columnX[mirror ? outSize - 1 - i : i] = crop[0] + (i + 0.5f) * scaleX - 0.5f;
+            rowY[i] = crop[1] + (i + 0.5f) * scaleY - 0.5f;
+        }
+
+        int maxX = width - 1;
+        int maxY = height - 1;
+        int j = 0;
+        for (int row = 0; row < outSize; row++) {
+            float uprightY = rowY[row];
+            for (int column = 0; column < outSize; column++) {
+                float uprightX = columnX[column];
+                // 正向坐标映射回传感器坐标
+                float sx;
+                float sy;
+                switch (rotationDegrees) {
+                    case 90:
+                        sx = uprightY;
+                        sy = maxY - uprightX;
+                        break;
+                    case 180:
+                        sx = maxX - uprightX;
+                        sy = maxY - uprightY;
+                        break;
+                    case 270:
+                        sx = maxX - uprightY;
+                        sy = uprightX;
+                        break;
+                    default:
+                        sx = uprightX;
+                        sy = uprightY;
+                        break;
+                }
+                sx = sx < 0 ? 0 : (sx > maxX ? maxX : sx);
+                sy = sy < 0 ? 0 : (sy > maxY ? maxY : sy);
+
+                int x0 = (int) sx;
+                int y0 = (int) sy;
+                int x1 = x0 < maxX ? x0 + 1 : x0;
+                int y1 = y0 < maxY ? y0 + 1 : y0;
+                float fx = sx - x0;
+                float fy = sy - y0;
+                float top = planes.luma(x0, y0) + (planes.luma(x1, y0) - planes.luma(x0, y0)) * fx;
+                float bottom = planes.luma(x0, y1) + (planes.luma(x1, y1) - planes.luma(x0, y1)) * fx;
+                float luma = top + (bottom - top) * fy;
+
+                int uvIndex = planes.uvIndex((int) (sx + 0.5f), (int) (sy + 0.5f));
+                float cb = planes.u(uvIndex) - 128f;
+                float cr = planes.v(uvIndex) - 128f;
+
+                out[j] = clamp(luma + 1.402f * cr) * INV_255;
+                out[j + 1] = clamp(luma - 0.344136f * cb - 0.714136f * cr) * INV_255;
+                out[j + 2] = clamp(luma + 1.772f * cb) * INV_255;
+                j += 3;
+            }
+        }
+    }
+
+    private static float clamp(float value) {
+        return value < 0f ? 0f : (value > 255f ? 255f : value);
+    }
+}
@@ -0,0 +1,137 @@
+package com.app.facerecognizer.ml;
+
+import java.nio.ByteBuffer;
+
+/**
+ * YUV_420_888 三个平面的拷贝。相机帧需要尽快归还，识别线程只持有这份拷贝。
+ * U/V 平面按各自的行跨度和像素跨度寻址，兼容 I420 与 NV12/NV21 的交错布局
+ */
+public class YuvPlanes {
+
+    private int width;
+    private int height;
+    private byte[] y = new byte[0];
+    private byte[] u = new byte[0];
+    private byte[] v = new byte[0];
+    private int yRowStride;
+    private int uvRowStride;
+    private int uvPixelStride;
+
+    public static YuvPlanes copyOf(ByteBuffer yBuffer, int yRowStride, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                                   int uvRowStride, int uvPixelStride, int width, int height) {
+        YuvPlanes planes = new YuvPlanes();
+        planes.copyFrom(yBuffer, yRowStride, uBuffer, vBuffer, uvRowStride, uvPixelStride, width, height);
+        return planes;
+    }
+
+    /**
+     * 拷贝平面数据，容量足够时复用已有数组。缓冲区的 position 不会改变
+     *
+     * @return 因容量不足新分配的字节数，复用已有数组时为 0
+     */
+    public long copyFrom(ByteBuffer yBuffer, int yRowStride, ByteBuffer uBuffer, ByteBuffer vBuffer,
+                         int uvRowStride, int uvPixelStride, int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.yRowStride = yRowStride;
+        this.uvRowStride = uvRowStride;
+        this.uvPixelStride = uvPixelStride;
+        long capacity = (long) y.length + u.length + v.length;
+        y = copy(yBuffer, y);
+        u = copy(uBuffer, u);
+        v = copy(vBuffer, v);
+        long grown = (long) y.length + u.length + v.length;
+        return grown == capacity ? 0 : grown;
+    }
+
+    private static byte[] copy(ByteBuffer buffer, byte[] target) {
+        int length = buffer.remaining();
+        if (target.length < length) {
+            target = new byte[length];
+        }
+        // 读完后恢复 position，不用 duplicate，每帧不产生新的缓冲区对象
+        int position = buffer.position();
+        buffer.get(target, 0, length);
+        buffer.position(position);
+        return target;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 区域内亮度梯度绝对值的平均，作为清晰度的粗略度量。按网格采样，最多约 32x32 个点
+     *
+     * @param crop 正向坐标下的区域 left, top, right, bottom
+     */
+    public float lumaSharpness(int[] crop, int rotationDegrees) {
+        // 正向区域换算为传感器坐标下的区域
+        int left;
+        int top;
+        int right;
+        int bottom;
+        switch (rotationDegrees) {
+            case 90:
+                left = crop[1];
+                right = crop[3];
+                top = height - crop[2];
+                bottom = height - crop[0];
+                break;
+            case 180:
+                left = width - crop[2];
+                right = width - crop[0];
+                top = height - crop[3];
+                bottom = height - crop[1];
+                break;
+            case 270:
+                left = width - crop[3];
+                right = width - crop[1];
+                top = crop[0];
+                bottom = crop[2];
+                break;
+            default:
+                left = crop[0];
+                right = crop[2];
+                top = crop[1];
+                bottom = crop[3];
+                break;
+        }
+        left = Math.max(0, left);
+        top = Math.max(0, top);
+        right = Math.min(width - 1, right);
+        bottom = Math.min(height - 1, bottom);
+        int stepX = Math.max(1, (right - left) / 32);
+        int stepY = Math.max(1, (bottom - top) / 32);
+        long sum = 0;
+        int count = 0;
+        for (int yPos = top; yPos < bottom; yPos += stepY) {
+            for (int x = left; x < right; x += stepX) {
+                int center = luma(x, yPos);
+                sum += Math.abs(luma(x + 1, yPos) - center) + Math.abs(luma(x, yPos + 1) - center);
+                count++;
+            }
+        }
+        return count == 0 ? 0f : (float) sum / count;
+    }
+
+    int luma(int x, int yPos) {
+        return y[yPos * yRowStride + x] & 0xFF;
+    }
+
+    int uvIndex(int x, int yPos) {
+        return (yPos >> 1) * uvRowStride + (x >> 1) * uvPixelStride;
+    }
+
+    int u(int index) {
+        return u[index] & 0xFF;
+    }
+
+    int v(int index) {
+        return v[index] & 0xFF;
+    }
+}
@@ -0,0 +1,38 @@
+package com.app.facerecognizer.ml;
+
+import java.util.ArrayDeque;
+
+/**
+ * 相机帧拷贝的复用池。帧处理完或被丢弃后归还，之后的帧通过 {@link YuvPlanes#copyFrom} 复用数组，
+ * 相机分辨率不变时稳定后不再分配。可在任意线程调用
+ */
+public class YuvPlanesPool {
+
+    private final int capacity;
+    private final ArrayDeque<YuvPlanes> free;
+
+    /**
+     * @param capacity 最多保留的空闲实例数，应不少于同时在用的帧数
+     */
+    public YuvPlanesPool(int capacity) {
+        this.capacity = capacity;
+        this.free = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * 取出一个空闲实例，没有时新建
+     */
+    public synchronized YuvPlanes acquire() {
+        YuvPlanes planes = free.pollFirst();
+        return planes != null ? planes : new YuvPlanes();
+    }
+
+    /**
+     * 归还不再使用的实例，池满时丢弃
+     */
+    public synchronized void release(YuvPlanes planes) {
+        if (planes != null && free.size() < capacity) {
+            free.addFirst(planes);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.app.facerecognizer.ml;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BackendTunerTest {
+
+    @Test
+    public void candidatesCoverThreadsXnnpackAndDelegates() {
+        assertEquals(Arrays.asList(
+                InferenceConfig.cpu(1, true), InferenceConfig.cpu(1, false),
+                InferenceConfig.cpu(2, true), InferenceConfig.cpu(2, false),
+                InferenceConfig.nnapi()),
+                BackendTuner.candidates(2, true, false));
+        assertEquals(Arrays.asList(
+                InferenceConfig.cpu(1, true), InferenceConfig.cpu(1, false), InferenceConfig.gpu()),
+                BackendTuner.candidates(0, false, true));
+    }
+
+    @Test
+    public void measurePicksFastestAndRecordsFailures() {
+        FakeFactory factory = new FakeFactory();
+        factory.delays.put(InferenceConfig.cpu(1, true), 10_000_000L);
+        factory.delays.put(InferenceConfig.cpu(2, true), 1_000_000L);
+        factory.delays.put(InferenceConfig.cpu(2, false), 5_000_000L);
+        BackendTuner tuner = new BackendTuner();
+        tuner.setRuns(2, 5);
+
+        List<BackendTuner.Result> results = tuner.measure(Arrays.asList(
+                InferenceConfig.cpu(1, true), InferenceConfig.nnapi(), InferenceConfig.cpu(2, true),
+                InferenceConfig.gpu(), InferenceConfig.cpu(2, false)), factory);
+
+        assertEquals(5, results.size());
+        assertEquals(InferenceConfig.cpu(2, true), results.get(0).getConfig());
+        assertEquals(InferenceConfig.cpu(2, false), results.get(1).getConfig());
+        assertEquals(InferenceConfig.cpu(1, true), results.get(2).getConfig());
+        assertTrue(results.get(0).getMedianNanos() >= 1_000_000L);
+        assertTrue(results.get(0).getMedianNanos() < results.get(2).getMedianNanos());
+        for (int i = 0; i < 3; i++) {
+            assertFalse(results.get(i).isFailed());
+        }
+        // 创建失败（NNAPI）和推理失败（GPU）都排在最后
+        for (int i = 3; i < 5; i++) {
+            assertTrue(results.get(i).isFailed());
+            assertEquals(Long.MAX_VALUE, results.get(i).getMedianNanos());
+        }
+        // 每个成功的会话预热 2 次、测量 5 次，所有打开的会话都被关闭
+        assertEquals(7, factory.runs.get(InferenceConfig.cpu(1, true)).intValue());
+        assertEquals(4, factory.opened);
+        assertEquals(factory.opened, factory.closed);
+    }
+
+    @Test
+    public void checksumDependsOnContentOnly() {
+        ByteBuffer model = ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        String checksum = BackendTuner.checksum(model);
+        model.position(5);
+        assertEquals(checksum, BackendTuner.checksum(model));
+        assertEquals(5, model.position());
+        assertEquals(checksum, BackendTuner.checksum(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+        assertNotEquals(checksum, BackendTuner.checksum(ByteBuffer.wrap(new byte[]{1, 2, 3, 4, 5, 6, 7, 9})));
+    }
+
+    /**
+     * 按配置忙等指定时长的假会话。NNAPI 创建时失败，GPU 首次推理时失败
+     */
+    private static final class FakeFactory implements BackendTuner.SessionFactory {
+        final Map<InferenceConfig, Long> delays = new HashMap<>();
+        final Map<InferenceConfig, Integer> runs = new HashMap<>();
+        int opened;
+        int closed;
+
+        @Override
+        public BackendTuner.Session open(InferenceConfig config) {
+            if (config.getBackend() == InferenceConfig.Backend.NNAPI) {
+                throw new IllegalStateException("NNAPI unavailable");
+            }
+            opened++;
+            return new BackendTuner.Session() {
+                @Override
+                public void run() {
+                    if (config.getBackend() == InferenceConfig.Backend.GPU) {
+                        throw new IllegalArgumentException("GPU delegate failed");
+                    }
+                    Integer count = runs.get(config);
+                    runs.put(config, count == null ? 1 : count + 1);
+                    long end = System.nanoTime() + delays.get(config);
+                    while (System.nanoTime() < end) {
+                        // 忙等，避免 sleep 的精度影响排序
+                    }
+                }
+
+                @Override
+                public void close() {
+                    closed++;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.app.facerecognizer.ml;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * 每人多模板的聚类底库上，质心粗排后的 top-1 与全量按身份求平均一致，
+ * 包括 {@link CentroidIndex#build} 以及删除、新增模板后 {@link CentroidIndex#derive} 得到的索引。
+ * 粗排的精确重算会掩盖质心本身的误差，因此另外逐个身份核对均值点积
+ */
+public class CentroidIndexTest {
+
+    private static final int DIM = ScannableGallery.DIM;
+    private static final int IDENTITIES = 200;
+    private static final int TEMPLATES = 20;
+    private static final int COARSE_CANDIDATES = 8;
+    // 模板与查询相对身份中心的扰动，与中心的余弦约为 0.7
+    private static final float NOISE = 1f;
+    private static final float DELTA = 1e-5f;
+    private static final float MEAN_DELTA = 1e-4f;
+
+    private final Random random = new Random(11);
+    private final List<GallerySearcher> searchers = new ArrayList<>();
+    private float[][] centers;
+    private float[][] vectors;
+    private FaceGallery gallery;
+    // 按身份名称记录当前有效的模板，用于逐个身份核对质心
+    private final Map<String, List<float[]>> liveTemplates = new HashMap<>();
+
+    @Before
+    public void setUp() {
+        centers = new float[IDENTITIES][];
+        vectors = new float[IDENTITIES * TEMPLATES][];
+        FaceGallery.Builder builder = new FaceGallery.Builder(vectors.length);
+        for (int identity = 0; identity < IDENTITIES; identity++) {
+            centers[identity] = gaussian(1f);
+            for (int t = 0; t < TEMPLATES; t++) {
+                int row = identity * TEMPLATES + t;
+                vectors[row] = around(centers[identity]);
+                add(builder, row, "person-" + identity, vectors[row]);
+            }
+        }
+        gallery = builder.build();
+    }
+
+    @After
+    public void tearDown() {
+        for (GallerySearcher searcher : searchers) {
+            searcher.close();
+        }
+    }
+
+    @Test
+    public void builtIndexMatchesExhaustiveTop1() {
+        List<float[]> queries = new ArrayList<>();
+        for (int q = 0; q < 100; q++) {
+            queries.add(around(centers[random.nextInt(IDENTITIES)]));
+        }
+        CentroidIndex index = CentroidIndex.build(gallery);
+        assertCentroidsMatch(gallery, index, queries);
+        assertSameTop1(gallery, index, queries);
+    }
+
+    @Test
+    public void derivedIndexMatchesExhaustiveTop1AfterRemovals() {
+        // 每 4 个身份删掉 15 个模板，另有 10 个身份各删一个
+        BitSet removedRows = new BitSet();
+        for (int identity = 0; identity < IDENTITIES; identity += 4) {
+            removedRows.set(identity * TEMPLATES, identity * TEMPLATES + 15);
+        }
+        for (int identity = 1; identity < 40; identity += 4) {
+            removedRows.set(identity * TEMPLATES + 3);
+        }
+        for (int row = removedRows.nextSetBit(0); row >= 0; row = removedRows.nextSetBit(row + 1)) {
+            liveTemplates.get("person-" + row / TEMPLATES).remove(vectors[row]);
+        }
+        // 新增：已有身份的新模板和两个新身份
+        FaceGallery.Builder builder = new FaceGallery.Builder();
+        List<float[]> queries = new ArrayList<>();
+        int faceId = vectors.length;
+        for (int identity = 2; identity < IDENTITIES; identity += 20) {
+            add(builder, faceId++, "person-" + identity, around(centers[identity]));
+        }
+        for (int n = 0; n < 2; n++) {
+            float[] center = gaussian(1f);
+            for (int t = 0; t < TEMPLATES; t++) {
+                add(builder, faceId++, "new-" + n, around(center));
+            }
+            queries.add(around(center));
+        }
+        DeltaGallery delta = new DeltaGallery(new DeltaGallery.Base(gallery), removedRows, builder.build(),
+                Collections.<String, SimilarInfoBean>emptyMap());
+
+        // 被删模板本身作为查询，残留在质心中会把粗排引向错误的身份
+        for (int row = removedRows.nextSetBit(0); row >= 0 && queries.size() < 60; row = removedRows.nextSetBit(row + 40)) {
+            queries.add(vectors[row]);
+        }
+        for (int q = 0; q < 60; q++) {
+            queries.add(around(centers[random.nextInt(IDENTITIES)]));
+        }
+
+        CentroidIndex derived = CentroidIndex.derive(CentroidIndex.build(gallery), delta, removedRows);
+        assertCentroidsMatch(delta, derived, queries);
+        assertSameTop1(delta, derived, queries);
+        // build 对叠加底库同样从基础底库的索引扣除被删除的行
+        CentroidIndex rebuilt = CentroidIndex.build(delta);
+        assertCentroidsMatch(delta, rebuilt, queries);
+        assertSameTop1(delta, rebuilt, queries);
+    }
+
+    /**
+     * 前几个查询与每个身份的均值点积等于查询与该身份有效模板点积的平均
+     */
+    private void assertCentroidsMatch(ScannableGallery target, CentroidIndex index, List<float[]> queries) {
+        float[] unitQuery = new float[DIM];
+        float[] unitTemplate = new float[DIM];
+        for (int q = 0; q < 5; q++) {
+            VectorMath.normalize(queries.get(q), 0, unitQuery, 0, DIM);
+            for (int identity = 0; identity < target.identityCount(); identity++) {
+                List<float[]> templates = liveTemplates.get(target.getIdentityName(identity));
+                float sum = 0f;
+                for (float[] template : templates) {
+                    VectorMath.normalize(template, 0, unitTemplate, 0, DIM);
+                    sum += VectorMath.dot(unitQuery, 0, unitTemplate, 0, DIM);
+                }
+                String where = "query " + q + " " + target.getIdentityName(identity);
+                assertEquals(where, sum / templates.size(), index.meanDot(unitQuery, identity), MEAN_DELTA);
+            }
+        }
+    }
+
+    private void assertSameTop1(ScannableGallery target, CentroidIndex index, List<float[]> queries) {
+        GallerySearcher exhaustive = newSearcher(target);
+        GallerySearcher coarse = newSearcher(target);
+        coarse.setCentroidIndex(index);
+        coarse.setCoarseCandidates(COARSE_CANDIDATES);
+        for (int q = 0; q < queries.size(); q++) {
+            List<SimilarInfoBean> expected = exhaustive.search(queries.get(q), 1);
+            List<SimilarInfoBean> actual = coarse.search(queries.get(q), 1);
+            assertFalse("query " + q, expected.isEmpty());
+            assertEquals("query " + q, 1, actual.size());
+            assertEquals("query " + q, expected.get(0).getName(), actual.get(0).getName());
+            assertEquals("query " + q, expected.get(0).getSimilarity(), actual.get(0).getSimilarity(), DELTA);
+        }
+    }
+
+    private void add(FaceGallery.Builder builder, int faceId, String name, float[] vector) {
+        builder.add(faceId, name, "/faces/" + faceId + ".jpg", vector);
+        List<float[]> templates = liveTemplates.get(name);
+        if (templates == null) {
+            templates = new ArrayList<>();
+            liveTemplates.put(name, templates);
+        }
+        templates.add(vector);
+    }
+
+    private GallerySearcher newSearcher(ScannableGallery target) {
+        GallerySearcher searcher = new GallerySearcher(0);
+        searcher.configureResultCache(1, 0, 0f);
+        searcher.setGallery(target);
+        searchers.add(searcher);
+        return searcher;
+    }
+
+    private float[] around(float[] center) {
+        float[] vector = gaussian(NOISE);
+        for (int i = 0; i < DIM; i++) {
+            vector[i] += center[i];
+        }
+        return vector;
+    }
+
+    private float[] gaussian(float scale) {
+        float[] vector = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            vector[i] = scale * (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
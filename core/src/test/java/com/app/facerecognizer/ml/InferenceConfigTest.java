@@ -0,0 +1,55 @@
+package com.app.facerecognizer.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InferenceConfigTest {
+
+    @Test
+    public void encodeAndParseRoundTrip() {
+        InferenceConfig[] configs = {
+                InferenceConfig.cpu(4, true),
+                InferenceConfig.cpu(1, false),
+                InferenceConfig.cpu(0, true),
+                InferenceConfig.nnapi(),
+                InferenceConfig.gpu(),
+        };
+        for (InferenceConfig config : configs) {
+            assertEquals(config, InferenceConfig.parse(config.encode()));
+        }
+        assertEquals("CPU:4:xnnpack", InferenceConfig.cpu(4, true).encode());
+        assertEquals("CPU:2:plain", InferenceConfig.cpu(2, false).encode());
+        assertEquals("NNAPI", InferenceConfig.nnapi().encode());
+        assertEquals("GPU", InferenceConfig.gpu().encode());
+    }
+
+    @Test
+    public void parsesCpuFields() {
+        InferenceConfig config = InferenceConfig.parse("CPU:3:plain");
+        assertEquals(InferenceConfig.Backend.CPU, config.getBackend());
+        assertEquals(3, config.getNumThreads());
+        assertFalse(config.isUseXnnpack());
+        assertTrue(InferenceConfig.parse("CPU:6:xnnpack").isUseXnnpack());
+    }
+
+    @Test
+    public void rejectsMalformedValues() {
+        assertNull(InferenceConfig.parse(null));
+        assertNull(InferenceConfig.parse(""));
+        assertNull(InferenceConfig.parse("TPU"));
+        assertNull(InferenceConfig.parse("cpu:4:xnnpack"));
+        assertNull(InferenceConfig.parse("CPU"));
+        assertNull(InferenceConfig.parse("CPU:4"));
+        assertNull(InferenceConfig.parse("CPU:four:xnnpack"));
+        assertNull(InferenceConfig.parse("CPU:4:xnnpack:extra"));
+    }
+
+    @Test
+    public void negativeThreadCountMeansInterpreterDefault() {
+        assertEquals(0, InferenceConfig.cpu(-2, false).getNumThreads());
+    }
+}
@@ -0,0 +1,105 @@
+package com.app.facerecognizer.ml;
+
+import com.app.facerecognizer.metrics.PipelineMetrics;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * FaceEmbeddingExtractor 中 JVM 可运行的那部分热路径（像素归一化、YUV 转换、写入输入缓冲区、阶段计时）
+ * 预热后每帧不应分配任何对象。Bitmap 绘制和推理部分见 androidTest 中的 ExtractorAllocationTest
+ */
+public class PreprocessAllocationTest {
+
+    private static final int INPUT_SIZE = 112;
+    private static final int PIXEL_COUNT = INPUT_SIZE * INPUT_SIZE;
+    private static final int WARMUP_FRAMES = 2000;
+    private static final int MEASURED_FRAMES = 1000;
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private final int[] pixels = new int[PIXEL_COUNT];
+    private final float[] pixelFloats = new float[PIXEL_COUNT * 3];
+    private final FloatBuffer inputFloats = ByteBuffer.allocateDirect(4 * PIXEL_COUNT * 3)
+            .order(ByteOrder.nativeOrder()).asFloatBuffer();
+    private final PipelineMetrics metrics = new PipelineMetrics();
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        for (int i = 0; i < PIXEL_COUNT; i++) {
+            pixels[i] = 0xFF000000 | (i * 0x9E3779B1) & 0xFFFFFF;
+        }
+    }
+
+    @Test
+    public void argbPreprocessingDoesNotAllocate() {
+        Runnable frame = () -> {
+            long start = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+            inputFloats.rewind();
+            ImagePreprocessor.argbToRgbFloats(pixels, PIXEL_COUNT, pixelFloats);
+            inputFloats.put(pixelFloats);
+            metrics.end(PipelineMetrics.Stage.PREPROCESS, start);
+        };
+        assertEquals(0L, allocatedBytes(frame));
+    }
+
+    @Test
+    public void yuvPreprocessingDoesNotAllocate() {
+        ByteBuffer y = ByteBuffer.allocateDirect(WIDTH * HEIGHT);
+        // NV21 布局：V/U 交错，两个平面视图相差一个字节
+        ByteBuffer vu = ByteBuffer.allocateDirect(WIDTH * HEIGHT / 2);
+        for (int i = 0; i < y.capacity(); i++) {
+            y.put(i, (byte) (i * 7));
+        }
+        for (int i = 0; i < vu.capacity(); i++) {
+            vu.put(i, (byte) (128 + (i % 32) - 16));
+        }
+        ByteBuffer v = vu.duplicate();
+        ByteBuffer u = ((ByteBuffer) vu.duplicate().position(1)).slice();
+        YuvPlanes planes = YuvPlanes.copyOf(y, WIDTH, u, v, WIDTH, 2, WIDTH, HEIGHT);
+        YuvConverter converter = new YuvConverter(INPUT_SIZE);
+        int[] crop = new int[4];
+        FaceCrop.headRegion(100, 80, 260, 280, HEIGHT, WIDTH, crop);
+
+        Runnable frame = () -> {
+            planes.copyFrom(y, WIDTH, u, v, WIDTH, 2, WIDTH, HEIGHT);
+            planes.lumaSharpness(crop, 90);
+            long start = metrics.start(PipelineMetrics.Stage.PREPROCESS);
+            converter.convert(planes, 90, true, crop, pixelFloats);
+            inputFloats.rewind();
+            inputFloats.put(pixelFloats);
+            metrics.end(PipelineMetrics.Stage.PREPROCESS, start);
+        };
+        assertEquals(0L, allocatedBytes(frame));
+    }
+
+    /**
+     * 预热后 MEASURED_FRAMES 次调用在当前线程上分配的总字节数，已扣除读取计数本身的开销
+     */
+    private long allocatedBytes(Runnable frame) {
+        for (int i = 0; i < WARMUP_FRAMES; i++) {
+            frame.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long overhead = -threadBean.getThreadAllocatedBytes(threadId) + threadBean.getThreadAllocatedBytes(threadId);
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_FRAMES; i++) {
+            frame.run();
+        }
+        long after = threadBean.getThreadAllocatedBytes(threadId);
+        return Math.max(0, after - before - overhead);
+    }
+}
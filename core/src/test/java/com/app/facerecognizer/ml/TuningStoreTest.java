@@ -0,0 +1,78 @@
+package com.app.facerecognizer.ml;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class TuningStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // 与 BackendAutoTuner 相同的键：设备指纹 + "/" + 模型校验和
+    private static String key(String fingerprint, byte[] model) {
+        return fingerprint + "/" + BackendTuner.checksum(ByteBuffer.wrap(model));
+    }
+
+    @Test
+    public void savedConfigIsLoadedByNewInstance() throws Exception {
+        File file = new File(folder.getRoot(), "tuning.properties");
+        String key = key("google/oriole/oriole:14/UQ1A/1:user/release-keys", new byte[]{1, 2, 3});
+        new TuningStore(file).put(key, InferenceConfig.cpu(4, true));
+
+        TuningStore reloaded = new TuningStore(file);
+        assertEquals(InferenceConfig.cpu(4, true), reloaded.get(key));
+    }
+
+    @Test
+    public void otherDeviceOrModelHasNoEntry() throws Exception {
+        File file = new File(folder.getRoot(), "tuning.properties");
+        byte[] model = {1, 2, 3};
+        TuningStore store = new TuningStore(file);
+        store.put(key("device-a", model), InferenceConfig.gpu());
+        store.put(key("device-b", model), InferenceConfig.cpu(2, false));
+
+        TuningStore reloaded = new TuningStore(file);
+        assertEquals(InferenceConfig.gpu(), reloaded.get(key("device-a", model)));
+        assertEquals(InferenceConfig.cpu(2, false), reloaded.get(key("device-b", model)));
+        // 模型更新后校验和不同，需要重新调优
+        assertNull(reloaded.get(key("device-a", new byte[]{1, 2, 4})));
+        assertNull(reloaded.get(key("device-c", model)));
+    }
+
+    @Test
+    public void laterPutReplacesEntry() throws Exception {
+        File file = new File(folder.getRoot(), "tuning.properties");
+        String key = key("device", new byte[]{7});
+        TuningStore store = new TuningStore(file);
+        store.put(key, InferenceConfig.nnapi());
+        store.put(key, InferenceConfig.cpu(1, true));
+        assertEquals(InferenceConfig.cpu(1, true), new TuningStore(file).get(key));
+    }
+
+    @Test
+    public void corruptFileIsTreatedAsEmpty() throws Exception {
+        File file = new File(folder.getRoot(), "tuning.properties");
+        try (OutputStream out = new FileOutputStream(file)) {
+            // 非法的 \\u 转义会让 Properties.load 抛出 IllegalArgumentException
+            out.write("key=\\uZZZZ\n".getBytes("ISO-8859-1"));
+        }
+        TuningStore store = new TuningStore(file);
+        assertNull(store.get("key"));
+        store.put("key", InferenceConfig.gpu());
+        assertEquals(InferenceConfig.gpu(), new TuningStore(file).get("key"));
+    }
+
+    @Test
+    public void missingFileHasNoEntries() {
+        assertNull(new TuningStore(new File(folder.getRoot(), "absent.properties")).get("key"));
+    }
+}
@@ -0,0 +1,193 @@
+package com.app.facerecognizer.ml;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * YuvConverter 的坐标映射：传感器画面由正向参考图逆时针旋转得到，按 rotationDegrees 转换后
+ * 应逐像素还原参考图。裁剪与输出同尺寸时每个输出像素正好落在一个像素中心上，不涉及插值
+ */
+public class YuvConverterTest {
+
+    private static final int WIDTH = 12;
+    private static final int HEIGHT = 8;
+    private static final int[] ROTATIONS = {0, 90, 180, 270};
+    private static final float DELTA = 1e-4f;
+
+    // 正向参考图，[y][x]，色度在 2x2 块内相同
+    private final int[][] lumaImage = new int[HEIGHT][WIDTH];
+    private final int[][] uImage = new int[HEIGHT][WIDTH];
+    private final int[][] vImage = new int[HEIGHT][WIDTH];
+
+    public YuvConverterTest() {
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                lumaImage[y][x] = 16 + y * WIDTH + x;
+                uImage[y][x] = 96 + (x / 2) * 9 + (y / 2) * 3;
+                vImage[y][x] = 160 - (x / 2) * 7 - (y / 2) * 5;
+            }
+        }
+    }
+
+    @Test
+    public void centerCropMatchesReferenceI420() {
+        assertAllOrientations(new int[]{3, 1, 9, 7}, false);
+    }
+
+    @Test
+    public void centerCropMatchesReferenceNv21() {
+        assertAllOrientations(new int[]{3, 1, 9, 7}, true);
+    }
+
+    @Test
+    public void cropTouchingFrameEdgeMatchesReference() {
+        assertAllOrientations(new int[]{WIDTH - 6, HEIGHT - 6, WIDTH, HEIGHT}, false);
+        assertAllOrientations(new int[]{0, 0, 6, 6}, true);
+    }
+
+    @Test
+    public void cropBeyondFrameEdgeRepeatsEdgePixels() {
+        assertAllOrientations(new int[]{-2, HEIGHT - 4, 4, HEIGHT + 2}, false);
+        assertAllOrientations(new int[]{WIDTH - 3, -3, WIDTH + 3, 3}, true);
+    }
+
+    @Test
+    public void downscaleInterpolatesLumaBilinearly() {
+        // 亮度为坐标的线性函数、色度为中性值时，双线性插值的结果可以精确计算
+        int[][] linear = new int[HEIGHT][WIDTH];
+        int[][] neutral = new int[HEIGHT][WIDTH];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                linear[y][x] = 10 + 3 * x + 5 * y;
+                neutral[y][x] = 128;
+            }
+        }
+        int[] crop = {2, 0, 10, 8};
+        YuvConverter converter = new YuvConverter(4);
+        float[] out = new float[4 * 4 * 3];
+        for (int rotation : ROTATIONS) {
+            for (boolean nv21 : new boolean[]{false, true}) {
+                converter.convert(sensorPlanes(linear, neutral, neutral, rotation, nv21), rotation, false, crop, out);
+                for (int row = 0; row < 4; row++) {
+                    for (int column = 0; column < 4; column++) {
+                        float x = crop[0] + column * 2 + 0.5f;
+                        float y = crop[1] + row * 2 + 0.5f;
+                        float expected = (10 + 3 * x + 5 * y) / 255f;
+                        int j = (row * 4 + column) * 3;
+                        String where = "rotation " + rotation + " nv21 " + nv21 + " at " + column + "," + row;
+                        assertEquals(where, expected, out[j], DELTA);
+                        assertEquals(where, expected, out[j + 1], DELTA);
+                        assertEquals(where, expected, out[j + 2], DELTA);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 每种旋转、镜像组合下输出都等于参考图在裁剪区域内的像素，超出画面的坐标取最近的边缘像素
+     */
+    private void assertAllOrientations(int[] crop, boolean nv21) {
+        int size = crop[2] - crop[0];
+        YuvConverter converter = new YuvConverter(size);
+        float[] out = new float[size * size * 3];
+        for (int rotation : ROTATIONS) {
+            YuvPlanes planes = sensorPlanes(lumaImage, uImage, vImage, rotation, nv21);
+            for (boolean mirror : new boolean[]{false, true}) {
+                converter.convert(planes, rotation, mirror, crop, out);
+                for (int row = 0; row < size; row++) {
+                    for (int column = 0; column < size; column++) {
+                        int x = clamp(crop[0] + (mirror ? size - 1 - column : column), WIDTH);
+                        int y = clamp(crop[1] + row, HEIGHT);
+                        float[] expected = rgb(lumaImage[y][x], uImage[y][x], vImage[y][x]);
+                        int j = (row * size + column) * 3;
+                        String where = "rotation " + rotation + " mirror " + mirror + " at " + column + "," + row;
+                        assertEquals(where, expected[0], out[j], DELTA);
+                        assertEquals(where, expected[1], out[j + 1], DELTA);
+                        assertEquals(where, expected[2], out[j + 2], DELTA);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把正向图逆时针旋转 rotation 度得到传感器画面，再按 I420（独立的 U/V 平面，像素跨度 1）
+     * 或 NV21（VU 交错，像素跨度 2）写入平面。行跨度都比宽度多出填充字节
+     */
+    private static YuvPlanes sensorPlanes(int[][] luma, int[][] u, int[][] v, int rotation, boolean nv21) {
+        int[][] sensorLuma = rotateCounterClockwise(luma, rotation);
+        int[][] sensorU = rotateCounterClockwise(u, rotation);
+        int[][] sensorV = rotateCounterClockwise(v, rotation);
+        int width = sensorLuma[0].length;
+        int height = sensorLuma.length;
+
+        int yRowStride = width + 4;
+        ByteBuffer yBuffer = ByteBuffer.allocateDirect(yRowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                yBuffer.put(y * yRowStride + x, (byte) sensorLuma[y][x]);
+            }
+        }
+        if (nv21) {
+            int uvRowStride = width + 2;
+            ByteBuffer vu = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+            for (int y = 0; y < height; y += 2) {
+                for (int x = 0; x < width; x += 2) {
+                    int index = (y / 2) * uvRowStride + x;
+                    vu.put(index, (byte) sensorV[y][x]);
+                    vu.put(index + 1, (byte) sensorU[y][x]);
+                }
+            }
+            ByteBuffer uBuffer = ((ByteBuffer) vu.duplicate().position(1)).slice();
+            return YuvPlanes.copyOf(yBuffer, yRowStride, uBuffer, vu.duplicate(), uvRowStride, 2, width, height);
+        }
+        int uvRowStride = width / 2 + 2;
+        ByteBuffer uBuffer = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+        ByteBuffer vBuffer = ByteBuffer.allocateDirect(uvRowStride * height / 2);
+        for (int y = 0; y < height; y += 2) {
+            for (int x = 0; x < width; x += 2) {
+                int index = (y / 2) * uvRowStride + x / 2;
+                uBuffer.put(index, (byte) sensorU[y][x]);
+                vBuffer.put(index, (byte) sensorV[y][x]);
+            }
+        }
+        return YuvPlanes.copyOf(yBuffer, yRowStride, uBuffer, vBuffer, uvRowStride, 1, width, height);
+    }
+
+    private static int[][] rotateCounterClockwise(int[][] image, int degrees) {
+        for (int turn = 0; turn < degrees / 90; turn++) {
+            int height = image.length;
+            int width = image[0].length;
+            int[][] rotated = new int[width][height];
+            // 右上角转到左上角
+            for (int y = 0; y < width; y++) {
+                for (int x = 0; x < height; x++) {
+                    rotated[y][x] = image[x][width - 1 - y];
+                }
+            }
+            image = rotated;
+        }
+        return image;
+    }
+
+    private static float[] rgb(int luma, int u, int v) {
+        float cb = u - 128f;
+        float cr = v - 128f;
+        return new float[]{
+                clamp255(luma + 1.402f * cr) / 255f,
+                clamp255(luma - 0.344136f * cb - 0.714136f * cr) / 255f,
+                clamp255(luma + 1.772f * cb) / 255f};
+    }
+
+    private static int clamp(int value, int limit) {
+        return Math.max(0, Math.min(limit - 1, value));
+    }
+
+    private static float clamp255(float value) {
+        return Math.max(0f, Math.min(255f, value));
+    }
+}
@@ -33,3 +33,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "FaceRecognizer"
 include(":app")
+include(":core")
+include(":benchmark")
+include(":cli")